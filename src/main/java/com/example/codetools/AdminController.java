@@ -26,11 +26,31 @@ public class AdminController {
     @org.springframework.beans.factory.annotation.Autowired
     private ScannerJobService scannerJobService;
 
+    @org.springframework.beans.factory.annotation.Autowired(required = false)
+    private QueryCache queryCache;
+
+    @org.springframework.beans.factory.annotation.Autowired(required = false)
+    private IngestThrottle ingestThrottle;
+
+    @org.springframework.beans.factory.annotation.Autowired(required = false)
+    private IngestPipeline ingestPipeline;
+
+    @org.springframework.beans.factory.annotation.Autowired(required = false)
+    private VectorBlobMigrator vectorBlobMigrator;
+
+    @org.springframework.beans.factory.annotation.Autowired(required = false)
+    private ScanWatcher scanWatcher;
+
     @PostMapping("/rebuild")
-    public String rebuild() {
+    public String rebuild(@RequestParam(name = "applicationId", required = false) String applicationId) {
         AnnIndex ann = annServiceProvider.getIfAvailable();
         if (ann == null) return "no ann service configured";
         try {
+            // partitioned index: rebuild just the requested application
+            if (applicationId != null && ann instanceof HnswAnnService) {
+                ((HnswAnnService) ann).rebuildFromDatabase(applicationId);
+                return "rebuild finished for " + applicationId;
+            }
             ann.rebuildFromDatabase();
             return "rebuild finished";
         } catch (Exception e) {
@@ -104,12 +124,55 @@ public class AdminController {
             out.put("size", h.size());
             out.put("dimensions", h.getDimensions());
             out.put("params", h.getHnswParams());
+            out.put("partitions", h.getPartitionInfo());
             return out;
         }
         AnnIndex ann = annServiceProvider.getIfAvailable();
         return java.util.Collections.singletonMap("size", ann == null ? 0 : ann.size());
     }
 
+    /** Hit/miss counters of the question-embedding and retrieval-result caches. */
+    @GetMapping("/cache")
+    public Object cacheStats() {
+        if (queryCache == null) return java.util.Collections.singletonMap("message", "query cache not configured");
+        return queryCache.stats();
+    }
+
+    @PostMapping("/cache/clear")
+    public String clearCache() {
+        if (queryCache == null) return "query cache not configured";
+        queryCache.clear();
+        return "cache cleared";
+    }
+
+    /** Debug view of one stored vector, decoded from its blob (the JSON column is opt-in). */
+    @GetMapping("/vector")
+    public Object vector(@RequestParam("id") String id) {
+        VectorRecord r = vectorRepository.findById(id).orElse(null);
+        if (r == null) return java.util.Collections.singletonMap("error", "no vector " + id);
+        java.util.Map<String, Object> out = new java.util.LinkedHashMap<>();
+        byte[] blob = r.getVectorBlob();
+        out.put("id", id);
+        out.put("encoding", blob == null || blob.length == 0 ? "json" : VectorCodec.isLegacy(blob) ? "gzip-legacy"
+                : VectorCodec.isCurrent(blob, true) ? "f16" : "f32");
+        out.put("bytes", blob == null ? 0 : blob.length);
+        out.put("norm", r.getNorm());
+        out.put("vector", VectorServiceHelper.decode(r));
+        return out;
+    }
+
+    @GetMapping("/vectors/migration")
+    public Object vectorMigrationStatus() {
+        if (vectorBlobMigrator == null) return java.util.Collections.singletonMap("error", "migration not configured");
+        return vectorBlobMigrator.status();
+    }
+
+    @PostMapping("/vectors/migrate")
+    public String migrateVectorBlobs() {
+        if (vectorBlobMigrator == null) return "migration not configured";
+        return vectorBlobMigrator.start() ? "migration started" : "migration already running";
+    }
+
     @GetMapping("/scanner-info")
     public Object scannerInfo() {
         java.util.Map<String,Object> out = new java.util.HashMap<>();
@@ -215,10 +278,35 @@ public class AdminController {
         }
     }
 
+    @PostMapping("/scan/watch/start")
+    public String startWatch() {
+        if (scanWatcher == null) return "watch not configured";
+        try {
+            return scanWatcher.start() ? "watch started" : "watch already running or no root configured";
+        } catch (Exception e) {
+            return "error: " + e.getMessage();
+        }
+    }
+
+    @PostMapping("/scan/watch/stop")
+    public String stopWatch() {
+        if (scanWatcher == null) return "watch not configured";
+        return scanWatcher.stop() ? "watch stopped" : "watch not running";
+    }
+
+    @GetMapping("/scan/watch/status")
+    public Object watchStatus() {
+        if (scanWatcher == null) return java.util.Collections.singletonMap("error", "watch not configured");
+        return scanWatcher.status();
+    }
+
     @GetMapping("/scan/status")
     public Object scanStatus() {
         try {
-            return scannerJobService.status();
+            java.util.Map<String, Object> out = new java.util.HashMap<>(scannerJobService.status());
+            if (ingestThrottle != null) out.put("throttle", ingestThrottle.status());
+            if (ingestPipeline != null) out.put("pipeline", ingestPipeline.status());
+            return out;
         } catch (Exception e) {
             return java.util.Collections.singletonMap("error", e.getMessage());
         }
@@ -251,6 +339,7 @@ public class AdminController {
                     copy.setContent(r.getContent());
                     copy.setVectorBlob(r.getVectorBlob());
                     copy.setVectorJson(r.getVectorJson());
+                    copy.setNorm(r.getNorm());
                     copy.setChecksum(r.getChecksum());
                     copy.setMetadata(r.getMetadata());
                     copy.setCreatedAt(System.currentTimeMillis());
@@ -1,12 +1,17 @@
 package com.example.codetools;
 
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 
 public interface AnnIndex {
     void add(String id, float[] vector) throws Exception;
     void remove(String id) throws Exception;
+    // bulk removal (a deleted or shrunk file); implementations take their write lock once for the batch
+    default void removeAll(Collection<String> ids) throws Exception { for (String id : ids) remove(id); }
     List<String> query(float[] q, int topK) throws Exception;
+    // implementations that partition by application can route the query to a single partition
+    default List<String> query(String applicationId, float[] q, int topK) throws Exception { return query(q, topK); }
     void rebuildFromDatabase() throws Exception;
     long size();
     default void persistTo(Path file) throws Exception { }
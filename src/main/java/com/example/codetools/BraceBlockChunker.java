@@ -0,0 +1,125 @@
+package com.example.codetools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Structural chunker for brace languages (Java, TypeScript, JavaScript). A unit starts at a line
+ * at the top level or directly inside a class, interface, enum, record or namespace body (so
+ * top-level declarations and members, never statements inside a method), outside any
+ * parentheses, when the previous code line ended a statement or block ({@code ;}, <code>{</code>
+ * or <code>}</code>). Comment and annotation/decorator lines stay with the declaration below
+ * them, and lines opening with a closing bracket stay with the block above. Strings, character
+ * literals, comments, Java text blocks and JS template literals are skipped when counting braces.
+ */
+public class BraceBlockChunker extends StructuralChunker {
+
+    // scanner modes carried across lines
+    private static final int CODE = 0;
+    private static final int BLOCK_COMMENT = 1;
+    private static final int TEXT_BLOCK = 2;
+    private static final int TEMPLATE = 3;
+
+    // a block opened by a header with one of these holds declarations rather than statements
+    private static final Pattern CONTAINER = Pattern.compile("(?<![.\\w$])(class|interface|enum|record|namespace|module)\\b");
+
+    private final boolean templates;
+
+    public BraceBlockChunker(Set<String> extensions, boolean templates, Chunker fallback, int minSize, int maxSize) {
+        super(extensions, fallback, minSize, maxSize);
+        this.templates = templates;
+    }
+
+    public static BraceBlockChunker java(Chunker fallback, int minSize, int maxSize) {
+        return new BraceBlockChunker(Set.of(".java"), false, fallback, minSize, maxSize);
+    }
+
+    public static BraceBlockChunker typescript(Chunker fallback, int minSize, int maxSize) {
+        return new BraceBlockChunker(Set.of(".ts", ".tsx", ".js", ".jsx", ".mjs", ".cjs"), true, fallback, minSize, maxSize);
+    }
+
+    @Override
+    protected List<Integer> unitStarts(String text) {
+        List<Integer> starts = new ArrayList<>();
+        int n = text.length();
+        Deque<Boolean> blocks = new ArrayDeque<>(); // per open brace: is it a container body
+        int opaque = 0; // open braces that are not container bodies
+        StringBuilder header = new StringBuilder(); // code since the last ; { or }
+        int parens = 0;
+        int mode = CODE;
+        boolean prevEnds = true;
+        boolean prevGlue = false;
+        for (int ls = 0; ls < n; ) {
+            int le = lineEnd(text, ls);
+            int first = firstNonSpace(text, ls, le);
+            boolean blank = first >= le;
+            if (blank) {
+                ls = le + 1;
+                continue;
+            }
+            boolean commentLine = mode == BLOCK_COMMENT || text.startsWith("//", first) || text.startsWith("/*", first);
+            char lead = text.charAt(first);
+            boolean closing = lead == '}' || lead == ')' || lead == ']';
+            if (mode == CODE && opaque == 0 && parens == 0 && prevEnds && !prevGlue && !closing) starts.add(ls);
+
+            char last = 0;
+            for (int j = first; j < le; j++) {
+                char c = text.charAt(j);
+                char next = j + 1 < le ? text.charAt(j + 1) : 0;
+                if (mode == BLOCK_COMMENT) {
+                    if (c == '*' && next == '/') { mode = CODE; j++; }
+                    continue;
+                }
+                if (mode == TEXT_BLOCK) {
+                    if (text.startsWith("\"\"\"", j)) { mode = CODE; j += 2; last = '"'; }
+                    continue;
+                }
+                if (mode == TEMPLATE) {
+                    if (c == '\\') j++;
+                    else if (c == '`') { mode = CODE; last = '`'; }
+                    continue;
+                }
+                if (c == '/' && next == '/') break;
+                if (c == '/' && next == '*') { mode = BLOCK_COMMENT; j++; continue; }
+                if (c == '"' && text.startsWith("\"\"\"", j)) { mode = TEXT_BLOCK; j += 2; continue; }
+                if (c == '"' || c == '\'') {
+                    j = skipQuoted(text, j, le, c);
+                    last = c;
+                    continue;
+                }
+                if (c == '`' && templates) { mode = TEMPLATE; continue; }
+                if (c == '{') {
+                    boolean container = CONTAINER.matcher(header).find();
+                    blocks.push(container);
+                    if (!container) opaque++;
+                } else if (c == '}') {
+                    if (!blocks.isEmpty() && !blocks.pop()) opaque--;
+                } else if (c == '(') parens++;
+                else if (c == ')') parens = Math.max(0, parens - 1);
+                if (c == ';' || c == '{' || c == '}') header.setLength(0);
+                else header.append(c);
+                if (!Character.isWhitespace(c)) last = c;
+            }
+            header.append(' ');
+            boolean annotation = lead == '@' && last != ';' && last != '{' && last != '}';
+            prevGlue = (commentLine && last == 0) || annotation;
+            if (!prevGlue) prevEnds = last == ';' || last == '{' || last == '}';
+            ls = le + 1;
+        }
+        return starts;
+    }
+
+    // index of the closing quote (or the line end for an unterminated literal)
+    private static int skipQuoted(String text, int open, int lineEnd, char quote) {
+        for (int j = open + 1; j < lineEnd; j++) {
+            char c = text.charAt(j);
+            if (c == '\\') j++;
+            else if (c == quote) return j;
+        }
+        return lineEnd;
+    }
+}
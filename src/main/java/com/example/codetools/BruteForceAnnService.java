@@ -3,29 +3,36 @@ package com.example.codetools;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.util.*;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
 
+/**
+ * Exact (brute-force) AnnIndex. Vectors are kept in an {@link OffHeapVectorSlab} and every query
+ * is a linear scan ranked through a fixed-size {@link TopKHeap}, so results are ground truth for
+ * the approximate indexes. Vectors are normalized when added (rows from the table already are,
+ * since they are normalized at ingest), so scores are dot products and no norms are kept.
+ */
 @Service
 @Profile("ann-dev")
 public class BruteForceAnnService implements AnnIndex {
 
-    private final Map<String, float[]> store = new HashMap<>();
+    private final OffHeapVectorSlab slab = new OffHeapVectorSlab();
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
+    @Value("${ann.rebuild.page.size:1000}")
+    private int rebuildPageSize = 1000;
+
     @Override
     public void add(String id, float[] vector) {
+        if (vector == null) return;
         lock.writeLock().lock();
         try {
-            store.put(id, Arrays.copyOf(vector, vector.length));
+            slab.put(id, VectorUtils.normalizedCopy(vector));
         } finally {
             lock.writeLock().unlock();
         }
@@ -35,7 +42,17 @@ public class BruteForceAnnService implements AnnIndex {
     public void remove(String id) {
         lock.writeLock().lock();
         try {
-            store.remove(id);
+            slab.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) slab.remove(id);
         } finally {
             lock.writeLock().unlock();
         }
@@ -43,14 +60,17 @@ public class BruteForceAnnService implements AnnIndex {
 
     @Override
     public List<String> query(float[] q, int topK) {
+        if (q == null || topK <= 0) return Collections.emptyList();
         lock.readLock().lock();
         try {
-            return store.entrySet().stream()
-                    .map(e -> new AbstractMap.SimpleEntry<>(e.getKey(), cosine(q, e.getValue())))
-                    .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
-                    .limit(topK)
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
+            int k = Math.min(topK, slab.size());
+            if (k == 0) return Collections.emptyList();
+            TopKHeap heap = new TopKHeap(k);
+            slab.search(q, heap);
+            heap.sortDescending();
+            List<String> ids = new ArrayList<>(heap.size());
+            for (int i = 0; i < heap.size(); i++) ids.add(slab.idAt(heap.id(i)));
+            return ids;
         } finally {
             lock.readLock().unlock();
         }
@@ -58,58 +78,45 @@ public class BruteForceAnnService implements AnnIndex {
 
     @Override
     public void rebuildFromDatabase() {
-        // reload all persisted vectors into the in-memory brute-force store
+        // reload all persisted vectors into the slab, one page at a time
         lock.writeLock().lock();
         try {
-            store.clear();
-            // repository and mapper might be injected by Spring if available
+            slab.clear();
+            // repository might be injected by Spring if available
             if (vectorRepository == null) return;
-            List<VectorRecord> all = vectorRepository.findAll();
-            for (VectorRecord r : all) {
-                try {
-                    float[] v = null;
-                    byte[] blob = r.getVectorBlob();
-                    if (blob != null && blob.length > 0) v = gzipBytesToFloatArray(blob);
-                    else if (r.getVectorJson() != null && !r.getVectorJson().isBlank()) v = mapper.readValue(r.getVectorJson(), float[].class);
-                    if (v != null) store.put(r.getId(), v);
-                } catch (Exception ex) {
-                    // skip malformed vector
+            int page = 0;
+            while (true) {
+                Page<VectorRecord> p = vectorRepository.findAll(PageRequest.of(page, rebuildPageSize));
+                if (!p.hasContent()) break;
+                for (VectorRecord r : p.getContent()) {
+                    try {
+                        float[] v = VectorServiceHelper.decode(r);
+                        if (v == null) continue;
+                        VectorUtils.normalize(v); // no-op for rows normalized at ingest
+                        slab.put(r.getId(), v);
+                    } catch (Exception ex) {
+                        // skip malformed vector or mismatched dimension
+                    }
                 }
+                if (!p.hasNext()) break;
+                page++;
             }
         } finally {
             lock.writeLock().unlock();
         }
+        if (queryCache != null) queryCache.invalidate();
     }
 
     @Override
     public long size() {
         lock.readLock().lock();
-        try { return store.size(); } finally { lock.readLock().unlock(); }
-    }
-
-    private double cosine(float[] a, float[] b) {
-        if (a == null || b == null) return -1.0;
-        int n = Math.min(a.length, b.length);
-        double dot=0, na=0, nb=0;
-        for (int i=0;i<n;i++) { dot += a[i]*b[i]; na += a[i]*a[i]; nb += b[i]*b[i]; }
-        if (na==0 || nb==0) return -1.0;
-        return dot / (Math.sqrt(na)*Math.sqrt(nb));
+        try { return slab.size(); } finally { lock.readLock().unlock(); }
     }
 
-    // --- helpers & DI ---
+    // --- DI ---
     @Autowired(required = false)
     private VectorRepository vectorRepository;
 
     @Autowired(required = false)
-    private ObjectMapper mapper;
-
-    private float[] gzipBytesToFloatArray(byte[] blob) throws Exception {
-        try (GZIPInputStream gzis = new GZIPInputStream(new ByteArrayInputStream(blob));
-             DataInputStream dis = new DataInputStream(gzis)) {
-            int len = dis.readInt();
-            float[] arr = new float[len];
-            for (int i = 0; i < len; i++) arr[i] = dis.readFloat();
-            return arr;
-        }
-    }
+    private QueryCache queryCache; // cached retrieval results go stale when the index is rebuilt
 }
@@ -0,0 +1,22 @@
+package com.example.codetools;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits a file's text into the ranges that get embedded. {@link FileScanner} picks the chunker
+ * registered for a file's extension and uses its fallback (content-defined or fixed windows) for
+ * everything else. Beans implementing this interface are picked up and take precedence over the
+ * built-in chunkers for the extensions they claim.
+ */
+public interface Chunker {
+
+    /** Extensions handled, lowercase with the leading dot (".java"); empty for fallback chunkers. */
+    default Set<String> extensions() {
+        return Collections.emptySet();
+    }
+
+    /** Character ranges {@code [start, end)} covering the text, in order. */
+    List<int[]> split(String content);
+}
@@ -15,65 +15,142 @@ import java.util.List;
  * EmbeddingService that shells out to a configured command (default: `ollama`) and parses
  * the output as either a JSON array of floats or whitespace/comma separated floats.
  * This uses the existing ProcessRunner abstraction for testability.
+ *
+ * Batches start one process per text unless {@code embedding.cli.batch.enabled} is set, in which
+ * case a batch goes to one process as a JSON array of strings on stdin and the command must answer
+ * with a JSON array of vectors in the same order ({@code ollama embed} does not speak this). If the
+ * reply is not one vector per input, batching is turned off and texts are sent one per process.
+ *
+ * When {@code embedding.worker.command} is set, texts go to a pool of long-lived worker processes
+ * instead (see {@link EmbeddingWorkerPool}) and no process is started per call.
  */
 @Service
 @ConditionalOnProperty(prefix = "embedding", name = "cli.enabled", havingValue = "true", matchIfMissing = false)
 public class CommandLineEmbeddingService implements EmbeddingService {
 
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(CommandLineEmbeddingService.class);
+
     private final String command;
     private final String model;
     private final ProcessRunner runner;
+    private final com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+    // embedding.cli.batch.enabled; cleared once the command answers a batch with something other
+    // than one vector per input
+    private volatile boolean batchSupported;
+    private final EmbeddingWorkerPool workers; // null: one process per call
 
     @Autowired
     public CommandLineEmbeddingService(Environment env, ProcessRunner runner) {
         this.command = env.getProperty("embedding.command", "ollama");
         this.model = env.getProperty("embedding.model", "codellama:13b-instruct");
         this.runner = runner;
+        this.batchSupported = Boolean.parseBoolean(env.getProperty("embedding.cli.batch.enabled"));
+        String workerCommand = env.getProperty("embedding.worker.command");
+        if (workerCommand != null && !workerCommand.isBlank()) {
+            this.workers = new EmbeddingWorkerPool(runner, List.of(workerCommand.trim().split("\\s+")),
+                    intProperty(env, "embedding.worker.pool.size", 2),
+                    intProperty(env, "embedding.worker.health.interval.ms", 30000),
+                    intProperty(env, "embedding.worker.acquire.timeout.ms", 60000),
+                    intProperty(env, "embedding.worker.reply.timeout.ms", 120000));
+        } else {
+            this.workers = null;
+        }
     }
 
-    @Override
-    public float[] embed(String text) {
+    private static int intProperty(Environment env, String key, int dflt) {
+        String v = env.getProperty(key);
         try {
-            List<String> cmd = new ArrayList<>();
-            cmd.add(command);
-            // try common ollama embedding command form; callers can configure a different command if needed
-            cmd.add("embed");
-            cmd.add(model);
+            return v == null || v.isBlank() ? dflt : Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return dflt;
+        }
+    }
 
-            Process p = runner.start(cmd);
+    @jakarta.annotation.PreDestroy
+    public void close() {
+        if (workers != null) workers.close();
+    }
 
-            try (java.io.OutputStream os = p.getOutputStream()) {
-                os.write(text.getBytes(StandardCharsets.UTF_8));
-                os.flush();
-            }
+    @Override
+    public String modelId() {
+        return command + ":" + model;
+    }
 
-            StringBuilder out = new StringBuilder();
-            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
-                String l;
-                while ((l = r.readLine()) != null) { out.append(l).append('\n'); }
+    @Override
+    public float[] embed(String text) {
+        try {
+            if (workers != null) return workers.embed(text);
+            Process p = start(text);
+            // JSON array or whitespace/comma-separated floats, parsed straight off the stream
+            float[] v;
+            try (java.io.InputStream in = new java.io.BufferedInputStream(p.getInputStream())) {
+                v = new FloatLineParser().parseAll(in);
             }
-
             p.waitFor();
+            return v;
+        } catch (Exception e) {
+            log.warn("Embedding failed: {}", e.getMessage());
+            return null;
+        }
+    }
 
-            String resp = out.toString().trim();
-            if (resp.isEmpty()) return null;
-
-            // try parsing as JSON array first
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        if (workers != null) {
             try {
-                com.fasterxml.jackson.databind.ObjectMapper m = new com.fasterxml.jackson.databind.ObjectMapper();
-                float[] arr = m.readValue(resp, float[].class);
-                return arr;
+                return workers.embedAll(texts);
+            } catch (Exception e) {
+                log.warn("Embedding failed: {}", e.getMessage());
+                return java.util.Arrays.asList(new float[texts.size()][]);
+            }
+        }
+        if (texts.size() <= 1 || !batchSupported) return EmbeddingService.super.embedBatch(texts);
+        try {
+            String resp = run(mapper.writeValueAsString(texts));
+            float[][] vectors = null;
+            try {
+                vectors = mapper.readValue(resp, float[][].class);
             } catch (Exception ignored) {}
-
-            // fallback: parse whitespace/comma-separated floats
-            String cleaned = resp.replaceAll("[,\\s]+", " ").trim();
-            String[] parts = cleaned.split(" ");
-            float[] outv = new float[parts.length];
-            for (int i = 0; i < parts.length; i++) outv[i] = Float.parseFloat(parts[i]);
-            return outv;
+            if (vectors != null && vectors.length == texts.size()) {
+                List<float[]> out = new ArrayList<>(vectors.length);
+                for (float[] v : vectors) out.add(v == null || v.length == 0 ? null : v);
+                return out;
+            }
+            batchSupported = false;
+            log.info("Embedding command did not return one vector per input; embedding one text per call");
         } catch (Exception e) {
-            org.slf4j.LoggerFactory.getLogger(CommandLineEmbeddingService.class).warn("Embedding failed: {}", e.getMessage());
-            return null;
+            log.warn("Batch embedding failed, retrying per text: {}", e.getMessage());
+        }
+        return EmbeddingService.super.embedBatch(texts);
+    }
+
+    // run the embedding command once with the given stdin and return its trimmed stdout
+    private String run(String stdin) throws Exception {
+        Process p = start(stdin);
+        StringBuilder out = new StringBuilder();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            String l;
+            while ((l = r.readLine()) != null) { out.append(l).append('\n'); }
+        }
+
+        p.waitFor();
+        return out.toString().trim();
+    }
+
+    // start the embedding command and write stdin to it
+    private Process start(String stdin) throws Exception {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(command);
+        // try common ollama embedding command form; callers can configure a different command if needed
+        cmd.add("embed");
+        cmd.add(model);
+
+        Process p = runner.start(cmd);
+
+        try (java.io.OutputStream os = p.getOutputStream()) {
+            os.write(stdin.getBytes(StandardCharsets.UTF_8));
+            os.flush();
         }
+        return p;
     }
 }
@@ -0,0 +1,72 @@
+package com.example.codetools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Splits text at content-defined boundaries: a gear rolling hash over the last 64 characters picks
+ * cut points, so where a chunk ends depends only on the text around it. An edit moves the
+ * boundaries next to it and leaves the rest where they were, and the untouched chunks keep their
+ * content (and checksum) after the edit.
+ *
+ * A cut is taken where the top {@code log2(target - min)} bits of the hash are zero, then moved
+ * forward to the end of that line when the line ends within {@code maxSize}. Chunks are at least
+ * {@code minSize} characters (except the last) and at most {@code maxSize}. If no cut is found
+ * before {@code maxSize}, the chunk ends after the last line break past {@code minSize}.
+ */
+public final class ContentDefinedChunker implements Chunker {
+
+    // fixed seed: boundaries must not change between runs
+    private static final long[] GEAR = new long[256];
+    static {
+        SplittableRandom rnd = new SplittableRandom(0x5eed_c0deL);
+        for (int i = 0; i < GEAR.length; i++) GEAR[i] = rnd.nextLong();
+    }
+
+    private final int minSize;
+    private final int maxSize;
+    private final int shift;
+
+    public ContentDefinedChunker(int minSize, int targetSize, int maxSize) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        int spread = Math.max(2, targetSize - this.minSize);
+        int bits = 63 - Long.numberOfLeadingZeros(spread);
+        this.shift = 64 - bits;
+    }
+
+    @Override
+    public List<int[]> split(String text) {
+        List<int[]> out = new ArrayList<>();
+        int n = text.length();
+        int start = 0;
+        while (start < n) {
+            int end = cut(text, start, n);
+            out.add(new int[] {start, end});
+            start = end;
+        }
+        return out;
+    }
+
+    private int cut(String text, int start, int n) {
+        if (n - start <= minSize) return n;
+        int limit = Math.min(n, start + maxSize);
+        int floor = start + minSize;
+        long h = 0;
+        int lastBreak = -1;
+        for (int i = start; i < limit; i++) {
+            char c = text.charAt(i);
+            h = (h << 1) + GEAR[(c ^ (c >>> 8)) & 0xff];
+            if (c == '\n') lastBreak = i + 1;
+            if (i + 1 < floor || (h >>> shift) != 0) continue;
+            // snap to the end of the line so chunks hold whole lines where possible
+            for (int j = i; j < limit; j++) {
+                if (text.charAt(j) == '\n') return j + 1;
+            }
+            return i + 1;
+        }
+        if (limit == n) return n;
+        return lastBreak >= floor ? lastBreak : limit;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.codetools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Front door to {@link EmbeddingService} for indexing. Embeddings are persisted by (model, content
+ * checksum), so license headers, generated code and copied files are embedded once however many
+ * paths, chunks or applications they appear under. Concurrent requests for the same content are
+ * coalesced into one embed call (single-flight): the first caller computes, the rest wait for it.
+ */
+@Slf4j
+@Component
+public class EmbeddingCache {
+
+    @Autowired
+    private EmbeddingService embeddingService;
+
+    @Autowired(required = false)
+    private EmbeddingCacheRepository repo;
+
+    @Value("${embedding.cache.enabled:true}")
+    private boolean enabled = true;
+
+    // key -> embedding in progress
+    private final ConcurrentHashMap<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    public EmbeddingCache() {
+    }
+
+    // package-private constructor for tests
+    EmbeddingCache(EmbeddingService embeddingService, EmbeddingCacheRepository repo) {
+        this.embeddingService = embeddingService;
+        this.repo = repo;
+    }
+
+    public String modelId() {
+        String m = embeddingService.modelId();
+        return m == null ? "" : m;
+    }
+
+    /**
+     * Embedding of content whose checksum is already known, served from the persistent cache when
+     * present. The returned array may be shared with other callers; copy before modifying.
+     */
+    public float[] embed(String content, String checksum) {
+        return embedBatch(List.of(content), List.of(checksum)).get(0);
+    }
+
+    /**
+     * Batch form of {@link #embed}: cached entries are read in one query, and the remaining distinct
+     * contents go to {@link EmbeddingService#embedBatch} in one call. Contents another thread is
+     * already embedding are waited for rather than sent again.
+     */
+    public List<float[]> embedBatch(List<String> contents, List<String> checksums) {
+        String model = modelId();
+        boolean persistent = enabled && repo != null;
+        // distinct keys in input order -> content / checksum
+        Map<String, Integer> firstIndex = new LinkedHashMap<>();
+        for (int i = 0; i < contents.size(); i++) firstIndex.putIfAbsent(model + "|" + checksums.get(i), i);
+
+        Map<String, float[]> resolved = new HashMap<>();
+        if (persistent) resolved.putAll(loadAll(firstIndex.keySet()));
+
+        Map<String, CompletableFuture<float[]>> claimed = new LinkedHashMap<>();
+        Map<String, CompletableFuture<float[]>> waiting = new HashMap<>();
+        for (String key : firstIndex.keySet()) {
+            if (resolved.containsKey(key)) continue;
+            CompletableFuture<float[]> mine = new CompletableFuture<>();
+            CompletableFuture<float[]> running = inFlight.putIfAbsent(key, mine);
+            if (running != null) waiting.put(key, running);
+            else claimed.put(key, mine);
+        }
+
+        try {
+            if (!claimed.isEmpty()) {
+                List<String> keys = new ArrayList<>(claimed.keySet());
+                List<String> texts = new ArrayList<>(keys.size());
+                for (String key : keys) texts.add(contents.get(firstIndex.get(key)));
+                List<float[]> vectors = embeddingService.embedBatch(texts);
+                List<EmbeddingCacheRecord> fresh = new ArrayList<>();
+                for (int i = 0; i < keys.size(); i++) {
+                    float[] v = vectors != null && i < vectors.size() ? vectors.get(i) : null;
+                    String key = keys.get(i);
+                    resolved.put(key, v);
+                    claimed.get(key).complete(v);
+                    if (v != null && persistent) fresh.add(record(key, model, checksums.get(firstIndex.get(key)), v));
+                }
+                if (!fresh.isEmpty()) storeAll(fresh);
+            }
+        } catch (Throwable ex) {
+            // errors too: followers joining these futures would otherwise wait forever
+            for (CompletableFuture<float[]> f : claimed.values()) f.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            for (Map.Entry<String, CompletableFuture<float[]>> e : claimed.entrySet()) inFlight.remove(e.getKey(), e.getValue());
+        }
+
+        for (Map.Entry<String, CompletableFuture<float[]>> e : waiting.entrySet()) {
+            try {
+                resolved.put(e.getKey(), e.getValue().join());
+            } catch (Exception ex) {
+                resolved.put(e.getKey(), null); // the leader already logged the failure
+            }
+        }
+
+        List<float[]> out = new ArrayList<>(contents.size());
+        for (int i = 0; i < contents.size(); i++) out.add(resolved.get(model + "|" + checksums.get(i)));
+        return out;
+    }
+
+    /** Embedding of text that should not be persisted (e.g. questions); still coalesced. */
+    public float[] embedTransient(String text) {
+        return singleFlight(modelId() + "|q|" + text, () -> embeddingService.embed(text));
+    }
+
+    /** Number of embed calls currently being shared. */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private float[] singleFlight(String key, Supplier<float[]> compute) {
+        CompletableFuture<float[]> mine = new CompletableFuture<>();
+        CompletableFuture<float[]> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (Exception ex) {
+                return null; // the leader already logged the failure
+            }
+        }
+        try {
+            float[] v = compute.get();
+            mine.complete(v);
+            return v;
+        } catch (Throwable ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Map<String, float[]> loadAll(Iterable<String> keys) {
+        Map<String, float[]> out = new HashMap<>();
+        try {
+            for (EmbeddingCacheRecord r : repo.findAllById(keys)) {
+                if (r.getVectorBlob() == null) continue;
+                try {
+                    out.put(r.getId(), VectorCodec.decode(r.getVectorBlob()));
+                } catch (Exception ex) {
+                    log.debug("embedding cache entry {} unreadable: {}", r.getId(), ex.getMessage());
+                }
+            }
+        } catch (Exception ex) {
+            log.debug("embedding cache read failed: {}", ex.getMessage());
+        }
+        return out;
+    }
+
+    private EmbeddingCacheRecord record(String key, String model, String checksum, float[] v) {
+        EmbeddingCacheRecord r = new EmbeddingCacheRecord();
+        r.setId(key);
+        r.setModel(model);
+        r.setChecksum(checksum);
+        r.setVectorBlob(VectorCodec.encode(v));
+        r.setCreatedAt(System.currentTimeMillis());
+        return r;
+    }
+
+    private void storeAll(List<EmbeddingCacheRecord> records) {
+        try {
+            repo.saveAll(records);
+        } catch (Exception ex) {
+            // best-effort: a failed write only costs a re-embed later
+            log.debug("embedding cache write failed: {}", ex.getMessage());
+        }
+    }
+}
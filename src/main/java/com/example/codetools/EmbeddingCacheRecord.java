@@ -0,0 +1,42 @@
+package com.example.codetools;
+
+import jakarta.persistence.*;
+
+/**
+ * Raw embedding of a piece of content under one model, addressed by the content checksum so
+ * identical text anywhere in any application is embedded once.
+ */
+@Entity
+@Table(name = "embedding_cache")
+public class EmbeddingCacheRecord {
+
+    // model + "|" + content checksum
+    @Id
+    private String id;
+
+    @Column(name = "model")
+    private String model;
+
+    @Column(name = "checksum")
+    private String checksum;
+
+    // VectorCodec bytes of the embedding as returned by the model (not normalized)
+    @Lob
+    @Column(name = "vector_blob", columnDefinition = "BLOB")
+    private byte[] vectorBlob;
+
+    private long createdAt;
+
+    public EmbeddingCacheRecord() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+    public String getChecksum() { return checksum; }
+    public void setChecksum(String checksum) { this.checksum = checksum; }
+    public byte[] getVectorBlob() { return vectorBlob; }
+    public void setVectorBlob(byte[] vectorBlob) { this.vectorBlob = vectorBlob; }
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,6 @@
+package com.example.codetools;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheRecord, String> {
+}
@@ -1,5 +1,24 @@
 package com.example.codetools;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface EmbeddingService {
     float[] embed(String text);
+
+    /**
+     * Embed several texts in one call; the result lines up with the input and holds null where a
+     * text could not be embedded. Backends that can batch natively should override this, since
+     * per-call overhead dominates small inputs.
+     */
+    default List<float[]> embedBatch(List<String> texts) {
+        List<float[]> out = new ArrayList<>(texts.size());
+        for (String t : texts) out.add(embed(t));
+        return out;
+    }
+
+    /** Identifies the model behind the vectors, so cached embeddings from different models never mix. */
+    default String modelId() {
+        return getClass().getSimpleName();
+    }
 }
@@ -0,0 +1,278 @@
+package com.example.codetools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of long-lived embedding processes, so a chunk costs one line of I/O instead of a fork/exec
+ * and a model attach. Workers speak a line protocol: each request is the text as a JSON string on
+ * one stdin line; each reply is one stdout line holding the vector (JSON array or separated floats).
+ * A reply that is empty or not numeric means the worker could not embed that text.
+ *
+ * Workers are started lazily up to the pool size. A worker that has exited, hits end of stream or
+ * fails an I/O call is destroyed and replaced, and the request is retried once on the replacement.
+ * An optional health check periodically sends a probe to idle workers and replaces those that
+ * don't answer with a vector. Each reply must arrive within {@code replyTimeoutMs}; a worker that
+ * misses it is killed and counts as crashed. Worker stderr is drained line by line into the debug
+ * log so a chatty worker never blocks on a full pipe.
+ */
+public final class EmbeddingWorkerPool implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingWorkerPool.class);
+
+    // requests written ahead of their replies; bounded so neither pipe buffer fills up
+    static final int PIPELINE_WINDOW = 4;
+    static final String HEALTH_PROBE = "health check";
+
+    private final ProcessRunner runner;
+    private final List<String> command;
+    private final int size;
+    private final long acquireTimeoutMs;
+    private final long replyTimeoutMs;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger live = new AtomicInteger();
+    private final AtomicLong restarts = new AtomicLong();
+    private final ScheduledExecutorService healthChecker;
+    private final ScheduledExecutorService watchdog;
+    private volatile boolean closed;
+
+    public EmbeddingWorkerPool(ProcessRunner runner, List<String> command, int size, long healthIntervalMs,
+                               long acquireTimeoutMs, long replyTimeoutMs) {
+        this.runner = runner;
+        this.command = List.copyOf(command);
+        this.size = Math.max(1, size);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.replyTimeoutMs = replyTimeoutMs;
+        watchdog = replyTimeoutMs > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "embedding-worker-watchdog");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        if (healthIntervalMs > 0) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "embedding-worker-health");
+                t.setDaemon(true);
+                return t;
+            });
+            healthChecker.scheduleWithFixedDelay(this::healthCheck, healthIntervalMs, healthIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            healthChecker = null;
+        }
+    }
+
+    public int size() { return size; }
+
+    /** Workers currently running (busy or idle). */
+    public int liveWorkers() { return live.get(); }
+
+    /** Workers replaced after a crash or failed health check. */
+    public long restarts() { return restarts.get(); }
+
+    public float[] embed(String text) throws IOException {
+        return embedAll(List.of(text)).get(0);
+    }
+
+    /** Embed the texts on one worker, pipelining requests; the result lines up with the input. */
+    public List<float[]> embedAll(List<String> texts) throws IOException {
+        if (texts.isEmpty()) return new ArrayList<>();
+        Worker w = acquire();
+        try {
+            return w.exchange(texts);
+        } catch (IOException crash) {
+            log.warn("Embedding worker failed ({}); restarting it", crash.getMessage());
+            discard(w);
+            w = acquire();
+            try {
+                return w.exchange(texts);
+            } catch (IOException again) {
+                discard(w);
+                w = null;
+                throw again;
+            }
+        } finally {
+            if (w != null && w.usable) release(w);
+        }
+    }
+
+    /** Probe every idle worker and replace the ones that are gone or no longer answer. */
+    public void healthCheck() {
+        List<Worker> checked = new ArrayList<>();
+        idle.drainTo(checked);
+        for (Worker w : checked) {
+            boolean healthy;
+            try {
+                healthy = w.exchange(List.of(HEALTH_PROBE)).get(0) != null;
+            } catch (IOException ex) {
+                healthy = false;
+            }
+            if (healthy) {
+                release(w);
+                continue;
+            }
+            log.warn("Embedding worker failed its health check; restarting it");
+            discard(w);
+            try {
+                release(start());
+            } catch (IOException ex) {
+                log.warn("Could not restart embedding worker: {}", ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (healthChecker != null) healthChecker.shutdownNow();
+        if (watchdog != null) watchdog.shutdownNow();
+        List<Worker> all = new ArrayList<>();
+        idle.drainTo(all);
+        for (Worker w : all) discard(w);
+    }
+
+    private Worker acquire() throws IOException {
+        if (closed) throw new IOException("embedding worker pool is closed");
+        Worker w = idle.poll();
+        if (w != null) return w;
+        while (true) {
+            int n = live.get();
+            if (n >= size) break;
+            if (live.compareAndSet(n, n + 1)) {
+                try {
+                    return spawn();
+                } catch (IOException ex) {
+                    live.decrementAndGet();
+                    throw ex;
+                }
+            }
+        }
+        try {
+            w = idle.poll(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for an embedding worker");
+        }
+        if (w == null) throw new IOException("no embedding worker available after " + acquireTimeoutMs + " ms");
+        return w;
+    }
+
+    // start a replacement counted against the pool size
+    private Worker start() throws IOException {
+        live.incrementAndGet();
+        try {
+            return spawn();
+        } catch (IOException ex) {
+            live.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    private Worker spawn() throws IOException {
+        return new Worker(runner.start(command));
+    }
+
+    private void release(Worker w) {
+        if (closed) discard(w);
+        else idle.offer(w);
+    }
+
+    private void discard(Worker w) {
+        if (!w.usable) return;
+        w.usable = false;
+        live.decrementAndGet();
+        if (!closed) restarts.incrementAndGet();
+        try {
+            w.process.getOutputStream().close();
+        } catch (Exception ignored) {
+        }
+        w.process.destroy();
+    }
+
+    private static void drainErrors(Process process) {
+        Thread.ofVirtual().name("embedding-worker-stderr").start(() -> {
+            try (BufferedReader err = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = err.readLine()) != null) log.debug("embedding worker: {}", line);
+            } catch (IOException ignored) {
+                // the worker is gone
+            }
+        });
+    }
+
+    /** One worker process and its framed streams. */
+    private final class Worker {
+        final Process process;
+        final BufferedWriter stdin;
+        final InputStream stdout;
+        final FloatLineParser parser = new FloatLineParser();
+        volatile boolean usable = true;
+        volatile boolean timedOut;
+
+        Worker(Process process) {
+            this.process = process;
+            this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            this.stdout = new BufferedInputStream(process.getInputStream());
+            drainErrors(process);
+        }
+
+        List<float[]> exchange(List<String> texts) throws IOException {
+            if (!process.isAlive()) throw new IOException("worker exited");
+            float[][] out = new float[texts.size()][];
+            int sent = 0;
+            int received = 0;
+            while (received < texts.size()) {
+                while (sent < texts.size() && sent - received < PIPELINE_WINDOW) {
+                    String t = texts.get(sent++);
+                    stdin.write(mapper.writeValueAsString(t == null ? "" : t));
+                    stdin.write('\n');
+                }
+                stdin.flush();
+                out[received++] = reply();
+            }
+            return new ArrayList<>(Arrays.asList(out));
+        }
+
+        // next reply line; past the deadline the worker is killed, which ends the blocked read
+        private float[] reply() throws IOException {
+            ScheduledFuture<?> timer = watchdog == null ? null : watchdog.schedule(() -> {
+                timedOut = true;
+                process.destroyForcibly();
+                try {
+                    process.getInputStream().close();
+                } catch (IOException ignored) {
+                }
+            }, replyTimeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                float[] v = parser.parseLine(stdout);
+                if (timedOut) throw new IOException("no reply within " + replyTimeoutMs + " ms");
+                return v;
+            } catch (IOException ex) {
+                if (timedOut) throw new IOException("no reply within " + replyTimeoutMs + " ms");
+                throw ex;
+            } finally {
+                if (timer != null) timer.cancel(false);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.codetools;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
@@ -12,14 +13,36 @@ import java.util.stream.*;
 @Service
 public class FileScanner {
 
-    // keep a lightweight index of path -> lastModified to avoid OOM on very large repos
-    private final Map<String, Long> index = new HashMap<>();
+    // keep a lightweight index of path -> lastModified to avoid OOM on very large repos;
+    // concurrent because scan jobs process files on many threads
+    private final Map<String, Long> index = new java.util.concurrent.ConcurrentHashMap<>();
     private final String rootPath;
     private final String applicationId;
     private final Set<String> extensions;
 
     private final VectorService vectorService;
 
+    // 0: embed each file's chunks in one batch; N > 0: gather chunks across files until N are pending
+    private final int crossFileBatch;
+    private final List<VectorService.Chunk> pendingChunks = new ArrayList<>();
+    private final List<String> pendingFiles = new ArrayList<>(); // files whose chunks are in pendingChunks
+
+    // skips files unchanged since the last scan; absent in plain unit setups
+    private ScanManifest manifest;
+
+    // chunker for files no structural chunker claims: content-defined boundaries by default,
+    // overlapping windows with scanner.chunk.strategy=fixed
+    private final Chunker fallbackChunker;
+    // extension (".java") -> chunker that cuts at declaration boundaries
+    private final Map<String, Chunker> chunkers = new HashMap<>();
+
+    // UTF-8/BOM-aware reads that skip binary files and files over scanner.file.max.bytes
+    private final TextFileReader reader;
+
+    // positional reads of chunk ranges for fetchSnippets, with a cache of hot regions
+    private final SnippetReader snippetReader;
+    private final long snippetMaxBytes;
+
     public FileScanner(org.springframework.core.env.Environment env, VectorService vectorService) {
         String rp = env.getProperty("scanner.root.path");
         this.rootPath = rp == null ? "" : rp;
@@ -33,6 +56,34 @@ public class FileScanner {
         }
         this.applicationId = appId == null ? "default-app" : appId;
         this.vectorService = vectorService;
+        int batch = 0;
+        try {
+            String b = env.getProperty("scanner.embed.batch.chunks");
+            if (b != null && !b.isBlank()) batch = Integer.parseInt(b.trim());
+        } catch (Exception ignored) {}
+        this.crossFileBatch = batch;
+        long maxBytes = 4L * 1024 * 1024;
+        try {
+            String mb = env.getProperty("scanner.file.max.bytes");
+            if (mb != null && !mb.isBlank()) maxBytes = Long.parseLong(mb.trim());
+        } catch (Exception ignored) {}
+        this.reader = new TextFileReader(maxBytes);
+        this.snippetReader = new SnippetReader(intProperty(env, "scanner.snippet.cache.bytes", 8 * 1024 * 1024), reader);
+        this.snippetMaxBytes = intProperty(env, "scanner.snippet.max.bytes", 8 * 1024);
+        int min = intProperty(env, "scanner.chunk.min", 200);
+        int max = intProperty(env, "scanner.chunk.max", 1600);
+        String strategy = env.getProperty("scanner.chunk.strategy");
+        if ("fixed".equalsIgnoreCase(strategy)) {
+            this.fallbackChunker = new FixedWindowChunker(
+                    Integer.getInteger("scanner.chunk.size", 800), Integer.getInteger("scanner.chunk.overlap", 200));
+        } else {
+            this.fallbackChunker = new ContentDefinedChunker(min, intProperty(env, "scanner.chunk.target", 800), max);
+        }
+        if (!"false".equalsIgnoreCase(env.getProperty("scanner.chunk.structural"))) {
+            register(BraceBlockChunker.java(fallbackChunker, min, max));
+            register(BraceBlockChunker.typescript(fallbackChunker, min, max));
+            register(new PythonChunker(fallbackChunker, min, max));
+        }
         // supported extensions (configurable)
         String ext = env.getProperty("scanner.extensions");
         if (ext != null && !ext.isBlank()) {
@@ -49,6 +100,36 @@ public class FileScanner {
         }
     }
 
+    private static int intProperty(org.springframework.core.env.Environment env, String key, int def) {
+        try {
+            String v = env.getProperty(key);
+            if (v != null && !v.isBlank()) return Integer.parseInt(v.trim());
+        } catch (Exception ignored) {}
+        return def;
+    }
+
+    /** Chunker beans replace the built-in ones for the extensions they claim. */
+    @Autowired(required = false)
+    public void setChunkers(List<Chunker> beans) {
+        for (Chunker c : beans) register(c);
+    }
+
+    private void register(Chunker c) {
+        for (String ext : c.extensions()) chunkers.put(ext.toLowerCase(), c);
+    }
+
+    Chunker chunkerFor(String relativePath) {
+        String name = relativePath.toLowerCase();
+        int dot = name.lastIndexOf('.');
+        Chunker c = dot < 0 ? null : chunkers.get(name.substring(dot));
+        return c == null ? fallbackChunker : c;
+    }
+
+    @Autowired(required = false)
+    public void setScanManifest(ScanManifest manifest) {
+        this.manifest = manifest;
+    }
+
     @PostConstruct
     public void scanRoot() throws IOException {
         if (rootPath == null || rootPath.isBlank()) {
@@ -57,70 +138,258 @@ public class FileScanner {
         }
         // reuse the new list/process API so async job and legacy scan use the same logic
         List<String> files = listAllFiles();
+        removeMissing(files);
         for (String rel : files) {
             processFile(rel);
         }
+        flushPending();
         log.info("Indexed {} files", index.size());
     }
 
-    private void indexFile(Path file) {
+    // returns the files whose chunks could not be stored during this call
+    private List<String> indexFile(Path file) {
+        String rel = Paths.get(rootPath).relativize(file).toString();
         try {
-            String content = new String(Files.readAllBytes(file));
-            Path root = Paths.get(rootPath);
-            String rel = root.relativize(file).toString();
-            // store last-modified time only to avoid keeping large file contents in memory
-            try { index.put(rel, Files.getLastModifiedTime(file).toMillis()); } catch (Exception ignored) { index.put(rel, 0L); }
-
-            // chunking parameters (characters)
-            int chunkSize = 800; // default
-            int overlap = 200; // default
+            TextFileReader.Text text = readIfChanged(rel);
+            if (text == null) return List.of(); // unchanged since the last scan
+            return submit(rel, chunkFile(rel, text));
+        } catch (IOException e) {
+            log.warn("Failed to read {}", file, e);
+            return List.of(rel);
+        }
+    }
+
+    /**
+     * Read a file unless the scan manifest shows it unchanged: same size and mtime skips the read,
+     * same content hash skips chunking. Returns null for unchanged files; otherwise the text,
+     * with the file staged in the manifest until {@link #fileIndexed} reports the outcome.
+     */
+    public TextFileReader.Text readIfChanged(String relativePath) throws IOException {
+        if (manifest == null) return readText(relativePath);
+        Path file = Paths.get(rootPath).resolve(relativePath);
+        java.nio.file.attribute.BasicFileAttributes attrs = Files.readAttributes(file, java.nio.file.attribute.BasicFileAttributes.class);
+        long size = attrs.size();
+        long mtime = attrs.lastModifiedTime().toMillis();
+        index.put(relativePath, mtime);
+        if (manifest.unchanged(applicationId, relativePath, size, mtime)) return null;
+        TextFileReader.Text text = read(relativePath, file);
+        if (manifest.sameContent(applicationId, relativePath, size, mtime, text.getHash())) return null;
+        manifest.stage(applicationId, relativePath, size, mtime, text.getHash());
+        return text;
+    }
+
+    private TextFileReader.Text read(String relativePath, Path file) throws IOException {
+        TextFileReader.Text text = reader.read(file);
+        if (text.getSkipped() != null) log.debug("Skipping {} file {}", text.getSkipped(), relativePath);
+        return text;
+    }
+
+    /** Report whether a file returned by {@link #readIfChanged} had all of its chunks stored. */
+    public void fileIndexed(String relativePath, boolean complete) {
+        if (manifest == null) return;
+        if (complete) manifest.commit(applicationId, relativePath);
+        else manifest.discard(applicationId, relativePath);
+    }
+
+    /**
+     * Read a file (relative to the root) and record its last-modified time in the index. Binary
+     * and oversize files read as empty, which leaves them with no chunks.
+     */
+    public String readFile(String relativePath) throws IOException {
+        return readText(relativePath).getContent();
+    }
+
+    private TextFileReader.Text readText(String relativePath) throws IOException {
+        Path file = Paths.get(rootPath).resolve(relativePath);
+        TextFileReader.Text text = read(relativePath, file);
+        // store last-modified time only to avoid keeping large file contents in memory
+        try { index.put(relativePath, Files.getLastModifiedTime(file).toMillis()); } catch (Exception ignored) { index.put(relativePath, 0L); }
+        return text;
+    }
+
+    /**
+     * Split file content into chunks with the chunker registered for the file's extension: source
+     * files are cut at method/function boundaries (see {@link StructuralChunker}), other files at
+     * content-defined boundaries (see {@link ContentDefinedChunker}), or, with
+     * {@code scanner.chunk.strategy=fixed}, into overlapping windows of {@code scanner.chunk.size}
+     * characters. Chunk offsets are byte offsets into the file (after any BOM; see
+     * {@link TextFileReader.Text#byteLength}), so {@link #fetchSnippets} can read a chunk straight
+     * from the file. Each chunk carries the file's chunk count, so the rows of a file that shrank
+     * are deleted when its new chunks are stored (see {@link VectorService#persistChanges}).
+     */
+    public List<VectorService.Chunk> chunkFile(String relativePath, TextFileReader.Text text) {
+        String content = text.getContent();
+        List<int[]> ranges = chunkerFor(relativePath).split(content);
+        List<VectorService.Chunk> chunks = new ArrayList<>(ranges.size());
+        int at = 0;   // char offset ...
+        int atByte = 0; // ... and its byte offset
+        for (int[] r : ranges) {
+            // ranges come in order but fixed windows overlap, so the cursor may step back
+            atByte += (int) (r[0] >= at ? text.byteLength(at, r[0]) : -text.byteLength(r[0], at));
+            at = r[0];
+            int endByte = atByte + (int) text.byteLength(r[0], r[1]);
+            chunks.add(new VectorService.Chunk(applicationId, relativePath, content.substring(r[0], r[1]),
+                    chunks.size(), atByte, endByte, ranges.size()));
+        }
+        if (chunks.isEmpty()) {
+            // nothing left to store, so nothing to wait for: drop what the file had now
+            ScanManifestRecord last = manifest == null ? null : manifest.get(applicationId, relativePath);
+            if (last == null || last.getChunkCount() > 0) vectorService.truncateFile(applicationId, relativePath, 0);
+        }
+        if (manifest != null) manifest.stageChunkCount(applicationId, relativePath, chunks.size());
+        return chunks;
+    }
+
+    /** {@link #chunkFile(String, TextFileReader.Text)} for text known to be valid UTF-8. */
+    public List<VectorService.Chunk> chunkFile(String relativePath, String content) {
+        return chunkFile(relativePath, new TextFileReader.Text(content, null, null));
+    }
+
+    // embed the file's chunks now, or queue them for a cross-file batch; returns the files (this
+    // one, or those of a batch it filled) whose chunks could not be stored
+    private List<String> submit(String rel, List<VectorService.Chunk> chunks) {
+        if (chunks.isEmpty()) {
+            fileIndexed(rel, true);
+            return List.of();
+        }
+        if (crossFileBatch <= 0) {
+            boolean complete = false;
             try {
-                String cs = System.getProperty("scanner.chunk.size");
-                String ov = System.getProperty("scanner.chunk.overlap");
-                if (cs != null) chunkSize = Integer.parseInt(cs);
-                if (ov != null) overlap = Integer.parseInt(ov);
-            } catch (Exception ignored) {}
+                complete = vectorService.upsertBatch(chunks);
+            } catch (Exception ex) {
+                log.warn("Vector upsert failed for {}: {}", rel, ex.getMessage());
+            }
+            fileIndexed(rel, complete);
+            return complete ? List.of() : List.of(rel);
+        }
+        List<VectorService.Chunk> ready = null;
+        List<String> readyFiles = null;
+        synchronized (pendingChunks) {
+            pendingChunks.addAll(chunks);
+            pendingFiles.add(rel);
+            if (pendingChunks.size() >= crossFileBatch) {
+                ready = new ArrayList<>(pendingChunks);
+                readyFiles = new ArrayList<>(pendingFiles);
+                pendingChunks.clear();
+                pendingFiles.clear();
+            }
+        }
+        return ready == null ? List.of() : upsertPending(ready, readyFiles);
+    }
 
-            // create overlapping chunks
-            int len = content.length();
-            int idx = 0;
-            int chunkIndex = 0;
-            while (idx < len) {
-                int end = Math.min(idx + chunkSize, len);
-                String chunk = content.substring(idx, end);
-                try {
-                    vectorService.upsert(applicationId, rel, chunk, chunkIndex, idx, end);
-                } catch (Exception ex) {
-                    log.warn("Vector upsert failed for {} chunk {}: {}", rel, chunkIndex, ex.getMessage());
-                }
-                chunkIndex++;
-                if (end == len) break;
-                idx = Math.max(0, end - overlap);
+    /**
+     * Embed and store chunks still queued for a cross-file batch, then persist the scan manifest.
+     * Callers that drive {@link #processFile} themselves call this once their file list is done.
+     * Returns the files whose chunks could not be stored.
+     */
+    public List<String> flushPending() {
+        List<VectorService.Chunk> ready = null;
+        List<String> readyFiles = null;
+        synchronized (pendingChunks) {
+            if (!pendingChunks.isEmpty()) {
+                ready = new ArrayList<>(pendingChunks);
+                readyFiles = new ArrayList<>(pendingFiles);
+                pendingChunks.clear();
+                pendingFiles.clear();
             }
+        }
+        List<String> failed = ready == null ? List.of() : upsertPending(ready, readyFiles);
+        if (manifest != null) manifest.flush();
+        return failed;
+    }
 
-        } catch (IOException e) {
-            log.warn("Failed to read {}", file, e);
+    private List<String> upsertPending(List<VectorService.Chunk> ready, List<String> files) {
+        boolean complete = false;
+        try {
+            complete = vectorService.upsertBatch(ready);
+        } catch (Exception ex) {
+            log.warn("Vector upsert failed for a batch of {} chunks: {}", ready.size(), ex.getMessage());
         }
+        for (String rel : files) fileIndexed(rel, complete);
+        return complete ? List.of() : files;
     }
 
+    /** {@link #fetchSnippets(List, int, String)} without a question: chunks in file order. */
     public List<QueryModels.CodeSnippet> fetchSnippets(List<String> paths, int max) {
-        return index.keySet().stream()
-                .filter(k -> paths == null || paths.isEmpty() || paths.contains(k))
-                .limit(max)
-                .map(k -> {
-                    QueryModels.CodeSnippet s = new QueryModels.CodeSnippet();
-                    s.setPath(k);
-                    // read file content on demand
-                    try {
-                        java.nio.file.Path p = java.nio.file.Paths.get(rootPath).resolve(k);
-                        String content = java.nio.file.Files.readString(p);
-                        s.setContent(content);
-                    } catch (Exception ex) {
-                        s.setContent("");
-                    }
-                    return s;
-                })
-                .collect(Collectors.toList());
+        return fetchSnippets(paths, max, null);
+    }
+
+    /**
+     * Snippets for the given indexed paths (any indexed files when none are given), at most
+     * {@code max}. Each snippet holds the file's stored chunks that best match the question, up to
+     * {@code scanner.snippet.max.bytes}, read from disk and kept in file order; without a question
+     * (or when it cannot be embedded) the chunks are taken in file order. Files without stored
+     * chunks are read from the start up to the budget. Several files are read in parallel.
+     */
+    public List<QueryModels.CodeSnippet> fetchSnippets(List<String> paths, int max, String question) {
+        List<String> selected;
+        if (paths == null || paths.isEmpty()) {
+            selected = index.keySet().stream().limit(Math.max(0, max)).collect(Collectors.toList());
+        } else {
+            selected = new LinkedHashSet<>(paths).stream().filter(index::containsKey).limit(Math.max(0, max)).collect(Collectors.toList());
+        }
+        if (selected.isEmpty()) return new ArrayList<>();
+        // embedded once per request and shared by every path
+        float[] qv = question == null ? null : vectorService.questionVector(question);
+        if (selected.size() == 1) return new ArrayList<>(List.of(snippet(selected.get(0), qv)));
+        try (java.util.concurrent.ExecutorService ex = java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor()) {
+            List<java.util.concurrent.Future<QueryModels.CodeSnippet>> futures = new ArrayList<>();
+            for (String rel : selected) futures.add(ex.submit(() -> snippet(rel, qv)));
+            List<QueryModels.CodeSnippet> out = new ArrayList<>(futures.size());
+            for (java.util.concurrent.Future<QueryModels.CodeSnippet> f : futures) out.add(f.get());
+            return out;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } catch (java.util.concurrent.ExecutionException ee) {
+            // snippet() handles its own failures
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
+
+    private QueryModels.CodeSnippet snippet(String rel, float[] qv) {
+        QueryModels.CodeSnippet s = new QueryModels.CodeSnippet();
+        s.setPath(rel);
+        try {
+            Path file = Paths.get(rootPath).resolve(rel);
+            s.setContent(snippetReader.read(file, snippetRanges(rel, file, qv)));
+        } catch (Exception ex) {
+            s.setContent("");
+        }
+        return s;
+    }
+
+    // the best-matching (or, without a query vector, the first) stored chunks within the snippet
+    // budget, in file order, merged where they touch or overlap
+    private List<long[]> snippetRanges(String rel, Path file, float[] qv) throws IOException {
+        List<long[]> stored = qv == null ? vectorService.chunkRanges(applicationId, rel)
+                : vectorService.rankedChunkRanges(applicationId, rel, qv);
+        if (stored == null || stored.isEmpty()) {
+            return List.of(new long[] {0, Math.min(Files.size(file), snippetMaxBytes)});
+        }
+        List<long[]> picked = new ArrayList<>();
+        long budget = snippetMaxBytes;
+        for (long[] r : stored) {
+            if (budget <= 0) break;
+            long len = r[1] - r[0];
+            if (len <= 0) continue;
+            if (len <= budget) {
+                picked.add(r);
+                budget -= len;
+            } else if (picked.isEmpty() || qv == null) {
+                // the best chunk alone is over budget (or file order must not skip ahead): cut it
+                picked.add(new long[] {r[0], r[0] + budget});
+                budget = 0;
+            }
+        }
+        picked.sort(Comparator.comparingLong(r -> r[0]));
+        List<long[]> out = new ArrayList<>();
+        for (long[] r : picked) {
+            long[] last = out.isEmpty() ? null : out.get(out.size() - 1);
+            if (last != null && r[0] <= last[1]) last[1] = Math.max(last[1], r[1]);
+            else out.add(new long[] {r[0], r[1]});
+        }
+        return out;
     }
 
     // expose computed applicationId for admin operations
@@ -128,6 +397,72 @@ public class FileScanner {
         return this.applicationId;
     }
 
+    public String getRootPath() {
+        return this.rootPath;
+    }
+
+    /** Whether a path has one of the configured extensions. */
+    public boolean isIndexable(String path) {
+        String s = path.toLowerCase();
+        for (String e : extensions) if (s.endsWith(e)) return true;
+        return false;
+    }
+
+    /**
+     * Move a renamed file's chunks and manifest entry to its new path without re-embedding; the
+     * new path still has to be processed to pick up edits made along with the rename.
+     */
+    public int moveFile(String fromPath, String toPath) {
+        if (!isIndexable(toPath)) {
+            // renamed to something that is not indexed: the old chunks just go away
+            removeFile(fromPath);
+            return 0;
+        }
+        Long mtime = index.remove(fromPath);
+        if (mtime != null) index.put(toPath, mtime);
+        int moved = vectorService.moveFile(applicationId, fromPath, toPath);
+        if (manifest != null) manifest.move(applicationId, fromPath, toPath);
+        return moved;
+    }
+
+    /**
+     * Drop a deleted file (or every file under a deleted directory) from the index: its chunks,
+     * its ANN entries and its manifest entry.
+     */
+    public int removeFile(String relativePath) {
+        String dirPrefix = relativePath.endsWith(java.io.File.separator) ? relativePath : relativePath + java.io.File.separator;
+        List<String> gone = new ArrayList<>();
+        if (isIndexable(relativePath)) gone.add(relativePath);
+        for (String k : index.keySet()) if (k.startsWith(dirPrefix)) gone.add(k);
+        return forget(gone);
+    }
+
+    /**
+     * After a full listing, drop every file of this application that has chunks (or a manifest
+     * entry) but is no longer on disk.
+     */
+    public int removeMissing(Collection<String> listed) {
+        Set<String> present = new HashSet<>(listed);
+        Set<String> known = new LinkedHashSet<>(vectorService.indexedPaths(applicationId));
+        if (manifest != null) known.addAll(manifest.paths(applicationId));
+        List<String> gone = new ArrayList<>();
+        for (String rel : known) if (!present.contains(rel)) gone.add(rel);
+        if (gone.isEmpty()) return 0;
+        int removed = forget(gone);
+        log.info("Removed {} chunks of {} files no longer under {}", removed, gone.size(), rootPath);
+        return removed;
+    }
+
+    // drop files from the in-memory index, the vector store (in bulk) and the manifest
+    private int forget(List<String> gone) {
+        if (gone.isEmpty()) return 0;
+        for (String rel : gone) {
+            index.remove(rel);
+            if (manifest != null) manifest.remove(applicationId, rel);
+        }
+        return vectorService.removeFiles(applicationId, gone);
+    }
+
     /**
      * Return a list of relative file paths (relative to configured root) that match configured extensions.
      * This is used by the async scanner job to iterate files and report progress.
@@ -139,10 +474,7 @@ public class FileScanner {
         try (Stream<Path> paths = Files.walk(root)) {
             paths.filter(Files::isRegularFile)
                     .forEach(p -> {
-                        String s = p.toString().toLowerCase();
-                        boolean ok = false;
-                        for (String e : extensions) if (s.endsWith(e)) { ok = true; break; }
-                        if (!ok) return;
+                        if (!isIndexable(p.toString())) return;
                         try {
                             String rel = root.relativize(p).toString();
                             out.add(rel);
@@ -154,14 +486,16 @@ public class FileScanner {
 
     /**
      * Process a single file (relative path) by reading content and upserting vector chunks.
-     * This reuses existing indexing/chunking logic.
+     * This reuses existing indexing/chunking logic. Returns the files whose chunks could not be
+     * stored by this call: this file, or with cross-file batching every file of a batch it filled.
      */
-    public void processFile(String relativePath) {
+    public List<String> processFile(String relativePath) {
         try {
             Path p = java.nio.file.Paths.get(rootPath).resolve(relativePath);
-            indexFile(p);
+            return indexFile(p);
         } catch (Exception e) {
             log.warn("Failed to process {}: {}", relativePath, e.getMessage());
+            return List.of(relativePath);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.example.codetools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Overlapping windows of {@code size} characters, each starting {@code overlap} before the previous end. */
+public final class FixedWindowChunker implements Chunker {
+
+    private final int size;
+    private final int overlap;
+
+    public FixedWindowChunker(int size, int overlap) {
+        this.size = Math.max(1, size);
+        this.overlap = Math.max(0, Math.min(overlap, this.size - 1));
+    }
+
+    @Override
+    public List<int[]> split(String content) {
+        List<int[]> out = new ArrayList<>();
+        int len = content.length();
+        int idx = 0;
+        while (idx < len) {
+            int end = Math.min(idx + size, len);
+            out.add(new int[] {idx, end});
+            if (end == len) break;
+            idx = Math.max(0, end - overlap);
+        }
+        return out;
+    }
+}
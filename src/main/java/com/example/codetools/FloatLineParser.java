@@ -0,0 +1,151 @@
+package com.example.codetools;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for embedding replies: reads one line of ASCII numbers straight from a byte
+ * stream, accepting JSON arrays ({@code [0.1,-2e-3]}) as well as whitespace or comma separated
+ * values. Numbers with up to 15 significant digits and a small decimal exponent are assembled
+ * exactly in a double (no String per number); anything else falls back to {@link Float#parseFloat}.
+ *
+ * Reads a byte at a time, so hand it a buffered stream. Not thread-safe; keep one per reader.
+ */
+public final class FloatLineParser {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private float[] values = new float[1024];
+    private final char[] token = new char[64];
+
+    /**
+     * Parse the next line. Returns the numbers on it, or null when the line is empty or holds
+     * anything other than numbers and separators (e.g. an error message). Throws
+     * {@link EOFException} when the stream ends before a line starts.
+     */
+    public float[] parseLine(InputStream in) throws IOException {
+        return parse(in, true);
+    }
+
+    /** Parse numbers until the end of the stream, ignoring line breaks. */
+    public float[] parseAll(InputStream in) throws IOException {
+        return parse(in, false);
+    }
+
+    private float[] parse(InputStream in, boolean stopAtNewline) throws IOException {
+        int count = 0;
+        int len = 0; // chars in the current token
+        boolean malformed = false;
+        boolean any = false;
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                if (!any && stopAtNewline) throw new EOFException("stream ended");
+                break;
+            }
+            any = true;
+            if (b == '\n' && stopAtNewline) break;
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                if (len < token.length) token[len] = (char) b;
+                len++;
+                continue;
+            }
+            if (b == ',' || b == '[' || b == ']' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                if (len > 0 && !malformed) {
+                    float f = number(len);
+                    if (Float.isNaN(f)) malformed = true;
+                    else count = append(count, f);
+                }
+                len = 0;
+                continue;
+            }
+            malformed = true; // keep consuming to the end of the line
+        }
+        if (len > 0 && !malformed) {
+            float f = number(len);
+            if (Float.isNaN(f)) malformed = true;
+            else count = append(count, f);
+        }
+        if (malformed || count == 0) return null;
+        return Arrays.copyOf(values, count);
+    }
+
+    private int append(int count, float f) {
+        if (count == values.length) values = Arrays.copyOf(values, count * 2);
+        values[count] = f;
+        return count + 1;
+    }
+
+    // value of token[0, len), or NaN when it is not a number
+    private float number(int len) {
+        if (len > token.length) return Float.NaN;
+        int i = 0;
+        boolean negative = false;
+        if (token[0] == '-' || token[0] == '+') {
+            negative = token[0] == '-';
+            i = 1;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean dot = false;
+        for (; i < len; i++) {
+            char c = token[i];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (digits == 0 && c == '0') {
+                    if (dot) scale--;
+                    continue; // leading zero
+                }
+                if (digits >= 15) return slow(len);
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (dot) scale--;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else if (c == 'e' || c == 'E') {
+                break;
+            } else {
+                return Float.NaN;
+            }
+        }
+        if (!seenDigit) return Float.NaN;
+        if (i < len) {
+            // exponent
+            i++;
+            boolean expNegative = false;
+            if (i < len && (token[i] == '-' || token[i] == '+')) {
+                expNegative = token[i] == '-';
+                i++;
+            }
+            if (i == len) return Float.NaN;
+            int exp = 0;
+            for (; i < len; i++) {
+                char c = token[i];
+                if (c < '0' || c > '9') return Float.NaN;
+                if (exp < 1000) exp = exp * 10 + (c - '0');
+            }
+            scale += expNegative ? -exp : exp;
+        }
+        double v = mantissa;
+        if (mantissa != 0) {
+            if (scale < -22 || scale > 22) return slow(len);
+            v = scale < 0 ? v / POW10[-scale] : v * POW10[scale];
+        }
+        return (float) (negative ? -v : v);
+    }
+
+    private float slow(int len) {
+        try {
+            return Float.parseFloat(new String(token, 0, len));
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+}
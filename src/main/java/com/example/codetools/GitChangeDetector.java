@@ -0,0 +1,177 @@
+package com.example.codetools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asks git (through {@link ProcessRunner}) what changed under the scan root, so a rescan only
+ * touches those files. The scan root may be a subdirectory of the working tree: paths are
+ * reported relative to it, with the platform separator, and anything outside it is left out.
+ * Every method returns null when git cannot answer (not a work tree, unknown commit, git
+ * missing), in which case callers fall back to a full scan.
+ */
+@Slf4j
+@Component
+public class GitChangeDetector {
+
+    private final ProcessRunner runner;
+    private final String command;
+    private final boolean enabled;
+    private final long timeoutMs;
+
+    public GitChangeDetector(Environment env, ProcessRunner runner) {
+        this.runner = runner;
+        this.command = env.getProperty("scanner.git.command", "git");
+        this.enabled = Boolean.parseBoolean(env.getProperty("scanner.git.enabled", "true"));
+        this.timeoutMs = Long.parseLong(env.getProperty("scanner.git.timeout.ms", "30000"));
+    }
+
+    /** HEAD plus the paths the working tree has that HEAD does not (edited, staged or untracked). */
+    public Snapshot snapshot(Path root) {
+        if (!enabled) return null;
+        String head = run(root, "rev-parse", "--verify", "-q", "HEAD");
+        if (head == null || head.isBlank()) return null;
+        String diff = run(root, "diff", "--name-only", "-z", "--relative", "HEAD", "--");
+        List<String> untracked = untracked(root);
+        if (diff == null || untracked == null) return null;
+        Set<String> dirty = new LinkedHashSet<>(split(diff));
+        dirty.addAll(untracked);
+        return new Snapshot(head.trim(), dirty);
+    }
+
+    /**
+     * Paths that differ between the commit and the working tree (so commits pulled since then and
+     * uncommitted edits alike), with renames detected, plus untracked files.
+     */
+    public Changes changesSince(Path root, String commit) {
+        if (!enabled || commit == null || commit.isBlank()) return null;
+        String diff = run(root, "diff", "--name-status", "-z", "-M", "--relative", commit, "--");
+        List<String> untracked = untracked(root);
+        if (diff == null || untracked == null) return null;
+        Changes changes = parseNameStatus(diff);
+        changes.modified.addAll(untracked);
+        return changes;
+    }
+
+    // `git diff --name-status -z`: status, path[, new path for renames/copies], NUL separated
+    static Changes parseNameStatus(String out) {
+        Changes c = new Changes();
+        List<String> t = split(out);
+        int i = 0;
+        while (i < t.size()) {
+            String status = t.get(i);
+            char kind = status.isEmpty() ? '?' : status.charAt(0);
+            if ((kind == 'R' || kind == 'C') && i + 2 < t.size()) {
+                if (kind == 'R') c.renamed.put(t.get(i + 1), t.get(i + 2));
+                else c.modified.add(t.get(i + 2));
+                i += 3;
+            } else if (i + 1 < t.size()) {
+                if (kind == 'D') c.deleted.add(t.get(i + 1));
+                else c.modified.add(t.get(i + 1));
+                i += 2;
+            } else {
+                break;
+            }
+        }
+        return c;
+    }
+
+    private List<String> untracked(Path root) {
+        String out = run(root, "ls-files", "--others", "--exclude-standard", "-z");
+        return out == null ? null : split(out);
+    }
+
+    private static List<String> split(String nulSeparated) {
+        List<String> out = new ArrayList<>();
+        for (String s : nulSeparated.split("\0")) {
+            if (s.isEmpty()) continue;
+            out.add(File.separatorChar == '/' ? s : s.replace('/', File.separatorChar));
+        }
+        return out;
+    }
+
+    // stdout of `git -C root args...`, or null when git failed
+    private String run(Path root, String... args) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(command);
+        cmd.add("-C");
+        cmd.add(root.toString());
+        cmd.addAll(Arrays.asList(args));
+        try {
+            Process proc = runner.start(cmd);
+            proc.getOutputStream().close();
+            // read both pipes on their own threads so the timeout covers the whole call, including
+            // a git that hangs with stdout open (a lock, a credential prompt, a slow filesystem)
+            StringBuilder err = new StringBuilder();
+            Thread errReader = Thread.ofVirtual().start(() -> {
+                try (InputStream in = proc.getErrorStream()) {
+                    err.append(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                } catch (IOException ignored) {}
+            });
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Thread outReader = Thread.ofVirtual().start(() -> {
+                try (InputStream in = proc.getInputStream()) {
+                    in.transferTo(out);
+                } catch (IOException ignored) {}
+            });
+            if (!proc.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+                proc.destroyForcibly();
+                log.warn("git {} timed out", args[0]);
+                return null;
+            }
+            // the pipes close when git exits, unless a child it spawned still holds them
+            outReader.join(1000);
+            errReader.join(1000);
+            if (outReader.isAlive()) {
+                log.warn("git {} left its output open", args[0]);
+                return null;
+            }
+            if (proc.exitValue() != 0) {
+                log.debug("git {} exited with {}: {}", args[0], proc.exitValue(), err.toString().trim());
+                return null;
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.debug("git {} failed: {}", args[0], e.getMessage());
+            return null;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /** The commit a scan starts from and the working-tree paths that are not part of it. */
+    public static class Snapshot {
+        private final String head;
+        private final Set<String> dirty;
+
+        public Snapshot(String head, Set<String> dirty) {
+            this.head = head;
+            this.dirty = dirty;
+        }
+
+        public String getHead() { return head; }
+        public Set<String> getDirty() { return dirty; }
+    }
+
+    /** Paths that changed since a commit: modified or added, deleted, and renamed (old to new). */
+    public static class Changes {
+        private final Set<String> modified = new LinkedHashSet<>();
+        private final Set<String> deleted = new LinkedHashSet<>();
+        private final Map<String, String> renamed = new LinkedHashMap<>();
+
+        public Set<String> getModified() { return modified; }
+        public Set<String> getDeleted() { return deleted; }
+        public Map<String, String> getRenamed() { return renamed; }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.codetools;
 
 import com.github.jelmerk.hnswlib.core.hnsw.HnswIndex;
+import com.github.jelmerk.hnswlib.core.hnsw.SizeLimitExceededException;
 import com.github.jelmerk.hnswlib.core.DistanceFunctions;
 import com.github.jelmerk.hnswlib.core.SearchResult;
 import com.github.jelmerk.hnswlib.core.Item;
@@ -15,27 +16,47 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
 
+/**
+ * HNSW-backed {@link AnnIndex} that keeps one graph per application. The partition of a vector is
+ * the applicationId prefix of its id ({@code app:path:chunk}); ids without a prefix share the
+ * default partition. Each partition has its own dimension, capacity, lock and persist file, so a
+ * query only walks the graph of the application it targets and one application can be rebuilt or
+ * reloaded without touching the others. Stored vectors are unit length and graphs use
+ * inner-product distance.
+ */
 @Service
-@Profile("!ann-dev")
+@Profile("!ann-dev & !ann-sq & !ann-ivfpq & !ann-ivf")
 public class HnswAnnService implements AnnIndex, Serializable {
     // Explicit SLF4J logger used to avoid Lombok annotation processor issues in some environments
     private static final Logger log = LoggerFactory.getLogger(HnswAnnService.class);
 
-    // Fallback store used only when HNSW index is not yet initialized or for persistence compatibility
-    private final Map<String, float[]> store = new HashMap<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // partition name used for ids that carry no applicationId prefix
+    static final String DEFAULT_PARTITION = "";
 
-    // jelmerk HNSW index. Will be lazily initialized when we know the vector dimension.
-    private transient HnswIndex<String, float[], Item<String, float[]>, Float> index;
-    private volatile int dimension = -1;
+    // partition file header: magic, format version, payload length and CRC32C, then dimension,
+    // item count and partition name; the payload is the graph as written by HnswIndex.save
+    static final long PARTITION_MAGIC = 0x484e5357_50415254L; // "HNSWPART"
+    static final int PARTITION_VERSION = 1;
+    private static final int PAYLOAD_LENGTH_AT = 12;
 
-    // configurable HNSW parameters (can be overridden in application.properties)
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    // set while rebuildFromDatabase runs: adds and removes made meanwhile, replayed onto the rebuilt graphs
+    private volatile Rebuild rebuild;
+
+    // configurable HNSW parameters (can be overridden in application.properties); maxItems is per partition
     @Value("${hnsw.m:16}")
     private int m;
 
@@ -90,6 +111,9 @@ public class HnswAnnService implements AnnIndex, Serializable {
     @Autowired(required = false)
     private VectorRepository vectorRepository; // used for full rebuild
 
+    @Autowired(required = false)
+    private QueryCache queryCache; // cached retrieval results go stale when the index is rebuilt
+
     // explicit no-arg constructor (preserve Spring instantiation)
     public HnswAnnService() {
     }
@@ -102,306 +126,500 @@ public class HnswAnnService implements AnnIndex, Serializable {
         this.rebuildPageSize = rebuildPageSize;
     }
 
-    private void ensureIndex(int dim) {
-        if (index != null && dimension == dim) return;
-        lock.writeLock().lock();
-        try {
-            if (index != null && dimension == dim) return;
-            // create new HNSW index with cosine distance and configured defaults
-            this.dimension = dim;
-            this.index = HnswIndex.newBuilder(dim, DistanceFunctions.FLOAT_COSINE_DISTANCE, maxItems)
-                    .withM(m)
-                    .withEfConstruction(efConstruction)
-                    .build();
-
-            // populate from fallback store if any
-            for (Map.Entry<String, float[]> e : store.entrySet()) {
-                index.add(new SimpleItem(e.getKey(), e.getValue()));
-            }
-            // clear fallback store to avoid double storage
-            store.clear();
-        } finally {
-            lock.writeLock().unlock();
-        }
+    // package-private for tests that rebuild without a Spring context
+    void setVectorRepository(VectorRepository vectorRepository) {
+        this.vectorRepository = vectorRepository;
+    }
+
+    /** Partition (applicationId) an id belongs to: everything before the first ':'. */
+    static String partitionOf(String id) {
+        if (id == null) return DEFAULT_PARTITION;
+        int i = id.indexOf(':');
+        return i < 0 ? DEFAULT_PARTITION : id.substring(0, i);
+    }
+
+    private HnswIndex<String, float[], Item<String, float[]>, Float> newIndex(int dim, int capacity) {
+        // vectors are unit length, so inner product ranks like cosine without recomputing norms
+        return HnswIndex.newBuilder(dim, DistanceFunctions.FLOAT_INNER_PRODUCT, capacity)
+                .withM(m)
+                .withEfConstruction(efConstruction)
+                // lets deletes and re-adds of an id update the graph in place instead of rebuilding it
+                .withRemoveEnabled()
+                .build();
+    }
+
+    // fetch or lazily create the partition; the graph itself is created on the first vector
+    private Partition partition(String name) {
+        return partitions.computeIfAbsent(name, Partition::new);
     }
 
     @Override
     public void add(String id, float[] vector) {
         if (vector == null) return;
-        lock.writeLock().lock();
+        Partition part = partition(partitionOf(id));
+        float[] v = VectorUtils.normalizedCopy(vector);
+        part.lock.writeLock().lock();
         try {
-            if (index == null) {
-                // buffer until we can initialize index
-                store.put(id, Arrays.copyOf(vector, vector.length));
-                // try to initialize now
-                ensureIndex(vector.length);
-                return;
-            }
-            index.add(new SimpleItem(id, Arrays.copyOf(vector, vector.length)));
+            insert(part, id, v);
+            journal(part.name, id, v);
         } finally {
-            lock.writeLock().unlock();
+            part.lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the partition write lock (or owns a staging partition)
+    private void insert(Partition part, String id, float[] v) {
+        if (part.index == null) {
+            part.dimension = v.length;
+            part.index = newIndex(v.length, Math.max(maxItems, 1));
+        }
+        try {
+            part.index.add(new SimpleItem(id, v));
+        } catch (SizeLimitExceededException full) {
+            // capacity is hnsw.max.items per partition, and removed nodes keep their slot until the
+            // graph is rebuilt, so a busy partition can fill up; double it rather than drop vectors
+            int capacity = part.index.getMaxItemCount();
+            int grown = (int) Math.min(Integer.MAX_VALUE, Math.max(2L * capacity, capacity + 1L));
+            log.info("HNSW partition '{}' is full at {} items; growing it to {}", part.name, capacity, grown);
+            part.index.resize(grown);
+            part.index.add(new SimpleItem(id, v));
         }
     }
 
     @Override
     public void remove(String id) {
-        lock.writeLock().lock();
-        try {
-            if (index != null) {
-                try {
-                    // remove requires the item id and a timestamp/lock; use remove(id, 0) if supported
-                    boolean removed = index.remove(id, 0L);
-                    if (!removed) {
-                        // rebuild index without this id
-                        Collection<com.github.jelmerk.hnswlib.core.Item<String, float[]>> items = index.items();
-                        HnswIndex<String, float[], Item<String, float[]>, Float> newIndex = HnswIndex.newBuilder(dimension, index.getDistanceFunction(), index.getMaxItemCount())
-                                .withM(index.getM())
-                                .withEfConstruction(index.getEfConstruction())
-                                .build();
-                        for (com.github.jelmerk.hnswlib.core.Item<String, float[]> it : items) {
-                            if (!Objects.equals(it.id(), id)) {
-                                newIndex.add(it);
-                            }
-                        }
-                        this.index = newIndex;
-                    }
-                } catch (UnsupportedOperationException | NoSuchMethodError e) {
-                    // some HNSW implementations may not support remove; fall back to rebuild pattern
-                    Collection<com.github.jelmerk.hnswlib.core.Item<String, float[]>> items = index.items();
-                    HnswIndex<String, float[], Item<String, float[]>, Float> newIndex = HnswIndex.newBuilder(dimension, index.getDistanceFunction(), index.getMaxItemCount())
-                            .withM(index.getM())
-                            .withEfConstruction(index.getEfConstruction())
-                            .build();
-                    for (com.github.jelmerk.hnswlib.core.Item<String, float[]> it : items) {
-                        if (!Objects.equals(it.id(), id)) {
-                            newIndex.add(it);
-                        }
-                    }
-                    this.index = newIndex;
-                }
-            } else {
-                store.remove(id);
+        removeAll(Collections.singletonList(id));
+    }
+
+    /**
+     * Remove ids partition by partition, taking each partition's lock once. Graphs built with
+     * removal support delete in place; older graphs (loaded from files written before removal was
+     * enabled) are rebuilt once per batch rather than once per id.
+     */
+    @Override
+    public void removeAll(Collection<String> ids) {
+        Map<String, Set<String>> byPartition = new HashMap<>();
+        for (String id : ids) byPartition.computeIfAbsent(partitionOf(id), k -> new HashSet<>()).add(id);
+        for (Map.Entry<String, Set<String>> e : byPartition.entrySet()) {
+            Partition part = partitions.get(e.getKey());
+            if (part == null) continue;
+            part.lock.writeLock().lock();
+            try {
+                for (String id : e.getValue()) journal(part.name, id, null);
+                delete(part, e.getValue());
+            } finally {
+                part.lock.writeLock().unlock();
             }
-        } finally {
-            lock.writeLock().unlock();
         }
     }
 
+    // caller holds the partition write lock
+    private void delete(Partition part, Set<String> ids) {
+        if (part.index == null) return;
+        Set<String> present = new HashSet<>();
+        for (String id : ids) if (part.index.contains(id)) present.add(id);
+        if (present.isEmpty()) return;
+        if (part.index.isRemoveEnabled()) {
+            for (String id : present) part.index.remove(id, 0L);
+        } else {
+            rebuildWithout(part, present);
+        }
+    }
+
+    // record a mutation of a partition that a running rebuild has not swapped in yet (caller holds
+    // the partition write lock); vector null means remove
+    private void journal(String partition, String id, float[] vector) {
+        Rebuild r = rebuild;
+        if (r == null || !r.covers(partition) || r.swapped.contains(partition)) return;
+        r.journal.computeIfAbsent(partition, k -> new ArrayList<>()).add(new Mutation(id, vector));
+    }
+
+    // rebuild only the affected partition without the given ids (caller holds the partition write lock)
+    private void rebuildWithout(Partition part, Set<String> ids) {
+        HnswIndex<String, float[], Item<String, float[]>, Float> old = part.index;
+        HnswIndex<String, float[], Item<String, float[]>, Float> rebuilt = HnswIndex.newBuilder(part.dimension, old.getDistanceFunction(), old.getMaxItemCount())
+                .withM(old.getM())
+                .withEfConstruction(old.getEfConstruction())
+                .withRemoveEnabled()
+                .build();
+        for (Item<String, float[]> it : old.items()) {
+            if (!ids.contains(it.id())) {
+                rebuilt.add(it);
+            }
+        }
+        part.index = rebuilt;
+    }
+
+    /**
+     * Query across every partition whose dimension matches the query vector and merge by distance.
+     * Callers that know the application should prefer {@link #query(String, float[], int)}.
+     */
     @Override
     public List<String> query(float[] q, int topK) {
         if (q == null || topK <= 0) return Collections.emptyList();
-        lock.readLock().lock();
-        try {
-            if (index == null) {
-                // fallback brute-force
-                return store.entrySet().stream()
-                        .map(e -> new AbstractMap.SimpleEntry<>(e.getKey(), cosine(q, e.getValue())))
-                        .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
-                        .limit(topK)
-                        .map(Map.Entry::getKey)
-                        .collect(Collectors.toList());
-            }
+        List<SearchResult<Item<String, float[]>, Float>> merged = new ArrayList<>();
+        for (Partition part : partitions.values()) {
+            merged.addAll(part.search(q, topK));
+        }
+        merged.sort(Comparator.comparing(SearchResult::distance));
+        List<String> ids = new ArrayList<>(Math.min(topK, merged.size()));
+        for (int i = 0; i < merged.size() && i < topK; i++) ids.add(merged.get(i).item().id());
+        return ids;
+    }
 
-            List<SearchResult<Item<String, float[]>, Float>> results = index.findNearest(q, topK);
-            List<String> ids = new ArrayList<>(results.size());
-            for (SearchResult<Item<String, float[]>, Float> r : results) {
-                ids.add(r.item().id());
-            }
-            return ids;
-        } finally {
-            lock.readLock().unlock();
+    /** Query only the partition of the given application. */
+    @Override
+    public List<String> query(String applicationId, float[] q, int topK) {
+        if (q == null || topK <= 0) return Collections.emptyList();
+        Partition part = partitions.get(applicationId == null ? DEFAULT_PARTITION : applicationId);
+        if (part == null) return Collections.emptyList();
+        List<SearchResult<Item<String, float[]>, Float>> results = part.search(q, topK);
+        List<String> ids = new ArrayList<>(results.size());
+        for (SearchResult<Item<String, float[]>, Float> r : results) {
+            ids.add(r.item().id());
         }
+        return ids;
     }
 
+    /**
+     * Build fresh partitions from the persisted VectorRepository. Partitions are assembled off to
+     * the side and swapped in at the end so queries keep being served during the rebuild; adds and
+     * removes made in the meantime are journaled and replayed onto the new graphs as they are
+     * swapped in, so none of them is lost.
+     */
     @Override
-    public void rebuildFromDatabase() throws Exception {
-        // Build a fresh index from the persisted VectorRepository. This will clear any in-memory
-        // store/index and populate using the stored vectors (vectorBlob or vectorJson).
+    public synchronized void rebuildFromDatabase() throws Exception {
         if (vectorRepository == null) {
             throw new IllegalStateException("VectorRepository not available for rebuild");
         }
-        lock.writeLock().lock();
+        rebuild = new Rebuild(null);
         try {
-            // clear current state
-            if (index != null) {
-                // HnswIndex does not expose a close; just drop the reference and let GC reclaim resources
-                index = null;
-            }
-            store.clear();
-            // Paged scan to avoid loading all vectors into memory at once
+            Map<String, Partition> rebuilt = new HashMap<>();
             int page = 0;
-            int dim = -1;
             while (true) {
                 Page<VectorRecord> p = vectorRepository.findAll(PageRequest.of(page, rebuildPageSize));
                 if (!p.hasContent()) break;
-                for (VectorRecord r : p.getContent()) {
-                    try {
-                        byte[] blob = r.getVectorBlob();
-                        float[] v = null;
-                        if (blob != null && blob.length > 0) v = VectorServiceHelper.gzipBytesToFloatArrayStatic(blob);
-                        else v = VectorServiceHelper.jsonToFloatArray(r.getVectorJson());
-                        if (v != null) { dim = v.length; break; }
-                    } catch (Exception ex) {
-                        // skip malformed
-                    }
-                }
-                if (dim != -1) break;
+                addRecords(rebuilt, p.getContent(), null);
                 if (!p.hasNext()) break;
                 page++;
             }
-            if (dim == -1) return;
-            ensureIndex(dim);
-            // second pass: add all vectors page by page
-            page = 0;
+            // partitions with no rows left are emptied, not dropped, so a concurrent add keeps its target
+            for (String name : new ArrayList<>(partitions.keySet())) {
+                if (!rebuilt.containsKey(name)) swapIn(new Partition(name));
+            }
+            for (Partition part : rebuilt.values()) swapIn(part);
+        } finally {
+            rebuild = null;
+        }
+        if (queryCache != null) queryCache.invalidate();
+    }
+
+    /** Rebuild the partition of one application from the database, leaving the others untouched. */
+    public synchronized void rebuildFromDatabase(String applicationId) throws Exception {
+        if (vectorRepository == null) {
+            throw new IllegalStateException("VectorRepository not available for rebuild");
+        }
+        rebuild = new Rebuild(applicationId);
+        try {
+            Map<String, Partition> rebuilt = new HashMap<>();
+            int page = 0;
             while (true) {
-                Page<VectorRecord> p = vectorRepository.findAll(PageRequest.of(page, rebuildPageSize));
+                Page<VectorRecord> p = vectorRepository.findByApplicationId(applicationId, PageRequest.of(page, rebuildPageSize));
                 if (!p.hasContent()) break;
-                for (VectorRecord r : p.getContent()) {
-                    try {
-                        byte[] blob = r.getVectorBlob();
-                        float[] v = null;
-                        if (blob != null && blob.length > 0) v = VectorServiceHelper.gzipBytesToFloatArrayStatic(blob);
-                        else v = VectorServiceHelper.jsonToFloatArray(r.getVectorJson());
-                        if (v == null) continue;
-                        index.add(new SimpleItem(r.getId(), v));
-                    } catch (Exception ex) {
-                        // skip malformed
-                    }
-                }
+                addRecords(rebuilt, p.getContent(), applicationId);
                 if (!p.hasNext()) break;
                 page++;
             }
+            Partition part = rebuilt.get(applicationId);
+            swapIn(part == null ? new Partition(applicationId) : part);
         } finally {
-            lock.writeLock().unlock();
+            rebuild = null;
         }
+        if (queryCache != null) queryCache.invalidate();
     }
 
-    @Override
-    public long size() {
-        lock.readLock().lock();
+    // decode each record and add it to its partition in the staging map; only records of
+    // onlyPartition are kept when it is set
+    private void addRecords(Map<String, Partition> staging, List<VectorRecord> records, String onlyPartition) {
+        for (VectorRecord r : records) {
+            String name = partitionOf(r.getId());
+            if (onlyPartition != null && !onlyPartition.equals(name)) continue;
+            float[] v = VectorServiceHelper.decode(r);
+            if (v == null) {
+                log.debug("skipping vector {}: missing or malformed", r.getId());
+                continue;
+            }
+            Partition part = staging.computeIfAbsent(name, Partition::new);
+            if (part.index != null && v.length != part.dimension) continue;
+            VectorUtils.normalize(v); // no-op for rows normalized at ingest
+            insert(part, r.getId(), v);
+        }
+    }
+
+    // replace the live graph of a partition with a freshly built one (an empty Partition clears it),
+    // then replay whatever a running rebuild journaled for it
+    private void swapIn(Partition fresh) {
+        Partition live = partition(fresh.name);
+        live.lock.writeLock().lock();
         try {
-            if (index != null) return index.size();
-            return store.size();
+            live.index = fresh.index;
+            live.dimension = fresh.dimension;
+            Rebuild r = rebuild;
+            if (r == null || !r.covers(live.name)) return;
+            r.swapped.add(live.name);
+            List<Mutation> pending = r.journal.remove(live.name);
+            if (pending == null) return;
+            for (Mutation mu : pending) {
+                if (mu.vector() == null) delete(live, Set.of(mu.id()));
+                else if (live.index == null || mu.vector().length == live.dimension) insert(live, mu.id(), mu.vector());
+            }
         } finally {
-            lock.readLock().unlock();
+            live.lock.writeLock().unlock();
         }
     }
 
-    private double cosine(float[] a, float[] b) {
-        if (a == null || b == null) return -1.0;
-        int n = Math.min(a.length, b.length);
-        double dot=0, na=0, nb=0;
-        for (int i=0;i<n;i++) { dot += a[i]*b[i]; na += a[i]*a[i]; nb += b[i]*b[i]; }
-        if (na==0 || nb==0) return -1.0;
-        return dot / (Math.sqrt(na)*Math.sqrt(nb));
+    @Override
+    public long size() {
+        long total = 0;
+        for (Partition part : partitions.values()) total += part.size();
+        return total;
     }
 
+    /**
+     * Persist every partition to its own file next to {@code file} and write a manifest
+     * (partition name -> file name) to {@code file} itself. Like the partitions, the manifest is
+     * written to a temp file and moved into place, so a crash never leaves a truncated one.
+     */
     @Override
     public void persistTo(java.nio.file.Path file) throws Exception {
-        lock.readLock().lock();
+        Map<String, String> manifest = new LinkedHashMap<>();
+        for (Partition part : partitions.values()) {
+            Path partFile = partitionFile(file, part.name);
+            persistPartition(part.name, partFile);
+            manifest.put(part.name, partFile.getFileName().toString());
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
         try {
-            if (index != null) {
-                // serialize a deterministic Map of id->vector extracted from the index
-                Map<String, float[]> persistMap = new HashMap<>();
-                for (com.github.jelmerk.hnswlib.core.Item<String, float[]> it : index.items()) {
-                    persistMap.put(it.id(), Arrays.copyOf(it.vector(), it.vector().length));
-                }
-                List<String> ids = new ArrayList<>();
-                for (String k : persistMap.keySet()) ids.add(k);
-                log.info("persistTo: extracted map size={} from index size={} ids={}", persistMap.size(), index.size(), ids);
-                try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
-                    oos.writeObject(persistMap);
-                }
-                // record last persisted metadata on explicit persist
-                lastPersistedPath = file.toAbsolutePath().toString();
-                lastPersistedAt = java.time.Instant.now();
-                log.info("Persisted HNSW index (as map) to {}", lastPersistedPath);
-                return;
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                 ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos))) {
+                oos.writeObject(manifest);
+                oos.flush();
+                fos.getFD().sync();
             }
-            // fallback: serialize the buffer store
-            try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
-                oos.writeObject(this.store);
+        } catch (Exception e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // record last persisted metadata on explicit persist
+        lastPersistedPath = file.toAbsolutePath().toString();
+        lastPersistedAt = java.time.Instant.now();
+        log.info("Persisted HNSW index ({} partitions) to {}", manifest.size(), lastPersistedPath);
+    }
+
+    /**
+     * Persist a single partition with its graph (see {@link #PARTITION_MAGIC} for the layout), so
+     * loading it reads the graph back instead of re-inserting every vector. The file is written
+     * next to its target and moved into place, so a crash mid-write leaves the old file intact.
+     */
+    public void persistPartition(String applicationId, Path file) throws Exception {
+        Partition part = partitions.get(applicationId);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            writePartition(applicationId, part, tmp);
+        } catch (Exception e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writePartition(String applicationId, Partition part, Path tmp) throws IOException {
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(new UnclosableOutputStream(Channels.newOutputStream(ch)), 1 << 16);
+            java.util.zip.CRC32C crc = new java.util.zip.CRC32C();
+            if (part != null) part.lock.readLock().lock();
+            try {
+                HnswIndex<String, float[], Item<String, float[]>, Float> index = part == null ? null : part.index;
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeLong(PARTITION_MAGIC);
+                header.writeInt(PARTITION_VERSION);
+                header.writeLong(0L); // payload length and checksum, filled in below
+                header.writeLong(0L);
+                header.writeInt(index == null ? -1 : part.dimension);
+                header.writeInt(index == null ? 0 : index.size());
+                header.writeUTF(applicationId);
+                header.flush();
+                long start = ch.position();
+                if (index != null) {
+                    // save closes the stream it is given; ours only flushes
+                    java.util.zip.CheckedOutputStream payload = new java.util.zip.CheckedOutputStream(out, crc);
+                    index.save(new UnclosableOutputStream(payload));
+                    out.flush();
+                }
+                ByteBuffer lengthAndChecksum = ByteBuffer.allocate(16).putLong(ch.position() - start).putLong(crc.getValue()).flip();
+                ch.write(lengthAndChecksum, PAYLOAD_LENGTH_AT);
+            } finally {
+                if (part != null) part.lock.readLock().unlock();
             }
-        } finally {
-            lock.readLock().unlock();
+            ch.force(true);
         }
     }
 
+    /**
+     * Load a manifest written by {@link #persistTo}, replacing all partitions. Older single-file
+     * id -> vector maps and native jelmerk indexes are still accepted and split into partitions.
+     */
     @Override
     @SuppressWarnings("unchecked")
     public void loadFrom(java.nio.file.Path file) throws Exception {
-        lock.writeLock().lock();
-        try {
-            // Prefer our serialized Map format first (deterministic), then fall back to jelmerk index load
-            boolean handled = false;
-            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
-                Object o = ois.readObject();
-                if (o instanceof Map) {
-                    // replace current index/store with the persisted map
-                    Map<String, float[]> persistedMap = (Map<String, float[]>) o;
-                    List<String> keys = new ArrayList<>(persistedMap.keySet());
-                    log.info("loadFrom: deserialized map size={} keys={}", persistedMap.size(), keys);
-                    // determine dimension
-                    int dim = -1;
-                    for (float[] v : persistedMap.values()) { if (v != null) { dim = v.length; break; } }
-                    if (dim == -1) return;
-                    // clear current state
-                    index = null;
-                    store.clear();
-                    ensureIndex(dim);
-                    for (Map.Entry<String, float[]> e : persistedMap.entrySet()) {
-                        if (e.getValue() != null) index.add(new SimpleItem(e.getKey(), e.getValue()));
-                    }
-                    List<String> idxIds = new ArrayList<>();
-                    for (com.github.jelmerk.hnswlib.core.Item<String, float[]> it : index.items()) idxIds.add(it.id());
-                    log.info("loadFrom: index size after load={} ids={}", index.size(), idxIds);
-                    handled = true;
+        Object o = null;
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            o = ois.readObject();
+        } catch (Exception ex) {
+            // not one of our serialized maps; we'll try jelmerk load next
+        }
+
+        if (o instanceof Map) {
+            Map<String, ?> map = (Map<String, ?>) o;
+            boolean manifest = map.values().stream().anyMatch(v -> v instanceof String);
+            Map<String, Partition> loaded = new HashMap<>();
+            if (manifest) {
+                Path dir = file.toAbsolutePath().getParent();
+                for (Map.Entry<String, ?> e : map.entrySet()) {
+                    Partition part = readPartition(e.getKey(), dir.resolve((String) e.getValue()));
+                    if (part != null) loaded.put(part.name, part);
+                }
+            } else {
+                // legacy format: one map holding the vectors of every application
+                for (Map.Entry<String, ?> e : map.entrySet()) {
+                    if (!(e.getValue() instanceof float[])) continue;
+                    addLoaded(loaded, e.getKey(), (float[]) e.getValue());
                 }
-            } catch (Exception ex) {
-                // not a Map or failed to deserialize; we'll try jelmerk load next
             }
+            replaceAll(loaded);
+            log.info("loadFrom: loaded {} partitions, size={}", loaded.size(), size());
+            return;
+        }
 
-            if (!handled) {
-                try {
-                    HnswIndex<String, float[], Item<String, float[]>, Float> loaded = HnswIndex.load(file);
-                    this.index = loaded;
-                    this.dimension = loaded.getDimensions();
-                    List<String> idxIds2 = new ArrayList<>();
-                    for (com.github.jelmerk.hnswlib.core.Item<String, float[]> it : index.items()) idxIds2.add(it.id());
-                    log.info("loadFrom: loaded jelmerk HnswIndex with size={} ids={}", index.size(), idxIds2);
-                } catch (Exception ex) {
-                    throw ex;
-                }
+        HnswIndex<String, float[], Item<String, float[]>, Float> legacy = HnswIndex.load(file);
+        Map<String, Partition> loaded = new HashMap<>();
+        for (Item<String, float[]> it : legacy.items()) addLoaded(loaded, it.id(), it.vector());
+        replaceAll(loaded);
+        log.info("loadFrom: split jelmerk HnswIndex into {} partitions, size={}", loaded.size(), size());
+    }
+
+    /** Reload one partition from a file written by {@link #persistPartition}. */
+    public void loadPartition(String applicationId, Path file) throws Exception {
+        Partition part = readPartition(applicationId, file);
+        swapIn(part == null ? new Partition(applicationId) : part);
+        if (queryCache != null) queryCache.invalidate();
+    }
+
+    private Partition readPartition(String name, Path file) throws Exception {
+        if (isNativePartition(file)) return readNativePartition(name, file);
+        return readLegacyPartition(name, file);
+    }
+
+    static boolean isNativePartition(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readLong() == PARTITION_MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // reads the graph as saved; the checksum is computed while reading and checked before use
+    private Partition readNativePartition(String name, Path file) throws Exception {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            in.readLong();
+            int version = in.readInt();
+            if (version != PARTITION_VERSION) throw new IOException("unsupported HNSW partition version " + version + " in " + file);
+            long length = in.readLong();
+            long checksum = in.readLong();
+            int dimension = in.readInt();
+            int count = in.readInt();
+            in.readUTF();
+            if (length == 0) return null;
+            java.util.zip.CRC32C crc = new java.util.zip.CRC32C();
+            BoundedInputStream bounded = new BoundedInputStream(in, length);
+            java.util.zip.CheckedInputStream payload = new java.util.zip.CheckedInputStream(bounded, crc);
+            HnswIndex<String, float[], Item<String, float[]>, Float> index;
+            try {
+                index = HnswIndex.load(payload);
+                // the checksum has to cover every payload byte, including any the reader left behind
+                payload.transferTo(OutputStream.nullOutputStream());
+            } catch (EOFException e) {
+                throw new IOException("HNSW partition file " + file + " is truncated", e);
+            } catch (IOException | RuntimeException e) {
+                throw new IOException("HNSW partition file " + file + " is corrupt", e);
             }
-        } finally {
-            lock.writeLock().unlock();
+            if (bounded.remaining > 0) throw new IOException("HNSW partition file " + file + " is truncated");
+            if (crc.getValue() != checksum) throw new IOException("checksum mismatch in HNSW partition file " + file);
+            Partition part = new Partition(name);
+            part.dimension = dimension;
+            part.index = index;
+            log.debug("read partition {} ({} items) from {}", name, count, file);
+            return part;
         }
     }
 
-    // allow runtime reconfiguration of HNSW params (rebuilds index)
+    // partition files written before the graph was persisted: an id -> vector map, re-inserted
+    @SuppressWarnings("unchecked")
+    private Partition readLegacyPartition(String name, Path file) throws Exception {
+        Map<String, float[]> persistedMap;
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            persistedMap = (Map<String, float[]>) ois.readObject();
+        }
+        Map<String, Partition> staging = new HashMap<>();
+        for (Map.Entry<String, float[]> e : persistedMap.entrySet()) {
+            addLoaded(staging, e.getKey(), e.getValue());
+        }
+        Partition part = staging.get(name);
+        if (part == null && !staging.isEmpty()) part = staging.values().iterator().next();
+        return part;
+    }
+
+    private void addLoaded(Map<String, Partition> staging, String id, float[] v) {
+        if (v == null) return;
+        Partition part = staging.computeIfAbsent(partitionOf(id), Partition::new);
+        if (part.index != null && v.length != part.dimension) return;
+        insert(part, id, VectorUtils.normalizedCopy(v));
+    }
+
+    private void replaceAll(Map<String, Partition> loaded) {
+        for (String name : new ArrayList<>(partitions.keySet())) {
+            if (!loaded.containsKey(name)) swapIn(new Partition(name));
+        }
+        for (Partition part : loaded.values()) swapIn(part);
+        if (queryCache != null) queryCache.invalidate();
+    }
+
+    // file holding one partition, placed next to the manifest: ann-index.idx -> ann-index.idx.<app>.part
+    static Path partitionFile(Path manifest, String partition) {
+        String safe = partition.isEmpty() ? "_default" : partition.replaceAll("[^A-Za-z0-9._-]", "_");
+        return manifest.resolveSibling(manifest.getFileName().toString() + "." + safe + ".part");
+    }
+
+    // allow runtime reconfiguration of HNSW params (rebuilds every partition)
     public synchronized void reconfigure(int newM, int newEfConstruction, int newMaxItems) throws Exception {
-        lock.writeLock().lock();
-        try {
-            this.m = newM;
-            this.efConstruction = newEfConstruction;
-            this.maxItems = newMaxItems;
-            // if we have an index, rebuild it with new params while preserving items
-            Collection<com.github.jelmerk.hnswlib.core.Item<String, float[]>> items = null;
-            if (index != null) items = index.items();
-            int dim = this.dimension;
-            if (dim <= 0) return;
-            HnswIndex<String, float[], Item<String, float[]>, Float> newIndex = HnswIndex.newBuilder(dim, DistanceFunctions.FLOAT_COSINE_DISTANCE, maxItems)
-                    .withM(m)
-                    .withEfConstruction(efConstruction)
-                    .build();
-            if (items != null) {
-                for (com.github.jelmerk.hnswlib.core.Item<String, float[]> it : items) {
-                    newIndex.add(it);
+        this.m = newM;
+        this.efConstruction = newEfConstruction;
+        this.maxItems = newMaxItems;
+        for (Partition part : partitions.values()) {
+            part.lock.writeLock().lock();
+            try {
+                if (part.index == null) continue;
+                // rebuild with new params while preserving items
+                // never below the live item count, or the rebuild would overflow
+                HnswIndex<String, float[], Item<String, float[]>, Float> rebuilt = newIndex(part.dimension, Math.max(maxItems, part.index.size()));
+                for (Item<String, float[]> it : part.index.items()) {
+                    rebuilt.add(it);
                 }
+                part.index = rebuilt;
+            } finally {
+                part.lock.writeLock().unlock();
             }
-            this.index = newIndex;
-        } finally {
-            lock.writeLock().unlock();
         }
     }
 
@@ -413,7 +631,35 @@ public class HnswAnnService implements AnnIndex, Serializable {
         return out;
     }
 
-    public int getDimensions() { return this.dimension; }
+    // dimension shared by all partitions, or -1 when empty or when partitions disagree
+    public int getDimensions() {
+        int dim = -1;
+        for (Partition part : partitions.values()) {
+            if (part.dimension <= 0) continue;
+            if (dim == -1) dim = part.dimension;
+            else if (dim != part.dimension) return -1;
+        }
+        return dim;
+    }
+
+    // per-partition size/dimension/capacity for admin queries
+    public Map<String, Map<String, Object>> getPartitionInfo() {
+        Map<String, Map<String, Object>> out = new TreeMap<>();
+        for (Partition part : partitions.values()) {
+            Map<String, Object> info = new HashMap<>();
+            part.lock.readLock().lock();
+            try {
+                if (part.index == null) continue; // emptied by a rebuild or reload
+                info.put("size", part.index.size());
+                info.put("dimensions", part.dimension);
+                info.put("maxItems", part.index.getMaxItemCount());
+            } finally {
+                part.lock.readLock().unlock();
+            }
+            out.put(part.name, info);
+        }
+        return out;
+    }
 
     @PreDestroy
     public void autoPersistOnShutdown() {
@@ -460,10 +706,126 @@ public class HnswAnnService implements AnnIndex, Serializable {
     public void setAutoLoadEnabled(boolean enabled) {
         this.autoLoadEnabled = enabled;
     }
+
+    // passes writes through but turns close() into flush(), for writers that close what they are given
+    private static final class UnclosableOutputStream extends FilterOutputStream {
+        UnclosableOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    // at most `remaining` bytes of the underlying stream, which close() leaves open
+    private static final class BoundedInputStream extends FilterInputStream {
+        long remaining;
+
+        BoundedInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // an add (vector set) or remove (vector null) made while a rebuild was running
+    private record Mutation(String id, float[] vector) {
+    }
+
+    // a running rebuild of every partition (only == null) or of one
+    private static final class Rebuild {
+        final String only;
+        final Map<String, List<Mutation>> journal = new ConcurrentHashMap<>();
+        final Set<String> swapped = ConcurrentHashMap.newKeySet();
+
+        Rebuild(String only) {
+            this.only = only;
+        }
+
+        boolean covers(String partition) {
+            return only == null || only.equals(partition);
+        }
+    }
+
+    // one application's graph; index is created lazily once the vector dimension is known
+    private static final class Partition {
+        final String name;
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        HnswIndex<String, float[], Item<String, float[]>, Float> index;
+        int dimension = -1;
+
+        Partition(String name) {
+            this.name = name;
+        }
+
+        List<SearchResult<Item<String, float[]>, Float>> search(float[] q, int topK) {
+            lock.readLock().lock();
+            try {
+                if (index == null || dimension != q.length) return Collections.emptyList();
+                return index.findNearest(q, topK);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long size() {
+            lock.readLock().lock();
+            try {
+                return index == null ? 0 : index.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
 }
 
-// simple Item implementation for jelmerk HNSW
+// simple Item implementation for jelmerk HNSW; serialized with the graph in partition files
 class SimpleItem implements com.github.jelmerk.hnswlib.core.Item<String, float[]> {
+    private static final long serialVersionUID = 1L;
+
     private final String id;
     private final float[] vector;
 
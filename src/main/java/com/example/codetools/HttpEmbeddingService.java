@@ -0,0 +1,116 @@
+package com.example.codetools;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EmbeddingService backed by Ollama's {@code POST /api/embed} endpoint. The model stays resident
+ * in the Ollama server, a batch travels as one request ({@code "input": [...]}), and the shared
+ * {@link HttpClient} keeps connections alive between requests. Each request carries its own
+ * timeout; a failed or timed-out request yields nulls for its texts rather than an exception.
+ *
+ * Enable with {@code embedding.http.enabled=true}; it then takes precedence over the other backends.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "embedding", name = "http.enabled", havingValue = "true", matchIfMissing = false)
+public class HttpEmbeddingService implements EmbeddingService {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(HttpEmbeddingService.class);
+
+    private final URI endpoint;
+    private final String model;
+    private final Duration requestTimeout;
+    private final HttpClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    public HttpEmbeddingService(Environment env) {
+        this(env.getProperty("embedding.http.url", "http://localhost:11434"),
+                env.getProperty("embedding.model", "codellama:13b-instruct"),
+                Long.parseLong(env.getProperty("embedding.http.connect.timeout.ms", "5000")),
+                Long.parseLong(env.getProperty("embedding.http.timeout.ms", "60000")));
+    }
+
+    public HttpEmbeddingService(String baseUrl, String model, long connectTimeoutMs, long requestTimeoutMs) {
+        String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.endpoint = URI.create(base + "/api/embed");
+        this.model = model;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        // one client for the service: it pools and reuses keep-alive connections
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    @Override
+    public String modelId() {
+        return "ollama-http:" + model;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return embedBatch(List.of(text)).get(0);
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        List<float[]> out = new ArrayList<>(Arrays.asList(new float[texts.size()][]));
+        if (texts.isEmpty()) return out;
+        try {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("model", model);
+            body.put("input", texts);
+            HttpRequest request = HttpRequest.newBuilder(endpoint)
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                    .build();
+            HttpResponse<InputStream> resp = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream in = resp.body()) {
+                if (resp.statusCode() / 100 != 2) {
+                    log.warn("Embedding request failed: HTTP {} {}", resp.statusCode(), new String(in.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8));
+                    return out;
+                }
+                EmbedResponse parsed = mapper.readValue(in, EmbedResponse.class);
+                if (parsed.embeddings == null || parsed.embeddings.length != texts.size()) {
+                    log.warn("Embedding response held {} vectors for {} inputs", parsed.embeddings == null ? 0 : parsed.embeddings.length, texts.size());
+                    return out;
+                }
+                for (int i = 0; i < texts.size(); i++) {
+                    float[] v = parsed.embeddings[i];
+                    out.set(i, v == null || v.length == 0 ? null : v);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Embedding request interrupted");
+        } catch (Exception e) {
+            log.warn("Embedding request failed: {}", e.getMessage());
+        }
+        return out;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static final class EmbedResponse {
+        public float[][] embeddings;
+    }
+}
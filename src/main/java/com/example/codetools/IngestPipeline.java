@@ -0,0 +1,413 @@
+package com.example.codetools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Staged ingest: files flow through bounded queues
+ * read → chunk → detect changes → embed → persist, each stage with its own worker count.
+ * A full queue blocks the stage feeding it, so a slow embedder slows reading down instead of
+ * letting chunks pile up in memory. The embed stage batches chunks across files; the persist
+ * stage writes whatever has queued up (up to {@code ingest.pipeline.persist.batch}) in one
+ * transaction. No transaction is open while a chunk waits on the embedder.
+ *
+ * Each {@link #start} creates a {@link Run} with its own queues and workers; {@link #status}
+ * reports queue depths and per-stage counts of the latest run.
+ *
+ * Opt-in with {@code ingest.pipeline.enabled=true}; without it scan jobs process each file on its
+ * own virtual thread (see {@link ScannerJobService}).
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "ingest.pipeline", name = "enabled", havingValue = "true", matchIfMissing = false)
+public class IngestPipeline {
+
+    @Autowired
+    private FileScanner fileScanner;
+
+    @Autowired
+    private VectorService vectorService;
+
+    // capacity of each queue between stages
+    @Value("${ingest.pipeline.queue.capacity:256}")
+    private int queueCapacity = 256;
+
+    @Value("${ingest.pipeline.readers:4}")
+    private int readers = 4;
+
+    @Value("${ingest.pipeline.chunkers:2}")
+    private int chunkers = 2;
+
+    @Value("${ingest.pipeline.detectors:2}")
+    private int detectors = 2;
+
+    @Value("${ingest.pipeline.embedders:${ingest.embed.concurrency:4}}")
+    private int embedders = 4;
+
+    @Value("${ingest.pipeline.writers:${ingest.db.writers:2}}")
+    private int writers = 2;
+
+    // most chunks written per transaction
+    @Value("${ingest.pipeline.persist.batch:256}")
+    private int persistBatch = 256;
+
+    // how long the embed stage waits for a batch to fill before embedding a partial one
+    @Value("${ingest.pipeline.batch.linger.ms:20}")
+    private long batchLingerMs = 20;
+
+    private volatile Run current;
+
+    public IngestPipeline() {
+    }
+
+    IngestPipeline(FileScanner fileScanner, VectorService vectorService, int queueCapacity) {
+        this.fileScanner = fileScanner;
+        this.vectorService = vectorService;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Start a run. Feed it with {@link Run#submit} and end it with {@link Run#finish};
+     * {@code onFileDone} is called with each file's relative path once all of its changed chunks
+     * are stored (or the file turned out unreadable or unchanged). Files unchanged per the scan
+     * manifest are skipped at the read stage; the outcome of the others is reported back with
+     * {@link FileScanner#fileIndexed}, and files that could not be read or stored are listed by
+     * {@link Run#failedFiles}.
+     */
+    public Run start(Consumer<String> onFileDone) {
+        Run run = new Run(onFileDone);
+        current = run;
+        return run;
+    }
+
+    public Map<String, Object> status() {
+        Run run = current;
+        if (run == null) {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("running", false);
+            return out;
+        }
+        return run.status();
+    }
+
+    /** One pass of files through the pipeline. */
+    public final class Run {
+        private final Consumer<String> onFileDone;
+        private final AtomicBoolean aborted = new AtomicBoolean(false);
+        private final Set<String> failed = ConcurrentHashMap.newKeySet();
+        private final Stage<Ticket> read;
+        private final Stage<FileText> chunk;
+        private final Stage<FileChunks> detect;
+        private final Stage<Pending> embed;
+        private final Stage<Embedded> persist;
+        private final List<Stage<?>> stages = new ArrayList<>();
+
+        private Run(Consumer<String> onFileDone) {
+            this.onFileDone = onFileDone;
+            int batch = vectorService.getEmbeddingBatchSize();
+            // stages are started downstream first so every stage has its successor to close
+            persist = stage("persist", writers, null, this::persistBatch);
+            embed = stage("embed", embedders, persist, s -> embedBatch(s, batch));
+            detect = stage("detect", detectors, embed, s -> each(s, this::detect));
+            chunk = stage("chunk", chunkers, detect, s -> each(s, this::chunk));
+            read = stage("read", readers, chunk, s -> each(s, this::read));
+            stages.add(read);
+            stages.add(chunk);
+            stages.add(detect);
+            stages.add(embed);
+            stages.add(persist);
+        }
+
+        /** Queue a file; blocks while the read queue is full. */
+        public void submit(String relativePath) throws InterruptedException {
+            if (aborted.get()) return;
+            read.queue.put(new Ticket(relativePath));
+        }
+
+        /** Drop everything still queued; files already being written still finish. */
+        public void abort() {
+            aborted.set(true);
+        }
+
+        public boolean isAborted() {
+            return aborted.get();
+        }
+
+        /** Files reported done whose text could not be read or whose chunks were not all stored. */
+        public Set<String> failedFiles() {
+            return Collections.unmodifiableSet(failed);
+        }
+
+        /** Signal that no more files follow and wait until every stage has drained. */
+        public void finish() {
+            read.close();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    persist.done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        public Map<String, Object> status() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("running", persist.done.getCount() > 0);
+            out.put("aborted", aborted.get());
+            Map<String, Object> byStage = new LinkedHashMap<>();
+            for (Stage<?> s : stages) byStage.put(s.name, s.status());
+            out.put("stages", byStage);
+            return out;
+        }
+
+        private void read(Ticket t) throws Exception {
+            TextFileReader.Text content;
+            try {
+                content = fileScanner.readIfChanged(t.path);
+            } catch (Exception e) {
+                log.warn("Failed to read {}: {}", t.path, e.getMessage());
+                t.failed = true;
+                fileDone(t);
+                return;
+            }
+            if (content == null) {
+                fileDone(t); // unchanged since the last scan
+                return;
+            }
+            t.staged = true;
+            chunk.queue.put(new FileText(t, content));
+        }
+
+        private void chunk(FileText f) throws Exception {
+            List<VectorService.Chunk> chunks = fileScanner.chunkFile(f.ticket.path, f.content);
+            if (chunks.isEmpty()) {
+                fileDone(f.ticket);
+                return;
+            }
+            detect.queue.put(new FileChunks(f.ticket, chunks));
+        }
+
+        private void detect(FileChunks f) throws Exception {
+            List<VectorService.Change> changes;
+            try {
+                changes = vectorService.detectChanges(f.chunks);
+            } catch (Exception e) {
+                log.warn("Change detection failed for {}: {}", f.ticket.path, e.getMessage());
+                f.ticket.failed = true;
+                fileDone(f.ticket);
+                return;
+            }
+            if (changes.isEmpty()) {
+                fileDone(f.ticket);
+                return;
+            }
+            f.ticket.remaining.set(changes.size()); // before any chunk can reach persist
+            for (VectorService.Change c : changes) embed.queue.put(new Pending(f.ticket, c));
+        }
+
+        // gather up to one embedding batch across files, waiting briefly for it to fill
+        private void embedBatch(Stage<Pending> s, int batch) throws InterruptedException {
+            Pending first;
+            while ((first = s.take()) != null) {
+                List<Pending> group = new ArrayList<>(batch);
+                group.add(first);
+                while (group.size() < batch) {
+                    Pending next = s.queue.poll(batchLingerMs, TimeUnit.MILLISECONDS);
+                    if (next == null) break;
+                    group.add(next);
+                }
+                if (aborted.get()) continue;
+                List<VectorService.Change> changes = new ArrayList<>(group.size());
+                for (Pending p : group) changes.add(p.change);
+                List<float[]> vectors = null;
+                try {
+                    vectors = vectorService.embedChanges(changes);
+                } catch (Exception e) {
+                    log.warn("Embedding batch of {} chunks failed: {}", group.size(), e.getMessage());
+                }
+                for (int i = 0; i < group.size(); i++) {
+                    float[] v = vectors == null || i >= vectors.size() ? null : vectors.get(i);
+                    persist.queue.put(new Embedded(group.get(i), v));
+                }
+                s.processed.addAndGet(group.size());
+            }
+        }
+
+        // write everything queued (up to persistBatch) in one transaction
+        private void persistBatch(Stage<Embedded> s) throws InterruptedException {
+            Embedded first;
+            while ((first = s.take()) != null) {
+                List<Embedded> group = new ArrayList<>();
+                group.add(first);
+                s.queue.drainTo(group, Math.max(0, persistBatch - 1));
+                if (aborted.get()) continue;
+                List<VectorService.Change> changes = new ArrayList<>(group.size());
+                List<float[]> vectors = new ArrayList<>(group.size());
+                for (Embedded e : group) {
+                    changes.add(e.pending.change);
+                    vectors.add(e.vector);
+                }
+                boolean stored = true;
+                try {
+                    vectorService.persistChanges(changes, vectors);
+                } catch (Exception e) {
+                    log.warn("Persisting a batch of {} chunks failed: {}", group.size(), e.getMessage());
+                    stored = false;
+                }
+                s.processed.addAndGet(group.size());
+                for (Embedded e : group) {
+                    Ticket t = e.pending.ticket;
+                    if (!stored || e.vector == null) t.failed = true;
+                    if (t.remaining.decrementAndGet() == 0) fileDone(t);
+                }
+            }
+        }
+
+        private <T> void each(Stage<T> s, Step<T> step) throws InterruptedException {
+            T item;
+            while ((item = s.take()) != null) {
+                if (aborted.get()) continue;
+                try {
+                    step.apply(item);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    log.warn("Ingest {} stage failed: {}", s.name, e.getMessage());
+                }
+                s.processed.incrementAndGet();
+            }
+        }
+
+        private void fileDone(Ticket t) {
+            if (t.failed) failed.add(t.path);
+            if (t.staged) {
+                try {
+                    fileScanner.fileIndexed(t.path, !t.failed);
+                } catch (Exception e) {
+                    log.debug("fileIndexed failed for {}: {}", t.path, e.getMessage());
+                }
+            }
+            try {
+                onFileDone.accept(t.path);
+            } catch (Exception e) {
+                log.debug("onFileDone callback failed for {}: {}", t.path, e.getMessage());
+            }
+        }
+
+        private <T> Stage<T> stage(String name, int workers, Stage<?> next, Worker<T> body) {
+            Stage<T> s = new Stage<>(name, Math.max(1, workers), Math.max(1, queueCapacity), next);
+            s.start(body);
+            return s;
+        }
+    }
+
+    /** A queue and the workers draining it; closes its successor once its last worker exits. */
+    private static final class Stage<T> {
+        final String name;
+        final int workers;
+        final BlockingQueue<T> queue;
+        final Stage<?> next;
+        final AtomicInteger running;
+        final AtomicLong processed = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean closed;
+
+        Stage(String name, int workers, int capacity, Stage<?> next) {
+            this.name = name;
+            this.workers = workers;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.next = next;
+            this.running = new AtomicInteger(workers);
+        }
+
+        void start(Worker<T> body) {
+            for (int i = 0; i < workers; i++) {
+                Thread.ofVirtual().name("ingest-" + name + "-" + i).start(() -> {
+                    try {
+                        body.run(this);
+                    } catch (InterruptedException e) {
+                        log.warn("Ingest {} worker interrupted", name);
+                    } finally {
+                        if (running.decrementAndGet() == 0) {
+                            if (next != null) next.close();
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+        }
+
+        void close() {
+            closed = true;
+        }
+
+        // next item, or null once the stage is closed and drained
+        T take() throws InterruptedException {
+            while (true) {
+                T item = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (item != null) return item;
+                if (closed && queue.isEmpty()) return null;
+            }
+        }
+
+        Map<String, Object> status() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("workers", workers);
+            out.put("activeWorkers", running.get());
+            out.put("queued", queue.size());
+            out.put("capacity", queue.size() + queue.remainingCapacity());
+            out.put("processed", processed.get());
+            return out;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Worker<T> {
+        void run(Stage<T> stage) throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface Step<T> {
+        void apply(T item) throws Exception;
+    }
+
+    // per-file progress: changed chunks not yet persisted, and whether any of them failed
+    private static final class Ticket {
+        final String path;
+        final AtomicInteger remaining = new AtomicInteger();
+        volatile boolean staged; // read as changed; the manifest awaits the outcome
+        volatile boolean failed;
+
+        Ticket(String path) { this.path = path; }
+    }
+
+    private record FileText(Ticket ticket, TextFileReader.Text content) {}
+
+    private record FileChunks(Ticket ticket, List<VectorService.Chunk> chunks) {}
+
+    private record Pending(Ticket ticket, VectorService.Change change) {}
+
+    private record Embedded(Pending pending, float[] vector) {}
+}
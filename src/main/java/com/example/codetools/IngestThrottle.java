@@ -0,0 +1,63 @@
+package com.example.codetools;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps shared by every ingest thread: how many embedding calls may run at once (the embedder is
+ * usually the bottleneck and degrades when flooded) and how many threads may write to the database
+ * at once (H2 serializes writers anyway, and each writer holds a pooled connection). Scans can then
+ * fan files out freely; reading, chunking and checksumming run unthrottled.
+ */
+@Component
+public class IngestThrottle {
+
+    private final Semaphore embedPermits;
+    private final Semaphore writePermits;
+    private final int embedConcurrency;
+    private final int dbWriters;
+
+    public IngestThrottle(@Value("${ingest.embed.concurrency:4}") int embedConcurrency,
+                          @Value("${ingest.db.writers:2}") int dbWriters) {
+        this.embedConcurrency = Math.max(1, embedConcurrency);
+        this.dbWriters = Math.max(1, dbWriters);
+        this.embedPermits = new Semaphore(this.embedConcurrency, true);
+        this.writePermits = new Semaphore(this.dbWriters, true);
+    }
+
+    /** Run an embedding call once an embedding permit is free. */
+    public <T> T embedding(Callable<T> call) throws Exception {
+        embedPermits.acquire();
+        try {
+            return call.call();
+        } finally {
+            embedPermits.release();
+        }
+    }
+
+    /** Run a database write once a writer permit is free. */
+    public <T> T writing(Callable<T> call) throws Exception {
+        writePermits.acquire();
+        try {
+            return call.call();
+        } finally {
+            writePermits.release();
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("embedConcurrency", embedConcurrency);
+        out.put("embedActive", embedConcurrency - embedPermits.availablePermits());
+        out.put("embedWaiting", embedPermits.getQueueLength());
+        out.put("dbWriters", dbWriters);
+        out.put("dbActive", dbWriters - writePermits.availablePermits());
+        out.put("dbWaiting", writePermits.getQueueLength());
+        return out;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.codetools;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Off-heap storage for int8 code rows, laid out like {@link OffHeapVectorSlab} (dense rows in
+ * large direct buffers, parallel id table, swap-with-last removal) at a quarter of the footprint.
+ *
+ * Not thread-safe; callers guard access (see {@link QuantizedAnnService}).
+ */
+public final class Int8CodeSlab {
+
+    private final int dimension;
+    private final int rowsPerChunk;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final Map<String, Integer> rowOf = new HashMap<>();
+    private String[] ids = new String[1024];
+    private int count;
+
+    public Int8CodeSlab(int dimension) {
+        this(dimension, OffHeapVectorSlab.DEFAULT_CHUNK_BYTES);
+    }
+
+    Int8CodeSlab(int dimension, long chunkBytes) {
+        this.dimension = dimension;
+        this.rowsPerChunk = (int) Math.max(1, Math.min(Integer.MAX_VALUE / dimension, chunkBytes / dimension));
+    }
+
+    public int dimension() { return dimension; }
+
+    public int size() { return count; }
+
+    public String idAt(int row) { return ids[row]; }
+
+    public void put(String id, byte[] codes) {
+        if (codes.length != dimension) {
+            throw new IllegalArgumentException("code length " + codes.length + " does not match slab dimension " + dimension);
+        }
+        Integer existing = rowOf.get(id);
+        int row = existing != null ? existing : append(id);
+        chunk(row).put(offset(row), codes, 0, dimension);
+    }
+
+    public boolean remove(String id) {
+        Integer row = rowOf.remove(id);
+        if (row == null) return false;
+        int last = count - 1;
+        if (row != last) {
+            chunk(row).put(offset(row), chunk(last), offset(last), dimension);
+            ids[row] = ids[last];
+            rowOf.put(ids[row], row);
+        }
+        ids[last] = null;
+        count--;
+        return true;
+    }
+
+    public void clear() {
+        chunks.clear();
+        rowOf.clear();
+        Arrays.fill(ids, 0, count, null);
+        count = 0;
+    }
+
+    /** Score every row with the prepared query and offer (row, score) to the heap. */
+    public void search(ScalarQuantizer.Query q, TopKHeap heap) {
+        byte[] row = new byte[dimension];
+        int base = 0;
+        for (ByteBuffer bb : chunks) {
+            int rows = Math.min(rowsPerChunk, count - base);
+            for (int r = 0; r < rows; r++) {
+                bb.get(r * dimension, row, 0, dimension);
+                heap.offer(base + r, q.score(row));
+            }
+            base += rows;
+            if (base >= count) break;
+        }
+    }
+
+    private int append(String id) {
+        int row = count++;
+        if (row == ids.length) ids = Arrays.copyOf(ids, ids.length * 2);
+        if (row / rowsPerChunk == chunks.size()) chunks.add(ByteBuffer.allocateDirect(rowsPerChunk * dimension));
+        ids[row] = id;
+        rowOf.put(id, row);
+        return row;
+    }
+
+    private ByteBuffer chunk(int row) {
+        return chunks.get(row / rowsPerChunk);
+    }
+
+    private int offset(int row) {
+        return (row % rowsPerChunk) * dimension;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.codetools;
+
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Inverted lists shared by the IVF engines. Each list stores its ids and a fixed number of payload
+ * elements per entry contiguously (floats for IVF-flat, PQ code bytes for IVF-PQ); a directory
+ * maps id -> (list, position) so remove can move the last entry of the list into the hole.
+ * Callers hold their engine's lock.
+ */
+final class InvertedLists<A> {
+
+    /** Scores the first {@code count} entries of one list, {@code stride} payload elements each. */
+    interface Scorer<A> {
+        void score(int list, A data, int count, float[] out);
+    }
+
+    private static final String[] NO_IDS = new String[0];
+
+    private final int stride;
+    private final IntFunction<A> allocator;
+    private final String[][] ids;
+    private final Object[] data; // A per list, allocated on the first add
+    private final int[] sizes;
+    // id -> (list << 32 | position in list)
+    private final Map<String, Long> location = new HashMap<>();
+
+    InvertedLists(int nlist, int stride, IntFunction<A> allocator) {
+        this.stride = stride;
+        this.allocator = allocator;
+        this.ids = new String[nlist][];
+        Arrays.fill(ids, NO_IDS);
+        this.data = new Object[nlist];
+        this.sizes = new int[nlist];
+    }
+
+    int size() { return location.size(); }
+
+    int listCount() { return ids.length; }
+
+    int listSize(int list) { return sizes[list]; }
+
+    void insert(String id, int list, A payload) {
+        remove(id);
+        int pos = sizes[list];
+        if (pos == ids[list].length) {
+            int cap = Math.max(8, pos * 2);
+            ids[list] = Arrays.copyOf(ids[list], cap);
+            A grown = allocator.apply(cap * stride);
+            if (data[list] != null) System.arraycopy(data[list], 0, grown, 0, pos * stride);
+            data[list] = grown;
+        }
+        ids[list][pos] = id;
+        System.arraycopy(payload, 0, data[list], pos * stride, stride);
+        sizes[list] = pos + 1;
+        location.put(id, ((long) list << 32) | pos);
+    }
+
+    void remove(String id) {
+        Long loc = location.remove(id);
+        if (loc == null) return;
+        int list = (int) (loc >>> 32);
+        int pos = (int) (long) loc;
+        int last = --sizes[list];
+        if (pos != last) {
+            String moved = ids[list][last];
+            ids[list][pos] = moved;
+            System.arraycopy(data[list], last * stride, data[list], pos * stride, stride);
+            location.put(moved, loc);
+        }
+        ids[list][last] = null;
+    }
+
+    /** Scores every entry of the probed lists and appends the best {@code topK} to ids/scores. */
+    @SuppressWarnings("unchecked")
+    void search(int[] probed, int topK, Scorer<A> scorer, List<String> outIds, List<Float> outScores) {
+        // heap ids are positions in the concatenation of the probed lists
+        int[] base = new int[probed.length + 1];
+        int longest = 0;
+        for (int p = 0; p < probed.length; p++) {
+            base[p + 1] = base[p] + sizes[probed[p]];
+            longest = Math.max(longest, sizes[probed[p]]);
+        }
+        if (base[probed.length] == 0) return;
+        TopKHeap heap = new TopKHeap(Math.min(topK, base[probed.length]));
+        float[] s = new float[longest];
+        for (int p = 0; p < probed.length; p++) {
+            int list = probed[p];
+            if (sizes[list] == 0) continue;
+            scorer.score(list, (A) data[list], sizes[list], s);
+            for (int i = 0; i < sizes[list]; i++) heap.offer(base[p] + i, s[i]);
+        }
+        heap.sortDescending();
+        for (int i = 0; i < heap.size(); i++) {
+            int flat = heap.id(i);
+            int p = 0;
+            while (base[p + 1] <= flat) p++;
+            outIds.add(ids[probed[p]][flat - base[p]]);
+            outScores.add(heap.score(i));
+        }
+    }
+
+    /** The {@code topK} ids with the highest scores, merging list hits with exactly scored ones. */
+    static List<String> best(List<String> ids, List<Float> scores, int topK) {
+        Integer[] order = new Integer[ids.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Float.compare(scores.get(b), scores.get(a)));
+        List<String> out = new ArrayList<>(Math.min(topK, order.length));
+        for (int i = 0; i < order.length && i < topK; i++) out.add(ids.get(order[i]));
+        return out;
+    }
+}
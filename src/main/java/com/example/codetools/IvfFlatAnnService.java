@@ -0,0 +1,243 @@
+package com.example.codetools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted-file index with full-precision vectors (IVF-flat). Mini-batch k-means centroids split
+ * the space into {@code nlist} lists, each storing its vectors contiguously; queries scan the
+ * {@code nprobe} lists nearest to the query. Unlike HNSW there is no graph: add appends to one
+ * list and remove swaps the last entry of that list into the hole, so indexing repos that change
+ * all day stays cheap. Enable with the {@code ann-ivf} profile.
+ *
+ * Centroids are trained by {@link #rebuildFromDatabase()} from repository pages visited in random
+ * order, or from the first {@code train.size} vectors added; until then vectors are scanned
+ * exactly.
+ */
+@Service
+@Profile("ann-ivf")
+public class IvfFlatAnnService implements AnnIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(IvfFlatAnnService.class);
+
+    @Value("${ann.ivf.nlist:1024}")
+    private int nlist = 1024;
+
+    @Value("${ann.ivf.nprobe:16}")
+    private volatile int nprobe = 16;
+
+    @Value("${ann.ivf.train.size:50000}")
+    private int trainSize = 50000;
+
+    @Value("${ann.rebuild.page.size:1000}")
+    private int rebuildPageSize = 1000;
+
+    @Autowired(required = false)
+    private VectorRepository vectorRepository;
+
+    @Autowired(required = false)
+    private QueryCache queryCache; // cached retrieval results go stale when the index is rebuilt
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Lists state; // null until trained
+    // vectors seen before training; scanned exactly
+    private final Map<String, float[]> pending = new LinkedHashMap<>();
+
+    public IvfFlatAnnService() {
+    }
+
+    // package-private constructor for tests
+    IvfFlatAnnService(int nlist, int nprobe, int trainSize) {
+        this.nlist = nlist;
+        this.nprobe = nprobe;
+        this.trainSize = trainSize;
+    }
+
+    // package-private for tests that rebuild without a Spring context
+    void setVectorRepository(VectorRepository vectorRepository) {
+        this.vectorRepository = vectorRepository;
+    }
+
+    public int getNprobe() { return nprobe; }
+
+    public void setNprobe(int nprobe) { this.nprobe = Math.max(1, nprobe); }
+
+    @Override
+    public void add(String id, float[] vector) {
+        if (vector == null) return;
+        float[] v = VectorUtils.normalizedCopy(vector);
+        lock.writeLock().lock();
+        try {
+            if (state == null) {
+                pending.put(id, v);
+                if (pending.size() >= trainSize) trainFromPending();
+                return;
+            }
+            if (v.length != state.dim) throw new IllegalArgumentException("vector dimension " + v.length + " does not match index dimension " + state.dim);
+            state.insert(id, v);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the write lock
+    private void trainFromPending() {
+        int dim = pending.values().iterator().next().length;
+        List<float[]> rows = new ArrayList<>();
+        for (float[] v : pending.values()) if (v.length == dim) rows.add(v);
+        Collections.shuffle(rows, new Random(42));
+        KMeans.MiniBatch km = new KMeans.MiniBatch(nlist);
+        for (int from = 0; from < rows.size(); from += rebuildPageSize) {
+            km.update(rows.subList(from, Math.min(rows.size(), from + rebuildPageSize)));
+        }
+        Lists trained = new Lists(km.centroids());
+        for (Map.Entry<String, float[]> e : pending.entrySet()) {
+            if (e.getValue().length == dim) trained.insert(e.getKey(), e.getValue());
+        }
+        state = trained;
+        pending.clear();
+        log.info("Trained IVF-flat on {} vectors (nlist={})", rows.size(), trained.centroids.length);
+    }
+
+    @Override
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            pending.remove(id);
+            if (state != null) state.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                pending.remove(id);
+                if (state != null) state.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> query(float[] q, int topK) {
+        if (q == null || topK <= 0) return Collections.emptyList();
+        List<String> ids = new ArrayList<>();
+        List<Float> scores = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (state != null && q.length == state.dim && state.size() > 0) {
+                state.search(q, nprobe, topK, ids, scores);
+            }
+            for (Map.Entry<String, float[]> e : pending.entrySet()) {
+                ids.add(e.getKey());
+                scores.add(VectorUtils.dot(q, e.getValue()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return InvertedLists.best(ids, scores, topK);
+    }
+
+    @Override
+    public void rebuildFromDatabase() {
+        if (vectorRepository == null) throw new IllegalStateException("VectorRepository not available for rebuild");
+        // pass 1: mini-batch k-means over pages visited in random order, up to trainSize vectors
+        long total = vectorRepository.count();
+        int pages = (int) ((total + rebuildPageSize - 1) / rebuildPageSize);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < pages; i++) order.add(i);
+        Collections.shuffle(order, new Random(42));
+        KMeans.MiniBatch km = new KMeans.MiniBatch(nlist);
+        int dim = -1;
+        for (int page : order) {
+            if (km.seen() >= trainSize) break;
+            Page<VectorRecord> p = vectorRepository.findAll(PageRequest.of(page, rebuildPageSize));
+            List<float[]> batch = new ArrayList<>(rebuildPageSize);
+            for (VectorRecord r : p.getContent()) {
+                float[] v = VectorServiceHelper.decode(r);
+                if (v == null) continue;
+                if (dim == -1) dim = v.length;
+                if (v.length != dim) continue;
+                VectorUtils.normalize(v);
+                batch.add(v);
+            }
+            if (!batch.isEmpty()) km.update(batch);
+        }
+        Lists fresh = null;
+        if (km.seen() > 0) {
+            // pass 2: assign every vector to its list while the old lists keep serving queries
+            Lists built = new Lists(km.centroids());
+            VectorServiceHelper.forEachVector(vectorRepository, rebuildPageSize, (id, v) -> {
+                if (v.length == built.dim) built.insert(id, v);
+            });
+            fresh = built;
+            log.info("Rebuilt IVF-flat: {} vectors in {} lists, trained on {}", built.size(), built.centroids.length, km.seen());
+        }
+        lock.writeLock().lock();
+        try {
+            pending.clear();
+            state = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (queryCache != null) queryCache.invalidate();
+    }
+
+    @Override
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return pending.size() + (state == null ? 0 : state.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Centroids and their inverted lists of full-precision vectors. */
+    static final class Lists {
+        final int dim;
+        final float[][] centroids;
+        final InvertedLists<float[]> entries;
+
+        Lists(float[][] centroids) {
+            this.centroids = centroids;
+            this.dim = centroids[0].length;
+            this.entries = new InvertedLists<>(centroids.length, dim, float[]::new);
+        }
+
+        int size() { return entries.size(); }
+
+        void insert(String id, float[] v) {
+            entries.insert(id, KMeans.nearest(centroids, v), v);
+        }
+
+        void remove(String id) {
+            entries.remove(id);
+        }
+
+        void search(float[] q, int nprobe, int topK, List<String> ids, List<Float> scores) {
+            entries.search(KMeans.nearest(centroids, q, nprobe), topK, (list, data, count, out) -> {
+                for (int i = 0, off = 0; i < count; i++, off += dim) {
+                    float s = 0f;
+                    for (int d = 0; d < dim; d++) s += q[d] * data[off + d];
+                    out[i] = s;
+                }
+            }, ids, scores);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.codetools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted-file index with product-quantized residuals (IVF-PQ). Coarse centroids partition the
+ * space into {@code nlist} lists; each vector is stored in its list as {@code m} one-byte codes of
+ * its residual, so memory per vector is m bytes plus its id regardless of dimension. Queries probe
+ * the {@code nprobe} nearest lists and score codes with per-query lookup tables (asymmetric
+ * distance). Enable with the {@code ann-ivfpq} profile.
+ *
+ * Centroids and codebooks are trained from a reservoir sample streamed out of the vector table by
+ * {@link #rebuildFromDatabase()}, or from the first {@code train.size} vectors added. Until then
+ * vectors are held as floats and scored exactly.
+ */
+@Service
+@Profile("ann-ivfpq")
+public class IvfPqAnnService implements AnnIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(IvfPqAnnService.class);
+
+    @Value("${ann.ivfpq.nlist:256}")
+    private int nlist = 256;
+
+    @Value("${ann.ivfpq.m:32}")
+    private int subquantizers = 32;
+
+    @Value("${ann.ivfpq.nprobe:8}")
+    private volatile int nprobe = 8;
+
+    @Value("${ann.ivfpq.train.size:20000}")
+    private int trainSize = 20000;
+
+    @Value("${ann.ivfpq.kmeans.iterations:20}")
+    private int iterations = 20;
+
+    @Value("${ann.rebuild.page.size:1000}")
+    private int rebuildPageSize = 1000;
+
+    @Autowired(required = false)
+    private VectorRepository vectorRepository;
+
+    @Autowired(required = false)
+    private QueryCache queryCache; // cached retrieval results go stale when the index is rebuilt
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Lists state; // null until trained
+    // vectors seen before training; scored exactly
+    private final Map<String, float[]> pending = new LinkedHashMap<>();
+
+    public IvfPqAnnService() {
+    }
+
+    // package-private constructor for tests
+    IvfPqAnnService(int nlist, int subquantizers, int nprobe, int trainSize, int iterations) {
+        this.nlist = nlist;
+        this.subquantizers = subquantizers;
+        this.nprobe = nprobe;
+        this.trainSize = trainSize;
+        this.iterations = iterations;
+    }
+
+    public int getNprobe() { return nprobe; }
+
+    public void setNprobe(int nprobe) { this.nprobe = Math.max(1, nprobe); }
+
+    @Override
+    public void add(String id, float[] vector) {
+        if (vector == null) return;
+        float[] v = VectorUtils.normalizedCopy(vector);
+        lock.writeLock().lock();
+        try {
+            if (state == null) {
+                pending.put(id, v);
+                if (pending.size() >= trainSize) trainFromPending();
+                return;
+            }
+            if (v.length != state.model.dim) throw new IllegalArgumentException("vector dimension " + v.length + " does not match index dimension " + state.model.dim);
+            state.insert(id, v);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the write lock
+    private void trainFromPending() {
+        int dim = pending.values().iterator().next().length;
+        List<float[]> sample = new ArrayList<>();
+        for (float[] v : pending.values()) if (v.length == dim) sample.add(v);
+        Lists trained = new Lists(Model.train(sample, nlist, subquantizers, iterations));
+        for (Map.Entry<String, float[]> e : pending.entrySet()) {
+            if (e.getValue().length == dim) trained.insert(e.getKey(), e.getValue());
+        }
+        state = trained;
+        pending.clear();
+        log.info("Trained IVF-PQ on {} vectors (nlist={}, m={})", sample.size(), trained.model.centroids.length, trained.model.codebooks.length);
+    }
+
+    @Override
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            pending.remove(id);
+            if (state != null) state.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                pending.remove(id);
+                if (state != null) state.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> query(float[] q, int topK) {
+        if (q == null || topK <= 0) return Collections.emptyList();
+        float[] qn = VectorUtils.normalizedCopy(q);
+        List<String> ids = new ArrayList<>();
+        List<Float> scores = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (state != null && qn.length == state.model.dim && state.size() > 0) {
+                searchLists(state, qn, topK, ids, scores);
+            }
+            for (Map.Entry<String, float[]> e : pending.entrySet()) {
+                ids.add(e.getKey());
+                scores.add(VectorUtils.dot(qn, e.getValue()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return InvertedLists.best(ids, scores, topK);
+    }
+
+    // caller holds the read lock
+    private void searchLists(Lists st, float[] q, int topK, List<String> ids, List<Float> scores) {
+        Model model = st.model;
+        float[][] centroids = model.centroids;
+        int[] probed = KMeans.nearest(centroids, q, nprobe);
+
+        // inner-product lookup tables: table[m][j] = dot(q restricted to subspace m, codeword j)
+        int[] start = model.subStart;
+        float[][][] books = model.codebooks;
+        float[][] table = new float[books.length][];
+        for (int m = 0; m < books.length; m++) {
+            table[m] = new float[books[m].length];
+            for (int j = 0; j < books[m].length; j++) {
+                float[] cw = books[m][j];
+                float s = 0f;
+                for (int d = start[m]; d < start[m + 1]; d++) s += q[d] * cw[d - start[m]];
+                table[m][j] = s;
+            }
+        }
+
+        int m = books.length;
+        st.entries.search(probed, topK, (list, codes, count, out) -> {
+            float listScore = VectorUtils.dot(q, centroids[list]);
+            for (int i = 0, off = 0; i < count; i++, off += m) {
+                float s = listScore;
+                for (int k = 0; k < m; k++) s += table[k][codes[off + k] & 0xFF];
+                out[i] = s;
+            }
+        }, ids, scores);
+    }
+
+    @Override
+    public void rebuildFromDatabase() {
+        if (vectorRepository == null) throw new IllegalStateException("VectorRepository not available for rebuild");
+        // pass 1: reservoir sample of the table for training
+        List<float[]> sample = new ArrayList<>();
+        Random rnd = new Random(42);
+        long[] seen = {0};
+        int[] dim = {-1};
+        VectorServiceHelper.forEachVector(vectorRepository, rebuildPageSize, (id, v) -> {
+            if (dim[0] == -1) dim[0] = v.length;
+            if (v.length != dim[0]) return;
+            long n = seen[0]++;
+            if (sample.size() < trainSize) sample.add(v);
+            else {
+                long j = (long) (rnd.nextDouble() * (n + 1));
+                if (j < trainSize) sample.set((int) j, v);
+            }
+        });
+        Lists fresh = null;
+        if (!sample.isEmpty()) {
+            // pass 2: encode every vector into fresh lists while the old ones keep serving queries
+            Lists built = new Lists(Model.train(sample, nlist, subquantizers, iterations));
+            VectorServiceHelper.forEachVector(vectorRepository, rebuildPageSize, (id, v) -> {
+                if (v.length == built.model.dim) built.insert(id, v);
+            });
+            fresh = built;
+            log.info("Rebuilt IVF-PQ: {} vectors, trained on {} of {}", built.size(), sample.size(), seen[0]);
+        }
+        lock.writeLock().lock();
+        try {
+            pending.clear();
+            state = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (queryCache != null) queryCache.invalidate();
+    }
+
+    @Override
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return pending.size() + (state == null ? 0 : state.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Inverted lists of PQ codes for one trained model, m bytes per entry. */
+    static final class Lists {
+        final Model model;
+        final InvertedLists<byte[]> entries;
+
+        Lists(Model model) {
+            this.model = model;
+            this.entries = new InvertedLists<>(model.centroids.length, model.codebooks.length, byte[]::new);
+        }
+
+        int size() { return entries.size(); }
+
+        void insert(String id, float[] v) {
+            int list = KMeans.nearest(model.centroids, v);
+            entries.insert(id, list, model.encode(v, list));
+        }
+
+        void remove(String id) {
+            entries.remove(id);
+        }
+    }
+
+    /** Trained coarse centroids and per-subspace codebooks (at most 256 codewords each). */
+    static final class Model {
+        final int dim;
+        final float[][] centroids;
+        final int[] subStart;       // subspace m covers dimensions [subStart[m], subStart[m + 1])
+        final float[][][] codebooks; // [m][codeword][dimension within subspace]
+
+        Model(int dim, float[][] centroids, int[] subStart, float[][][] codebooks) {
+            this.dim = dim;
+            this.centroids = centroids;
+            this.subStart = subStart;
+            this.codebooks = codebooks;
+        }
+
+        static Model train(List<float[]> sample, int nlist, int subquantizers, int iterations) {
+            int dim = sample.get(0).length;
+            int m = Math.max(1, Math.min(subquantizers, dim));
+            int[] start = new int[m + 1];
+            for (int i = 0; i <= m; i++) start[i] = i * dim / m;
+            float[][] centroids = KMeans.train(sample, nlist, iterations, 1L);
+            List<float[]> residuals = new ArrayList<>(sample.size());
+            for (float[] v : sample) residuals.add(residual(v, centroids[KMeans.nearest(centroids, v)]));
+            float[][][] books = new float[m][][];
+            for (int s = 0; s < m; s++) {
+                List<float[]> sub = new ArrayList<>(residuals.size());
+                for (float[] r : residuals) sub.add(Arrays.copyOfRange(r, start[s], start[s + 1]));
+                books[s] = KMeans.train(sub, 256, iterations, 2L + s);
+            }
+            return new Model(dim, centroids, start, books);
+        }
+
+        byte[] encode(float[] v, int list) {
+            float[] r = residual(v, centroids[list]);
+            byte[] out = new byte[codebooks.length];
+            for (int s = 0; s < codebooks.length; s++) {
+                int best = 0;
+                float bestDist = Float.MAX_VALUE;
+                for (int j = 0; j < codebooks[s].length; j++) {
+                    float d = KMeans.l2(codebooks[s][j], r, subStart[s], subStart[s + 1]);
+                    if (d < bestDist) {
+                        bestDist = d;
+                        best = j;
+                    }
+                }
+                out[s] = (byte) best;
+            }
+            return out;
+        }
+
+        private static float[] residual(float[] v, float[] c) {
+            float[] r = new float[v.length];
+            for (int i = 0; i < v.length; i++) r[i] = v[i] - c[i];
+            return r;
+        }
+    }
+}
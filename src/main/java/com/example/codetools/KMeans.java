@@ -0,0 +1,149 @@
+package com.example.codetools;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * K-means under squared L2 distance, used to train coarse centroids and product-quantizer
+ * codebooks. {@link #train} runs Lloyd's algorithm over an in-memory sample; {@link MiniBatch}
+ * consumes a stream of batches (e.g. repository pages) without holding the data set. Assignment
+ * steps run in parallel across rows.
+ */
+public final class KMeans {
+
+    private KMeans() {}
+
+    /**
+     * Train min(k, rows.size()) centroids. Centroids are seeded from distinct random rows; a
+     * cluster that empties out is reseeded from a random row.
+     */
+    public static float[][] train(List<float[]> rows, int k, int iterations, long seed) {
+        int n = rows.size();
+        if (n == 0) throw new IllegalArgumentException("no training rows");
+        k = Math.min(k, n);
+        int dim = rows.get(0).length;
+        Random rnd = new Random(seed);
+        float[][] centroids = new float[k][];
+        int[] perm = IntStream.range(0, n).toArray();
+        for (int i = 0; i < k; i++) {
+            int j = i + rnd.nextInt(n - i);
+            int t = perm[i]; perm[i] = perm[j]; perm[j] = t;
+            centroids[i] = rows.get(perm[i]).clone();
+        }
+        int[] assign = new int[n];
+        for (int it = 0; it < iterations; it++) {
+            final float[][] current = centroids;
+            int changed = IntStream.range(0, n).parallel().map(i -> {
+                int c = nearest(current, rows.get(i));
+                if (c == assign[i]) return 0;
+                assign[i] = c;
+                return 1;
+            }).sum();
+            if (it > 0 && changed == 0) break;
+            double[][] sums = new double[k][dim];
+            int[] counts = new int[k];
+            for (int i = 0; i < n; i++) {
+                float[] v = rows.get(i);
+                double[] s = sums[assign[i]];
+                for (int d = 0; d < dim; d++) s[d] += v[d];
+                counts[assign[i]]++;
+            }
+            float[][] next = new float[k][dim];
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    next[c] = rows.get(rnd.nextInt(n)).clone();
+                    continue;
+                }
+                for (int d = 0; d < dim; d++) next[c][d] = (float) (sums[c][d] / counts[c]);
+            }
+            centroids = next;
+        }
+        return centroids;
+    }
+
+    /** Index of the centroid closest to v by squared L2 distance. */
+    public static int nearest(float[][] centroids, float[] v) {
+        int best = 0;
+        float bestDist = Float.MAX_VALUE;
+        for (int c = 0; c < centroids.length; c++) {
+            float d = l2(centroids[c], v, 0, v.length);
+            if (d < bestDist) {
+                bestDist = d;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** Indexes of the n centroids closest to q, nearest first. */
+    public static int[] nearest(float[][] centroids, float[] q, int n) {
+        TopKHeap heap = new TopKHeap(Math.min(n, centroids.length));
+        for (int c = 0; c < centroids.length; c++) heap.offer(c, -l2(centroids[c], q, 0, q.length));
+        heap.sortDescending();
+        int[] out = new int[heap.size()];
+        for (int i = 0; i < out.length; i++) out[i] = heap.id(i);
+        return out;
+    }
+
+    /**
+     * Mini-batch k-means (Sculley, 2010). The first rows offered seed the centroids; each later
+     * batch is assigned in parallel and pulls its centroids towards the batch members with a
+     * per-centroid learning rate of 1 / (points seen by that centroid).
+     */
+    public static final class MiniBatch {
+        private final int k;
+        private final List<float[]> seeds = new java.util.ArrayList<>();
+        private float[][] centroids;
+        private long[] counts;
+        private long seen;
+
+        public MiniBatch(int k) {
+            this.k = k;
+        }
+
+        public long seen() { return seen; }
+
+        /** Feed one batch. Returns once the rows have been folded into the centroids. */
+        public void update(List<float[]> batch) {
+            int from = 0;
+            if (centroids == null) {
+                // collect k seed rows before the first real update
+                while (from < batch.size() && seeds.size() < k) seeds.add(batch.get(from++).clone());
+                seen += from;
+                if (seeds.size() < k) return;
+                centroids = seeds.toArray(new float[0][]);
+                counts = new long[k];
+                java.util.Arrays.fill(counts, 1);
+                seeds.clear();
+            }
+            final float[][] current = centroids;
+            final List<float[]> rows = batch.subList(from, batch.size());
+            int[] assign = IntStream.range(0, rows.size()).parallel().map(i -> nearest(current, rows.get(i))).toArray();
+            for (int i = 0; i < assign.length; i++) {
+                float[] c = centroids[assign[i]];
+                float[] v = rows.get(i);
+                float eta = 1f / ++counts[assign[i]];
+                for (int d = 0; d < c.length; d++) c[d] += eta * (v[d] - c[d]);
+            }
+            seen += rows.size();
+        }
+
+        /** Trained centroids; when fewer than k rows were seen, those rows are the centroids. */
+        public float[][] centroids() {
+            if (centroids != null) return centroids;
+            if (seeds.isEmpty()) throw new IllegalStateException("no training rows");
+            return seeds.toArray(new float[0][]);
+        }
+    }
+
+    /** Squared L2 distance between a and b[from, to). a is indexed from 0. */
+    static float l2(float[] a, float[] b, int from, int to) {
+        float s = 0f;
+        for (int i = from; i < to; i++) {
+            float d = a[i - from] - b[i];
+            s += d * d;
+        }
+        return s;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.codetools;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.stereotype.Service;
 
@@ -13,6 +14,9 @@ public class NoopAnnService implements AnnIndex {
 
     private final AtomicLong counter = new AtomicLong(0);
 
+    @Autowired(required = false)
+    private QueryCache queryCache;
+
     @Override
     public void add(String id, float[] vector) {
         counter.incrementAndGet();
@@ -26,6 +30,7 @@ public class NoopAnnService implements AnnIndex {
     @Override
     public void rebuildFromDatabase() {
         counter.set(0);
+        if (queryCache != null) queryCache.invalidate();
     }
 
     @Override
@@ -0,0 +1,141 @@
+package com.example.codetools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contiguous off-heap storage for fixed-dimension float vectors with a parallel id table.
+ * Rows live in large direct buffers (a row never straddles two buffers), so millions of vectors
+ * cost a handful of objects instead of one array each, and a scan walks memory linearly.
+ * Removal swaps the last row into the freed slot to keep rows dense. No norms are stored: callers
+ * put unit-length vectors, so ranking is a plain dot product.
+ *
+ * Not thread-safe; callers guard access (see {@link BruteForceAnnService}).
+ */
+public final class OffHeapVectorSlab {
+
+    // size of one direct buffer; bounded so a slab can grow past the 2 GB limit of a single buffer
+    static final long DEFAULT_CHUNK_BYTES = 64L << 20;
+
+    private final long chunkBytes;
+    private final List<FloatBuffer> chunks = new ArrayList<>();
+    private final Map<String, Integer> rowOf = new HashMap<>();
+    private String[] ids = new String[1024];
+    private int dimension = -1;
+    private int rowsPerChunk;
+    private int count;
+
+    public OffHeapVectorSlab() {
+        this(DEFAULT_CHUNK_BYTES);
+    }
+
+    OffHeapVectorSlab(long chunkBytes) {
+        this.chunkBytes = chunkBytes;
+    }
+
+    public int dimension() { return dimension; }
+
+    public int size() { return count; }
+
+    public boolean contains(String id) { return rowOf.containsKey(id); }
+
+    public String idAt(int row) { return ids[row]; }
+
+    /** Insert or overwrite the vector stored under id. The first vector fixes the dimension. */
+    public void put(String id, float[] v) {
+        if (dimension == -1) {
+            dimension = v.length;
+            rowsPerChunk = (int) Math.max(1, Math.min(Integer.MAX_VALUE / dimension, chunkBytes / (4L * dimension)));
+        }
+        if (v.length != dimension) {
+            throw new IllegalArgumentException("vector dimension " + v.length + " does not match slab dimension " + dimension);
+        }
+        Integer existing = rowOf.get(id);
+        int row = existing != null ? existing : append(id);
+        chunk(row).put(offset(row), v, 0, dimension);
+    }
+
+    /** Remove id, moving the last row into its slot. Returns false if id was absent. */
+    public boolean remove(String id) {
+        Integer row = rowOf.remove(id);
+        if (row == null) return false;
+        int last = count - 1;
+        if (row != last) {
+            FloatBuffer src = chunk(last);
+            FloatBuffer dst = chunk(row);
+            dst.put(offset(row), src, offset(last), dimension);
+            ids[row] = ids[last];
+            rowOf.put(ids[row], row);
+        }
+        ids[last] = null;
+        count--;
+        return true;
+    }
+
+    /** Copy of the vector stored under id, or null. */
+    public float[] get(String id) {
+        Integer row = rowOf.get(id);
+        if (row == null) return null;
+        float[] out = new float[dimension];
+        chunk(row).get(offset(row), out, 0, dimension);
+        return out;
+    }
+
+    public void clear() {
+        chunks.clear(); // direct buffers are released by their cleaners once unreachable
+        rowOf.clear();
+        Arrays.fill(ids, 0, count, null);
+        count = 0;
+        dimension = -1;
+    }
+
+    /**
+     * Score every row against q by dot product (cosine similarity, as stored rows and queries are
+     * unit length) and offer (row, score) to the heap. Only the first min(q.length, dimension)
+     * components take part.
+     */
+    public void search(float[] q, TopKHeap heap) {
+        if (count == 0) return;
+        int n = Math.min(q.length, dimension);
+        float[] row = new float[n];
+        int base = 0;
+        for (FloatBuffer fb : chunks) {
+            int rows = Math.min(rowsPerChunk, count - base);
+            for (int r = 0; r < rows; r++) {
+                fb.get(r * dimension, row, 0, n);
+                float s = 0f;
+                for (int i = 0; i < n; i++) s += q[i] * row[i];
+                heap.offer(base + r, s);
+            }
+            base += rows;
+            if (base >= count) break;
+        }
+    }
+
+    private int append(String id) {
+        int row = count++;
+        if (row == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        if (row / rowsPerChunk == chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect(rowsPerChunk * dimension * 4).order(ByteOrder.nativeOrder()).asFloatBuffer());
+        }
+        ids[row] = id;
+        rowOf.put(id, row);
+        return row;
+    }
+
+    private FloatBuffer chunk(int row) {
+        return chunks.get(row / rowsPerChunk);
+    }
+
+    private int offset(int row) {
+        return (row % rowsPerChunk) * dimension;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.codetools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Structural chunker for Python. A unit starts at every top-level statement, and at each
+ * {@code def}, {@code class}, decorator or comment at the body indentation of a top-level class
+ * (its methods). Decorators and comments stay with the definition below them. Lines inside
+ * brackets, after a backslash continuation or within triple-quoted strings never start a unit.
+ */
+public class PythonChunker extends StructuralChunker {
+
+    public PythonChunker(Chunker fallback, int minSize, int maxSize) {
+        super(Set.of(".py", ".pyi"), fallback, minSize, maxSize);
+    }
+
+    @Override
+    protected List<Integer> unitStarts(String text) {
+        List<Integer> starts = new ArrayList<>();
+        int n = text.length();
+        int brackets = 0;
+        String triple = null; // open triple-quote delimiter
+        boolean continued = false;
+        boolean prevGlue = false;
+        boolean expectClassBody = false;
+        int classBodyIndent = -1;
+        for (int ls = 0; ls < n; ) {
+            int le = lineEnd(text, ls);
+            int first = firstNonSpace(text, ls, le);
+            if (first >= le && triple == null) {
+                ls = le + 1;
+                continue;
+            }
+            int indent = first - ls;
+            boolean free = triple == null && brackets == 0 && !continued;
+            boolean glue = free && (text.charAt(first) == '@' || text.charAt(first) == '#');
+            if (free) {
+                boolean definition = text.startsWith("def ", first) || text.startsWith("async def ", first)
+                        || text.startsWith("class ", first);
+                if (expectClassBody && indent > 0) {
+                    classBodyIndent = indent;
+                    expectClassBody = false;
+                }
+                boolean start = indent == 0 || ((definition || glue) && indent == classBodyIndent);
+                if (start && !prevGlue) starts.add(ls);
+                if (indent == 0 && !glue) {
+                    expectClassBody = text.startsWith("class ", first);
+                    classBodyIndent = -1;
+                }
+                prevGlue = glue;
+            }
+
+            // track strings, brackets and continuations for the next line
+            continued = false;
+            for (int j = first; j < le; j++) {
+                char c = text.charAt(j);
+                if (triple != null) {
+                    if (c == '\\') j++;
+                    else if (text.startsWith(triple, j)) { j += 2; triple = null; }
+                    continue;
+                }
+                if (c == '#') break;
+                if ((c == '"' || c == '\'') && text.startsWith(String.valueOf(c).repeat(3), j)) {
+                    triple = String.valueOf(c).repeat(3);
+                    j += 2;
+                    continue;
+                }
+                if (c == '"' || c == '\'') {
+                    for (j = j + 1; j < le && text.charAt(j) != c; j++) if (text.charAt(j) == '\\') j++;
+                    continue;
+                }
+                if (c == '(' || c == '[' || c == '{') brackets++;
+                else if (c == ')' || c == ']' || c == '}') brackets = Math.max(0, brackets - 1);
+                else if (c == '\\' && j == le - 1) continued = true;
+            }
+            ls = le + 1;
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.codetools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * AnnIndex that keeps vectors only as int8 codes ({@link ScalarQuantizer}, per-dimension min/max
+ * learned from the vector table) in an off-heap {@link Int8CodeSlab}. A query scans the codes for
+ * topK * rerank-factor candidates, then reranks them with the exact floats decoded from
+ * {@code vectorBlob}. Enable with the {@code ann-sq} profile.
+ *
+ * Vectors added before a quantizer exists are held as floats until {@code ann.sq.train.size} of
+ * them have arrived (or until {@link #rebuildFromDatabase()} trains from the table).
+ */
+@Service
+@Profile("ann-sq")
+public class QuantizedAnnService implements AnnIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(QuantizedAnnService.class);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ScalarQuantizer quantizer;
+    private Int8CodeSlab codes;
+    // vectors seen before the quantizer is trained; scored exactly
+    private final Map<String, float[]> pending = new LinkedHashMap<>();
+
+    @Value("${ann.sq.train.size:10000}")
+    private int trainSize = 10000;
+
+    @Value("${ann.sq.rerank.factor:4}")
+    private int rerankFactor = 4;
+
+    @Value("${ann.rebuild.page.size:1000}")
+    private int rebuildPageSize = 1000;
+
+    @Autowired(required = false)
+    private VectorRepository vectorRepository; // training source and exact floats for rerank
+
+    @Autowired(required = false)
+    private QueryCache queryCache; // cached retrieval results go stale when the index is rebuilt
+
+    public QuantizedAnnService() {
+    }
+
+    // package-private constructor for tests
+    QuantizedAnnService(int trainSize, int rerankFactor, VectorRepository vectorRepository) {
+        this.trainSize = trainSize;
+        this.rerankFactor = rerankFactor;
+        this.vectorRepository = vectorRepository;
+    }
+
+    @Override
+    public void add(String id, float[] vector) {
+        if (vector == null) return;
+        float[] v = VectorUtils.normalizedCopy(vector);
+        lock.writeLock().lock();
+        try {
+            if (quantizer == null) {
+                pending.put(id, v);
+                if (pending.size() >= trainSize) trainFromPending();
+                return;
+            }
+            codes.put(id, quantizer.encode(v));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the write lock
+    private void trainFromPending() {
+        ScalarQuantizer.Trainer trainer = new ScalarQuantizer.Trainer();
+        int dim = pending.values().iterator().next().length;
+        for (float[] v : pending.values()) if (v.length == dim) trainer.observe(v);
+        quantizer = trainer.build();
+        codes = new Int8CodeSlab(dim);
+        for (Map.Entry<String, float[]> e : pending.entrySet()) {
+            if (e.getValue().length == dim) codes.put(e.getKey(), quantizer.encode(e.getValue()));
+        }
+        pending.clear();
+        log.info("Trained int8 quantizer on {} vectors (dim={})", trainer.count(), dim);
+    }
+
+    @Override
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            pending.remove(id);
+            if (codes != null) codes.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                pending.remove(id);
+                if (codes != null) codes.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> query(float[] q, int topK) {
+        if (q == null || topK <= 0) return Collections.emptyList();
+        List<String> ids = new ArrayList<>();
+        List<Float> approx = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (codes != null && codes.size() > 0) {
+                TopKHeap heap = new TopKHeap(Math.min(codes.size(), topK * Math.max(1, rerankFactor)));
+                codes.search(quantizer.prepare(q), heap);
+                heap.sortDescending();
+                for (int i = 0; i < heap.size(); i++) {
+                    ids.add(codes.idAt(heap.id(i)));
+                    approx.add(heap.score(i));
+                }
+            }
+            for (Map.Entry<String, float[]> e : pending.entrySet()) {
+                ids.add(e.getKey());
+                approx.add(VectorUtils.dot(q, e.getValue()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return rerank(q, ids, approx, topK);
+    }
+
+    // rescore candidates against their exact stored floats; keeps the approximate score when the
+    // record cannot be loaded
+    private List<String> rerank(float[] q, List<String> ids, List<Float> approx, int topK) {
+        Map<String, Float> score = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) score.put(ids.get(i), approx.get(i));
+        if (vectorRepository != null && !ids.isEmpty()) {
+            try {
+                for (VectorRecord r : vectorRepository.findAllById(ids)) {
+                    float[] v = VectorServiceHelper.decode(r);
+                    if (v == null) continue;
+                    VectorUtils.normalize(v);
+                    score.put(r.getId(), VectorUtils.dot(q, v));
+                }
+            } catch (Exception ex) {
+                log.warn("rerank failed, using int8 scores: {}", ex.getMessage());
+            }
+        }
+        List<String> out = new ArrayList<>(score.keySet());
+        out.sort((a, b) -> Float.compare(score.get(b), score.get(a)));
+        return out.size() > topK ? new ArrayList<>(out.subList(0, topK)) : out;
+    }
+
+    @Override
+    public void rebuildFromDatabase() {
+        if (vectorRepository == null) throw new IllegalStateException("VectorRepository not available for rebuild");
+        // pass 1: learn per-dimension ranges from up to trainSize vectors
+        ScalarQuantizer.Trainer trainer = new ScalarQuantizer.Trainer();
+        int page = 0;
+        while (trainer.count() < trainSize) {
+            Page<VectorRecord> p = vectorRepository.findAll(PageRequest.of(page, rebuildPageSize));
+            if (!p.hasContent()) break;
+            for (VectorRecord r : p.getContent()) {
+                float[] v = VectorServiceHelper.decode(r);
+                if (v == null) continue;
+                VectorUtils.normalize(v);
+                trainer.observe(v);
+            }
+            if (!p.hasNext()) break;
+            page++;
+        }
+        if (trainer.count() == 0) {
+            lock.writeLock().lock();
+            try {
+                quantizer = null;
+                codes = null;
+                pending.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (queryCache != null) queryCache.invalidate();
+            return;
+        }
+        ScalarQuantizer sq = trainer.build();
+        // pass 2: encode everything into a fresh slab, then swap it in
+        Int8CodeSlab fresh = new Int8CodeSlab(sq.dimension());
+        VectorServiceHelper.forEachVector(vectorRepository, rebuildPageSize, (id, v) -> {
+            if (v.length == sq.dimension()) fresh.put(id, sq.encode(v));
+        });
+        lock.writeLock().lock();
+        try {
+            quantizer = sq;
+            codes = fresh;
+            pending.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (queryCache != null) queryCache.invalidate();
+        log.info("Rebuilt int8 index: {} vectors, trained on {}", fresh.size(), trainer.count());
+    }
+
+    @Override
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return pending.size() + (codes == null ? 0 : codes.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
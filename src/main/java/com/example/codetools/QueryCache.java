@@ -0,0 +1,164 @@
+package com.example.codetools;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Two caches in front of retrieval for repeated questions (IDE integrations re-ask a lot):
+ * <ul>
+ *   <li>question embeddings, keyed by embedding model and whitespace-normalized question text;</li>
+ *   <li>retrieval results, keyed by (applicationId, query vector hash, k) and tagged with the index
+ *       generation they were computed at.</li>
+ * </ul>
+ * The generation is bumped by {@link VectorService#upsert} and by every
+ * {@link AnnIndex#rebuildFromDatabase()}, which makes all cached results stale at once without
+ * walking the cache. Both caches are bounded by approximate byte size.
+ */
+@Component
+public class QueryCache {
+
+    @Value("${query.cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${query.cache.embeddings.max.bytes:16777216}")
+    private long embeddingsMaxBytes = 16L << 20;
+
+    @Value("${query.cache.results.max.bytes:33554432}")
+    private long resultsMaxBytes = 32L << 20;
+
+    private final AtomicLong generation = new AtomicLong();
+    private volatile WeightedLruCache<String, float[]> embeddings;
+    private volatile WeightedLruCache<ResultKey, Results> results;
+
+    public QueryCache() {
+    }
+
+    // package-private constructor for tests
+    QueryCache(long embeddingsMaxBytes, long resultsMaxBytes) {
+        this.embeddingsMaxBytes = embeddingsMaxBytes;
+        this.resultsMaxBytes = resultsMaxBytes;
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /** Current index generation; advanced whenever indexed content changes. */
+    public long generation() { return generation.get(); }
+
+    /** Mark every cached retrieval result stale. */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Embedding for the question under the given model, computing it with the loader on a miss.
+     * Null results are not cached. The returned array is shared; callers must not modify it.
+     */
+    public float[] embedding(String model, String question, Supplier<float[]> loader) {
+        if (!enabled || question == null) return loader.get();
+        String key = (model == null ? "" : model) + '\n' + normalizeQuestion(question);
+        WeightedLruCache<String, float[]> cache = embeddings();
+        float[] v = cache.get(key);
+        if (v != null) return v;
+        v = loader.get();
+        if (v != null) cache.put(key, v);
+        return v;
+    }
+
+    /** Cached snippets for the query at the current generation, or null. */
+    public List<QueryModels.CodeSnippet> results(String applicationId, float[] qv, int k) {
+        if (!enabled) return null;
+        WeightedLruCache<ResultKey, Results> cache = results();
+        ResultKey key = new ResultKey(applicationId, vectorHash(qv), k);
+        Results r = cache.get(key);
+        if (r == null) return null;
+        if (r.generation != generation.get()) {
+            cache.remove(key);
+            return null;
+        }
+        return new ArrayList<>(r.snippets);
+    }
+
+    /**
+     * Cache snippets computed for the query. Pass the generation read before retrieval started so
+     * results racing with an upsert are stored as already stale.
+     */
+    public void putResults(String applicationId, float[] qv, int k, long generationAtStart, List<QueryModels.CodeSnippet> snippets) {
+        if (!enabled) return;
+        results().put(new ResultKey(applicationId, vectorHash(qv), k),
+                new Results(generationAtStart, Collections.unmodifiableList(new ArrayList<>(snippets))));
+    }
+
+    public void clear() {
+        embeddings().clear();
+        results().clear();
+    }
+
+    /** Hit/miss counters and occupancy of both caches. */
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("generation", generation.get());
+        out.put("embeddings", embeddings().stats());
+        out.put("results", results().stats());
+        return out;
+    }
+
+    // collapse runs of whitespace so re-asked questions differing only in spacing share an entry
+    static String normalizeQuestion(String question) {
+        return question.trim().replaceAll("\\s+", " ");
+    }
+
+    // 64-bit FNV-1a over the float bits; equal vectors always hash equal
+    static long vectorHash(float[] v) {
+        long h = 0xcbf29ce484222325L;
+        for (float f : v) {
+            h ^= Float.floatToIntBits(f);
+            h *= 0x100000001b3L;
+        }
+        return h ^ v.length;
+    }
+
+    private WeightedLruCache<String, float[]> embeddings() {
+        WeightedLruCache<String, float[]> c = embeddings;
+        if (c == null) {
+            synchronized (this) {
+                if (embeddings == null) embeddings = new WeightedLruCache<>(embeddingsMaxBytes, v -> 16L + 4L * v.length);
+                c = embeddings;
+            }
+        }
+        return c;
+    }
+
+    private WeightedLruCache<ResultKey, Results> results() {
+        WeightedLruCache<ResultKey, Results> c = results;
+        if (c == null) {
+            synchronized (this) {
+                if (results == null) results = new WeightedLruCache<>(resultsMaxBytes, Results::weight);
+                c = results;
+            }
+        }
+        return c;
+    }
+
+    private record ResultKey(String applicationId, long vectorHash, int k) {}
+
+    private record Results(long generation, List<QueryModels.CodeSnippet> snippets) {
+        long weight() {
+            long w = 64;
+            for (QueryModels.CodeSnippet s : snippets) {
+                w += 32;
+                if (s.getPath() != null) w += 2L * s.getPath().length();
+                if (s.getContent() != null) w += 2L * s.getContent().length();
+            }
+            return w;
+        }
+    }
+}
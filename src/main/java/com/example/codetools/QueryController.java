@@ -45,7 +45,7 @@ public class QueryController {
         }
 
         if (needsCode) {
-            snippets = scanner.fetchSnippets(req.getPaths(), max);
+            snippets = scanner.fetchSnippets(req.getPaths(), max, req.getQuestion());
         }
         log.info("Fetched {} code snippets for POST", snippets == null ? 0 : snippets.size());
         String answer = client.queryModel(req.getQuestion(), snippets);
@@ -66,7 +66,7 @@ public class QueryController {
         // Only fetch raw file snippets when explicit paths are provided by the caller.
         // For general queries (no paths) prefer semantic retrieval from the vector DB.
         if (paths != null && !paths.isEmpty()) {
-            snippets = scanner.fetchSnippets(paths, max);
+            snippets = scanner.fetchSnippets(paths, max, question);
         } else if (vectorService != null) {
             snippets = vectorService.queryTopK(env.getProperty("application.id", "default-app"), question, max);
         }
@@ -0,0 +1,100 @@
+package com.example.codetools;
+
+/**
+ * Per-dimension int8 scalar quantizer. Each component is mapped linearly from the [min, max]
+ * range observed during training onto 256 levels stored as a signed byte (-128..127); values
+ * outside the trained range are clamped.
+ *
+ * Queries stay in float: {@link #prepare(float[])} folds the per-dimension offset and scale into
+ * a weight table so scoring a code row is one multiply-add per component.
+ */
+public final class ScalarQuantizer {
+
+    private final float[] min;
+    private final float[] scale;
+
+    private ScalarQuantizer(float[] min, float[] scale) {
+        this.min = min;
+        this.scale = scale;
+    }
+
+    public int dimension() { return min.length; }
+
+    public byte[] encode(float[] v) {
+        byte[] out = new byte[min.length];
+        for (int i = 0; i < min.length; i++) {
+            int level = scale[i] == 0f ? 0 : Math.round((v[i] - min[i]) / scale[i]);
+            if (level < 0) level = 0;
+            else if (level > 255) level = 255;
+            out[i] = (byte) (level - 128);
+        }
+        return out;
+    }
+
+    public float[] decode(byte[] codes) {
+        float[] out = new float[min.length];
+        for (int i = 0; i < min.length; i++) out[i] = min[i] + (codes[i] + 128) * scale[i];
+        return out;
+    }
+
+    /** Precompute the weights for scoring q against code rows by approximate dot product. */
+    public Query prepare(float[] q) {
+        int n = Math.min(q.length, min.length);
+        float[] w = new float[n];
+        float bias = 0f;
+        for (int i = 0; i < n; i++) {
+            w[i] = q[i] * scale[i];
+            bias += q[i] * (min[i] + 128f * scale[i]);
+        }
+        return new Query(w, bias);
+    }
+
+    /** Prepared query: score(codes) = bias + sum(w[i] * codes[i]) approximates dot(q, decode(codes)). */
+    public static final class Query {
+        final float[] w;
+        final float bias;
+
+        Query(float[] w, float bias) {
+            this.w = w;
+            this.bias = bias;
+        }
+
+        public float score(byte[] codes) {
+            float s = bias;
+            for (int i = 0; i < w.length; i++) s += w[i] * codes[i];
+            return s;
+        }
+    }
+
+    /** Accumulates per-dimension min/max over a stream of training vectors. */
+    public static final class Trainer {
+        private float[] min;
+        private float[] max;
+        private long count;
+
+        public void observe(float[] v) {
+            if (min == null) {
+                min = v.clone();
+                max = v.clone();
+            } else {
+                if (v.length != min.length) return;
+                for (int i = 0; i < v.length; i++) {
+                    if (v[i] < min[i]) min[i] = v[i];
+                    if (v[i] > max[i]) max[i] = v[i];
+                }
+            }
+            count++;
+        }
+
+        public long count() { return count; }
+
+        public int dimension() { return min == null ? -1 : min.length; }
+
+        public ScalarQuantizer build() {
+            if (min == null) throw new IllegalStateException("no training vectors observed");
+            float[] scale = new float[min.length];
+            for (int i = 0; i < min.length; i++) scale[i] = (max[i] - min[i]) / 255f;
+            return new ScalarQuantizer(min.clone(), scale);
+        }
+    }
+}
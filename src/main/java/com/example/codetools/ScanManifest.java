@@ -0,0 +1,226 @@
+package com.example.codetools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent record of what each file looked like when it was last indexed, so rescans skip
+ * unchanged files: same size and mtime means the file is not even read; a changed mtime with the
+ * same content hash means it is read but not chunked or embedded.
+ *
+ * A file that gets (re)indexed is {@link #stage staged} when read and {@link #commit committed}
+ * once its chunks are stored; a file whose indexing failed is {@link #discard discarded} so the
+ * next scan tries again. Committed entries are written in batches by {@link #flush} (and whenever
+ * {@code scanner.manifest.flush.size} are pending). Entries of an application are loaded from
+ * the table the first time that application is scanned.
+ *
+ * Entries also record the {@link #OFFSET_FORMAT} their chunks were stored with. An entry from an
+ * older format never counts as unchanged, so such a file is re-chunked once and its rows get
+ * offsets in the current format. Chunks whose content is unchanged keep their vectors.
+ */
+@Slf4j
+@Component
+public class ScanManifest {
+
+    // stored chunk offsets are byte offsets into the file; 2 measured the decoded text, which drifts
+    // past bytes that are not UTF-8, and 1 (or no value) meant chars
+    static final int OFFSET_FORMAT = 3;
+
+    @Autowired
+    private ScanManifestRepository repo;
+
+    @Value("${scanner.manifest.enabled:true}")
+    private boolean enabled = true;
+
+    // committed entries written per saveAll
+    @Value("${scanner.manifest.flush.size:500}")
+    private int flushSize = 500;
+
+    private final Map<String, Map<String, ScanManifestRecord>> byApplication = new ConcurrentHashMap<>();
+    private final Map<String, ScanManifestRecord> staged = new ConcurrentHashMap<>();
+    private final Map<String, ScanManifestRecord> dirty = new LinkedHashMap<>();
+
+    public ScanManifest() {
+    }
+
+    ScanManifest(ScanManifestRepository repo) {
+        this.repo = repo;
+    }
+
+    /** True when the file's size and mtime match what was last indexed. */
+    public boolean unchanged(String applicationId, String path, long size, long mtime) {
+        if (!enabled) return false;
+        ScanManifestRecord r = entries(applicationId).get(path);
+        return r != null && current(r) && r.getSize() == size && r.getMtime() == mtime;
+    }
+
+    /**
+     * True when the content hash matches what was last indexed; the entry then takes the new
+     * size and mtime, so the next scan skips the file without reading it.
+     */
+    public boolean sameContent(String applicationId, String path, long size, long mtime, String hash) {
+        if (!enabled) return false;
+        ScanManifestRecord r = entries(applicationId).get(path);
+        if (r == null || !current(r) || !hash.equals(r.getContentHash())) return false;
+        r.setSize(size);
+        r.setMtime(mtime);
+        r.setUpdatedAt(System.currentTimeMillis());
+        markDirty(r);
+        return true;
+    }
+
+    /** Remember what is being indexed for the file until {@link #commit} or {@link #discard}. */
+    public void stage(String applicationId, String path, long size, long mtime, String hash) {
+        if (!enabled) return;
+        ScanManifestRecord r = new ScanManifestRecord();
+        r.setId(applicationId + ":" + path);
+        r.setApplicationId(applicationId);
+        r.setPath(path);
+        r.setSize(size);
+        r.setMtime(mtime);
+        r.setContentHash(hash);
+        r.setOffsetFormat(OFFSET_FORMAT);
+        staged.put(r.getId(), r);
+    }
+
+    public void stageChunkCount(String applicationId, String path, int chunkCount) {
+        ScanManifestRecord r = staged.get(applicationId + ":" + path);
+        if (r != null) r.setChunkCount(chunkCount);
+    }
+
+    /** The staged file's chunks are stored: make its entry current. */
+    public void commit(String applicationId, String path) {
+        ScanManifestRecord r = staged.remove(applicationId + ":" + path);
+        if (r == null) return;
+        r.setUpdatedAt(System.currentTimeMillis());
+        entries(applicationId).put(path, r);
+        markDirty(r);
+    }
+
+    /** The staged file could not be fully indexed: keep the old entry so the next scan retries it. */
+    public void discard(String applicationId, String path) {
+        staged.remove(applicationId + ":" + path);
+    }
+
+    /** Forget a file that no longer exists. */
+    public void remove(String applicationId, String path) {
+        String id = applicationId + ":" + path;
+        staged.remove(id);
+        ScanManifestRecord r = entries(applicationId).remove(path);
+        synchronized (dirty) {
+            dirty.remove(id);
+        }
+        if (r == null) return;
+        try {
+            repo.deleteById(id);
+        } catch (Exception e) {
+            log.debug("Failed to delete scan manifest entry {}: {}", id, e.getMessage());
+        }
+    }
+
+    /** Carry a renamed file's entry over to its new path, so the file is not re-read if untouched. */
+    public void move(String applicationId, String fromPath, String toPath) {
+        ScanManifestRecord old = entries(applicationId).get(fromPath);
+        remove(applicationId, fromPath);
+        if (!enabled || old == null) return;
+        ScanManifestRecord r = new ScanManifestRecord();
+        r.setId(applicationId + ":" + toPath);
+        r.setApplicationId(applicationId);
+        r.setPath(toPath);
+        r.setSize(old.getSize());
+        r.setMtime(old.getMtime());
+        r.setContentHash(old.getContentHash());
+        r.setChunkCount(old.getChunkCount());
+        r.setOffsetFormat(old.getOffsetFormat());
+        r.setUpdatedAt(System.currentTimeMillis());
+        entries(applicationId).put(toPath, r);
+        markDirty(r);
+    }
+
+    /** Write committed entries to the table. */
+    public void flush() {
+        List<ScanManifestRecord> batch;
+        synchronized (dirty) {
+            if (dirty.isEmpty()) return;
+            batch = new ArrayList<>(dirty.values());
+            dirty.clear();
+        }
+        try {
+            repo.saveAll(batch);
+        } catch (Exception e) {
+            log.warn("Failed to persist {} scan manifest entries: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    public ScanManifestRecord get(String applicationId, String path) {
+        return entries(applicationId).get(path);
+    }
+
+    /** Paths with an entry for the application. */
+    public List<String> paths(String applicationId) {
+        return new ArrayList<>(entries(applicationId).keySet());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int size(String applicationId) {
+        return entries(applicationId).size();
+    }
+
+    /** SHA-1 of a file's bytes, as stored in {@code content_hash}. */
+    public static String hash(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(bytes));
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** SHA-1 of the buffer's remaining bytes; the buffer is consumed. */
+    public static String hash(java.nio.ByteBuffer bytes) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(bytes);
+            return HexFormat.of().formatHex(md.digest());
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean current(ScanManifestRecord r) {
+        return r.getOffsetFormat() != null && r.getOffsetFormat() == OFFSET_FORMAT;
+    }
+
+    private void markDirty(ScanManifestRecord r) {
+        boolean full;
+        synchronized (dirty) {
+            dirty.put(r.getId(), r);
+            full = dirty.size() >= Math.max(1, flushSize);
+        }
+        if (full) flush();
+    }
+
+    private Map<String, ScanManifestRecord> entries(String applicationId) {
+        return byApplication.computeIfAbsent(applicationId, app -> {
+            Map<String, ScanManifestRecord> m = new ConcurrentHashMap<>();
+            try {
+                for (ScanManifestRecord r : repo.findByApplicationId(app)) m.put(r.getPath(), r);
+            } catch (Exception e) {
+                log.warn("Failed to load scan manifest for {}: {}", app, e.getMessage());
+            }
+            return m;
+        });
+    }
+}
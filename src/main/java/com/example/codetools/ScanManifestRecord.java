@@ -0,0 +1,63 @@
+package com.example.codetools;
+
+import jakarta.persistence.*;
+
+/**
+ * What a scan last indexed for one file: its size and modification time (checked first, without
+ * reading the file), the hash of its bytes (checked when those differ) and how many chunks it had.
+ */
+@Entity
+@Table(name = "scan_manifest", indexes = {
+        @Index(name = "idx_manifest_app", columnList = "application_id")
+})
+public class ScanManifestRecord {
+
+    // applicationId + ":" + path
+    @Id
+    private String id;
+
+    @Column(name = "application_id", nullable = false)
+    private String applicationId;
+
+    private String path;
+
+    @Column(name = "size")
+    private long size;
+
+    @Column(name = "mtime")
+    private long mtime;
+
+    @Column(name = "content_hash")
+    private String contentHash;
+
+    @Column(name = "chunk_count")
+    private int chunkCount;
+
+    // how the file's stored chunk offsets are measured (see ScanManifest.OFFSET_FORMAT); null for
+    // entries written before offsets were recorded as UTF-8 byte offsets
+    @Column(name = "offset_format")
+    private Integer offsetFormat;
+
+    private long updatedAt;
+
+    public ScanManifestRecord() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getApplicationId() { return applicationId; }
+    public void setApplicationId(String applicationId) { this.applicationId = applicationId; }
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public long getMtime() { return mtime; }
+    public void setMtime(long mtime) { this.mtime = mtime; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+    public int getChunkCount() { return chunkCount; }
+    public void setChunkCount(int chunkCount) { this.chunkCount = chunkCount; }
+    public Integer getOffsetFormat() { return offsetFormat; }
+    public void setOffsetFormat(Integer offsetFormat) { this.offsetFormat = offsetFormat; }
+    public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+}
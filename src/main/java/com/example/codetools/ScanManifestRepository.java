@@ -0,0 +1,8 @@
+package com.example.codetools;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
+
+public interface ScanManifestRepository extends JpaRepository<ScanManifestRecord, String> {
+    List<ScanManifestRecord> findByApplicationId(String applicationId);
+}
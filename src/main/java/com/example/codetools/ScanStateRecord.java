@@ -0,0 +1,38 @@
+package com.example.codetools;
+
+import jakarta.persistence.*;
+
+/**
+ * Where the last scan of an application left off in git: the commit it indexed, and the paths
+ * that were not committed at that point (or failed to index) and must be looked at again even if
+ * git reports no change for them.
+ */
+@Entity
+@Table(name = "scan_state")
+public class ScanStateRecord {
+
+    // applicationId
+    @Id
+    private String id;
+
+    @Column(name = "last_commit")
+    private String lastCommit;
+
+    // newline-separated paths relative to the scan root
+    @Lob
+    @Column(name = "pending_paths", columnDefinition = "CLOB")
+    private String pendingPaths;
+
+    private long updatedAt;
+
+    public ScanStateRecord() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getLastCommit() { return lastCommit; }
+    public void setLastCommit(String lastCommit) { this.lastCommit = lastCommit; }
+    public String getPendingPaths() { return pendingPaths; }
+    public void setPendingPaths(String pendingPaths) { this.pendingPaths = pendingPaths; }
+    public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,6 @@
+package com.example.codetools;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ScanStateRepository extends JpaRepository<ScanStateRecord, String> {
+}
@@ -0,0 +1,220 @@
+package com.example.codetools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Live incremental indexing: watches every directory under {@code scanner.root.path} and re-indexes
+ * only the files that changed. Events are coalesced per path; a file is handled once no event has
+ * arrived for it for {@code scanner.watch.debounce.ms}, so an editor's save burst
+ * (create/modify/rename) costs one re-index. Files that are gone by then have their chunks removed.
+ */
+@Slf4j
+@Component
+public class ScanWatcher {
+
+    @Autowired
+    private FileScanner fileScanner;
+
+    @Value("${scanner.watch.enabled:false}")
+    private boolean enabled = false;
+
+    @Value("${scanner.watch.debounce.ms:500}")
+    private long debounceMs = 500;
+
+    // relative path -> time of its last event
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+
+    private volatile WatchService watchService;
+    private volatile Thread thread;
+    private volatile Path root;
+
+    public ScanWatcher() {
+    }
+
+    ScanWatcher(FileScanner fileScanner, long debounceMs) {
+        this.fileScanner = fileScanner;
+        this.debounceMs = debounceMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!enabled) return;
+        try {
+            start();
+        } catch (IOException e) {
+            log.warn("Failed to start scan watcher: {}", e.getMessage());
+        }
+    }
+
+    /** Start watching the scan root; false when already running or no root is configured. */
+    public synchronized boolean start() throws IOException {
+        if (thread != null) return false;
+        String rp = fileScanner.getRootPath();
+        if (rp == null || rp.isBlank()) return false;
+        root = Paths.get(rp).toAbsolutePath().normalize();
+        watchService = root.getFileSystem().newWatchService();
+        registerTree(root, false);
+        Thread t = new Thread(this::loop, "scan-watcher");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+        log.info("Watching {} ({} directories, debounce {} ms)", root, keys.size(), debounceMs);
+        return true;
+    }
+
+    public synchronized boolean stop() {
+        Thread t = thread;
+        if (t == null) return false;
+        thread = null;
+        t.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("Failed to close watch service: {}", e.getMessage());
+        }
+        try {
+            t.join(2000);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        keys.clear();
+        pending.clear();
+        return true;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("running", thread != null);
+        out.put("watchedDirectories", keys.size());
+        out.put("pending", pending.size());
+        out.put("processed", processed.get());
+        out.put("removed", removed.get());
+        return out;
+    }
+
+    private void loop() {
+        long tick = Math.max(10, debounceMs / 4);
+        while (thread == Thread.currentThread()) {
+            try {
+                WatchKey key = watchService.poll(tick, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handle(key);
+                    key = watchService.poll();
+                }
+                flushQuiet();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (Exception e) {
+                log.warn("Scan watcher error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void handle(WatchKey key) {
+        Path dir = keys.get(key);
+        long now = System.currentTimeMillis();
+        for (WatchEvent<?> ev : key.pollEvents()) {
+            if (ev.kind() == OVERFLOW) {
+                // events were lost: re-check everything under this directory
+                if (dir != null) markTree(dir, now);
+                continue;
+            }
+            if (dir == null) continue;
+            Path child = dir.resolve((Path) ev.context());
+            if (ev.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                // a new (or moved-in) directory: watch it and pick up files already inside
+                registerTree(child, true);
+                continue;
+            }
+            pending.put(root.relativize(child).toString(), now);
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+            // the directory itself went away: its files are dropped through the parent's delete event
+        }
+    }
+
+    // handle files whose last event is older than the debounce window
+    private void flushQuiet() {
+        if (pending.isEmpty()) return;
+        long cutoff = System.currentTimeMillis() - debounceMs;
+        List<String> ready = new ArrayList<>();
+        for (Map.Entry<String, Long> e : pending.entrySet()) {
+            if (e.getValue() <= cutoff) ready.add(e.getKey());
+        }
+        if (ready.isEmpty()) return;
+        for (String rel : ready) {
+            Long t = pending.get(rel);
+            // skip when a newer event arrived meanwhile
+            if (t == null || t > cutoff || !pending.remove(rel, t)) continue;
+            Path p = root.resolve(rel);
+            try {
+                if (Files.isRegularFile(p)) {
+                    if (!fileScanner.isIndexable(rel)) continue;
+                    fileScanner.processFile(rel);
+                    processed.incrementAndGet();
+                } else if (!Files.exists(p)) {
+                    // a deleted file, or a deleted directory with everything indexed under it
+                    fileScanner.removeFile(rel);
+                    removed.incrementAndGet();
+                }
+            } catch (Exception e) {
+                log.warn("Failed to re-index {}: {}", rel, e.getMessage());
+            }
+        }
+        try {
+            fileScanner.flushPending();
+        } catch (Exception e) {
+            log.warn("Failed flushing pending chunks: {}", e.getMessage());
+        }
+    }
+
+    private void registerTree(Path start, boolean markFiles) {
+        long now = System.currentTimeMillis();
+        try (Stream<Path> paths = Files.walk(start)) {
+            paths.forEach(p -> {
+                try {
+                    if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                        keys.put(p.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), p);
+                    } else if (markFiles && Files.isRegularFile(p)) {
+                        pending.put(root.relativize(p).toString(), now);
+                    }
+                } catch (IOException e) {
+                    log.debug("Failed to watch {}: {}", p, e.getMessage());
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Failed to register {} for watching: {}", start, e.getMessage());
+        }
+    }
+
+    private void markTree(Path dir, long now) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(Files::isRegularFile).forEach(p -> pending.put(root.relativize(p).toString(), now));
+        } catch (IOException | UncheckedIOException e) {
+            log.debug("Failed to list {}: {}", dir, e.getMessage());
+        }
+    }
+}
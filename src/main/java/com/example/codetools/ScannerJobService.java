@@ -1,9 +1,14 @@
 package com.example.codetools;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.Map;
 import java.util.UUID;
@@ -17,13 +22,33 @@ public class ScannerJobService {
 
     private final FileScanner fileScanner;
 
-    // single-threaded executor for scanning to avoid overwhelming the embedder
+    // one coordinator thread per job: walks the file list and hands files to virtual threads
     private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
         Thread t = new Thread(r, "scanner-job-thread");
         t.setDaemon(true);
         return t;
     });
 
+    // file workers; embedding calls and DB writes inside them are capped by IngestThrottle
+    private final ExecutorService fileExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("scanner-file-", 0).factory());
+
+    // files read/chunked at once; bounds memory held by files waiting on the embedder
+    @Value("${scanner.parallel.files:64}")
+    private int parallelFiles = 64;
+
+    // present with ingest.pipeline.enabled=true: jobs then feed the staged pipeline instead of
+    // processing whole files per virtual thread
+    @Autowired(required = false)
+    private IngestPipeline ingestPipeline;
+
+    // when the scan root is a git work tree, rescans only touch what git reports changed
+    @Autowired(required = false)
+    private GitChangeDetector gitChangeDetector;
+
+    @Autowired(required = false)
+    private ScanStateRepository scanStateRepository;
+
     // current job state (only one job at a time for simplicity)
     private volatile String currentJobId = null;
     private volatile Instant startedAt = null;
@@ -32,6 +57,7 @@ public class ScannerJobService {
     private volatile AtomicInteger processedFiles = new AtomicInteger(0);
     private final AtomicBoolean paused = new AtomicBoolean(false);
     private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicInteger activeFiles = new AtomicInteger(0);
 
     private volatile Future<?> currentFuture = null;
 
@@ -39,6 +65,12 @@ public class ScannerJobService {
         this.fileScanner = fileScanner;
     }
 
+    ScannerJobService(FileScanner fileScanner, GitChangeDetector gitChangeDetector, ScanStateRepository scanStateRepository) {
+        this.fileScanner = fileScanner;
+        this.gitChangeDetector = gitChangeDetector;
+        this.scanStateRepository = scanStateRepository;
+    }
+
     public synchronized String startJob() throws IOException {
         if (currentJobId != null && currentFuture != null && !currentFuture.isDone()) {
             return currentJobId; // job already running
@@ -53,30 +85,70 @@ public class ScannerJobService {
         this.paused.set(false);
         this.cancelled.set(false);
 
-        // collect file list
-        java.util.List<String> files = fileScanner.listAllFiles();
+        // collect file list: just the changes since the last indexed commit when git can tell
+        GitChangeDetector.Snapshot snapshot = gitSnapshot();
+        GitChangeDetector.Changes changes = snapshot == null ? null : changesSinceLastScan();
+        java.util.List<String> files = changes == null ? fileScanner.listAllFiles() : changedFiles(changes);
         this.totalFiles.set(files.size());
 
         this.currentFuture = executor.submit(() -> {
-            log.info("Scanner job {} started, files={}.", currentJobId, files.size());
+            if (changes != null) applyMovesAndDeletes(changes);
+            else removeMissing(files);
+            if (ingestPipeline != null) {
+                runPipelined(files, snapshot);
+                return;
+            }
+            int slots = Math.max(1, parallelFiles);
+            Semaphore inFlight = new Semaphore(slots);
+            // files whose chunks were not stored; the next incremental scan retries them
+            java.util.Set<String> failed = ConcurrentHashMap.newKeySet();
+            log.info("Scanner job {} started, files={}, parallel={}.", currentJobId, files.size(), slots);
             try {
                 for (String rel : files) {
+                    // pause support: stop handing out files; files already started run to completion
+                    while (paused.get() && !cancelled.get()) {
+                        try { Thread.sleep(200); } catch (InterruptedException ie) { cancelled.set(true); }
+                    }
                     if (cancelled.get()) {
                         log.info("Scanner job {} cancelled.", currentJobId);
                         break;
                     }
-                    // pause support
-                    while (paused.get()) {
-                        try { Thread.sleep(200); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
-                    }
                     try {
-                        fileScanner.processFile(rel);
-                    } catch (Exception e) {
-                        log.warn("Failed processing {}: {}", rel, e.getMessage());
+                        inFlight.acquire();
+                    } catch (InterruptedException ie) {
+                        cancelled.set(true);
+                        continue; // logs the cancellation above
                     }
-                    processedFiles.incrementAndGet();
+                    fileExecutor.execute(() -> {
+                        try {
+                            if (cancelled.get()) return;
+                            activeFiles.incrementAndGet();
+                            try {
+                                java.util.List<String> notStored = fileScanner.processFile(rel);
+                                if (notStored != null) failed.addAll(notStored);
+                            } catch (Exception e) {
+                                failed.add(rel);
+                                log.warn("Failed processing {}: {}", rel, e.getMessage());
+                            } finally {
+                                activeFiles.decrementAndGet();
+                            }
+                            processedFiles.incrementAndGet();
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
                 }
             } finally {
+                // wait for files still in flight before flushing and reporting the job finished
+                inFlight.acquireUninterruptibly(slots);
+                try {
+                    // chunks queued for a cross-file embedding batch
+                    java.util.List<String> notStored = fileScanner.flushPending();
+                    if (notStored != null) failed.addAll(notStored);
+                } catch (Exception e) {
+                    log.warn("Failed flushing pending chunks: {}", e.getMessage());
+                }
+                recordScan(snapshot, failed);
                 finishedAt = Instant.now();
                 log.info("Scanner job {} finished. processed={}/{}", currentJobId, processedFiles.get(), totalFiles.get());
             }
@@ -85,6 +157,140 @@ public class ScannerJobService {
         return currentJobId;
     }
 
+    // feed the files into one pipeline run; a file counts as processed once its chunks are stored
+    private void runPipelined(java.util.List<String> files, GitChangeDetector.Snapshot snapshot) {
+        log.info("Scanner job {} started, files={}, pipelined.", currentJobId, files.size());
+        IngestPipeline.Run run = ingestPipeline.start(rel -> {
+            activeFiles.decrementAndGet();
+            processedFiles.incrementAndGet();
+        });
+        try {
+            for (String rel : files) {
+                // pause support: stop feeding; files already queued keep flowing through
+                while (paused.get() && !cancelled.get()) {
+                    try { Thread.sleep(200); } catch (InterruptedException ie) { cancelled.set(true); }
+                }
+                if (cancelled.get()) break;
+                try {
+                    activeFiles.incrementAndGet();
+                    run.submit(rel);
+                } catch (InterruptedException ie) {
+                    activeFiles.decrementAndGet();
+                    cancelled.set(true);
+                    break;
+                }
+            }
+            if (cancelled.get()) {
+                log.info("Scanner job {} cancelled.", currentJobId);
+                run.abort();
+            }
+        } finally {
+            run.finish();
+            activeFiles.set(0); // files dropped by a cancelled run never report back
+            try {
+                fileScanner.flushPending(); // persists the scan manifest
+            } catch (Exception e) {
+                log.warn("Failed flushing pending chunks: {}", e.getMessage());
+            }
+            recordScan(snapshot, run.failedFiles());
+            finishedAt = Instant.now();
+            log.info("Scanner job {} finished. processed={}/{}", currentJobId, processedFiles.get(), totalFiles.get());
+        }
+    }
+
+    private GitChangeDetector.Snapshot gitSnapshot() {
+        if (gitChangeDetector == null || scanStateRepository == null) return null;
+        String root = fileScanner.getRootPath();
+        if (root == null || root.isBlank()) return null;
+        return gitChangeDetector.snapshot(Paths.get(root));
+    }
+
+    // null when there is no usable last indexed commit: the job then scans everything
+    private GitChangeDetector.Changes changesSinceLastScan() {
+        ScanStateRecord state;
+        try {
+            state = scanStateRepository.findById(fileScanner.getApplicationId()).orElse(null);
+        } catch (Exception e) {
+            log.warn("Failed to load scan state: {}", e.getMessage());
+            return null;
+        }
+        if (state == null || state.getLastCommit() == null) return null;
+        GitChangeDetector.Changes changes = gitChangeDetector.changesSince(Paths.get(fileScanner.getRootPath()), state.getLastCommit());
+        if (changes == null) {
+            log.info("Cannot diff against last indexed commit {}; scanning all files", state.getLastCommit());
+            return null;
+        }
+        // uncommitted or failed at the last scan: git may not list them again
+        if (state.getPendingPaths() != null) {
+            for (String p : state.getPendingPaths().split("\n")) {
+                if (!p.isBlank() && !changes.getDeleted().contains(p) && !changes.getRenamed().containsKey(p)) {
+                    changes.getModified().add(p);
+                }
+            }
+        }
+        log.info("Incremental scan since {}: {} changed, {} renamed, {} deleted", state.getLastCommit(),
+                changes.getModified().size(), changes.getRenamed().size(), changes.getDeleted().size());
+        return changes;
+    }
+
+    // indexable changed files that still exist; the rest are turned into deletes
+    private java.util.List<String> changedFiles(GitChangeDetector.Changes changes) {
+        Path root = Paths.get(fileScanner.getRootPath());
+        java.util.Set<String> out = new java.util.LinkedHashSet<>();
+        java.util.List<String> candidates = new java.util.ArrayList<>(changes.getModified());
+        candidates.addAll(changes.getRenamed().values());
+        for (String rel : candidates) {
+            if (!Files.isRegularFile(root.resolve(rel))) changes.getDeleted().add(rel);
+            else if (fileScanner.isIndexable(rel)) out.add(rel);
+        }
+        return new java.util.ArrayList<>(out);
+    }
+
+    // renames keep their chunks (and embeddings); the new paths are still processed for edits
+    private void applyMovesAndDeletes(GitChangeDetector.Changes changes) {
+        for (Map.Entry<String, String> e : changes.getRenamed().entrySet()) {
+            try {
+                fileScanner.moveFile(e.getKey(), e.getValue());
+            } catch (Exception ex) {
+                log.warn("Failed moving {} to {}: {}", e.getKey(), e.getValue(), ex.getMessage());
+            }
+        }
+        for (String rel : changes.getDeleted()) {
+            try {
+                fileScanner.removeFile(rel);
+            } catch (Exception ex) {
+                log.warn("Failed removing {}: {}", rel, ex.getMessage());
+            }
+        }
+    }
+
+    // full listing: whatever is indexed but was not listed has been deleted
+    private void removeMissing(java.util.List<String> files) {
+        try {
+            fileScanner.removeMissing(files);
+        } catch (Exception e) {
+            log.warn("Failed removing deleted files: {}", e.getMessage());
+        }
+    }
+
+    // remember the commit this job indexed, with the paths the next job must look at regardless:
+    // uncommitted edits and the files this job failed to store
+    private void recordScan(GitChangeDetector.Snapshot snapshot, java.util.Collection<String> failed) {
+        if (snapshot == null || cancelled.get()) return;
+        try {
+            java.util.Set<String> pending = new java.util.TreeSet<>(failed);
+            for (String rel : snapshot.getDirty()) if (fileScanner.isIndexable(rel)) pending.add(rel);
+            ScanStateRecord state = new ScanStateRecord();
+            state.setId(fileScanner.getApplicationId());
+            state.setLastCommit(snapshot.getHead());
+            state.setPendingPaths(String.join("\n", pending));
+            state.setUpdatedAt(System.currentTimeMillis());
+            scanStateRepository.save(state);
+        } catch (Exception e) {
+            log.warn("Failed to record scan state: {}", e.getMessage());
+        }
+    }
+
     public synchronized boolean pause() {
         if (currentJobId == null) return false;
         paused.set(true);
@@ -111,6 +317,7 @@ public class ScannerJobService {
         out.put("finishedAt", finishedAt == null ? null : finishedAt.toString());
         out.put("totalFiles", totalFiles.get());
         out.put("processedFiles", processedFiles.get());
+        out.put("activeFiles", activeFiles.get());
         out.put("paused", paused.get());
         out.put("cancelled", cancelled.get());
         out.put("running", currentFuture != null && !currentFuture.isDone());
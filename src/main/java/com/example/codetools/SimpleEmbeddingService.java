@@ -2,6 +2,9 @@ package com.example.codetools;
 
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 public class SimpleEmbeddingService implements EmbeddingService {
     // deterministic stub: convert string to simple fixed-size vector using hash
@@ -16,4 +19,11 @@ public class SimpleEmbeddingService implements EmbeddingService {
         }
         return v;
     }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        List<float[]> out = new ArrayList<>(texts.size());
+        for (String t : texts) out.add(t == null ? null : embed(t));
+        return out;
+    }
 }
@@ -0,0 +1,176 @@
+package com.example.codetools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads byte ranges of source files (the chunk offsets stored with each vector) with positional
+ * {@link FileChannel} reads instead of loading whole files. Regions read are cached per file, in
+ * LRU order, up to {@code cacheBytes} in total; a file whose mtime or size changed has its regions
+ * dropped on the next read. Offsets are byte offsets into the file after any UTF-8 BOM (see
+ * {@link TextFileReader.Text#byteLength}), so bytes that are not valid UTF-8 read back as the
+ * same U+FFFD the indexed text has; UTF-16 files (rare in source trees) are decoded whole and
+ * sliced by the UTF-8 length of their text.
+ */
+public final class SnippetReader {
+
+    private final long cacheBytes;
+    private final TextFileReader textReader;
+
+    // path -> cached regions; access order, so the first entry is the least recently used file
+    private final LinkedHashMap<Path, FileRegions> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    public SnippetReader(long cacheBytes, TextFileReader textReader) {
+        this.cacheBytes = cacheBytes;
+        this.textReader = textReader;
+    }
+
+    /** Text of the ranges {@code [start, end)}, in order, joined by a newline where they are not adjacent. */
+    public String read(Path file, List<long[]> ranges) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long mtime = attrs.lastModifiedTime().toMillis();
+        long size = attrs.size();
+        StringBuilder sb = new StringBuilder();
+        List<long[]> missing = new ArrayList<>();
+        Map<Long, String> found = new HashMap<>();
+        synchronized (cache) {
+            FileRegions f = cache.get(file);
+            if (f != null && (f.mtime != mtime || f.size != size)) {
+                evict(file);
+                f = null;
+            }
+            for (long[] r : ranges) {
+                String text = f == null ? null : f.regions.get(key(r));
+                if (text != null) found.put(key(r), text);
+                else missing.add(r);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Long, String> read = readRanges(file, size, missing);
+            found.putAll(read);
+            store(file, mtime, size, read);
+        }
+        long prevEnd = -1;
+        for (long[] r : ranges) {
+            if (prevEnd >= 0 && r[0] != prevEnd) sb.append('\n');
+            sb.append(found.getOrDefault(key(r), ""));
+            prevEnd = r[1];
+        }
+        return sb.toString();
+    }
+
+    private Map<Long, String> readRanges(Path file, long size, List<long[]> ranges) throws IOException {
+        Map<Long, String> out = new HashMap<>();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(3);
+            while (head.hasRemaining()) if (ch.read(head, head.position()) < 0) break;
+            head.flip();
+            if (TextFileReader.charsetOf(head) != null) {
+                // UTF-16: byte positions in the file do not match the stored offsets
+                String text = textReader.read(file).getContent();
+                for (long[] r : ranges) out.put(key(r), sliceUtf8(text, r[0], r[1]));
+                return out;
+            }
+            long bom = head.position();
+            for (long[] r : ranges) {
+                long from = Math.min(size, bom + r[0]);
+                long to = Math.min(size, bom + r[1]);
+                ByteBuffer buf = ByteBuffer.allocate((int) Math.max(0, to - from));
+                while (buf.hasRemaining()) if (ch.read(buf, from + buf.position()) < 0) break;
+                buf.flip();
+                out.put(key(r), StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                        .decode(buf).toString());
+            }
+        }
+        return out;
+    }
+
+    private void store(Path file, long mtime, long size, Map<Long, String> regions) {
+        if (cacheBytes <= 0) return;
+        synchronized (cache) {
+            FileRegions f = cache.get(file);
+            if (f == null || f.mtime != mtime || f.size != size) {
+                if (f != null) evict(file);
+                f = new FileRegions(mtime, size);
+                cache.put(file, f);
+            }
+            for (Map.Entry<Long, String> e : regions.entrySet()) {
+                if (f.regions.put(e.getKey(), e.getValue()) == null) {
+                    long bytes = length(e.getKey());
+                    f.bytes += bytes;
+                    cachedBytes += bytes;
+                }
+            }
+            Iterator<Map.Entry<Path, FileRegions>> it = cache.entrySet().iterator();
+            while (cachedBytes > cacheBytes && it.hasNext()) {
+                cachedBytes -= it.next().getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    private void evict(Path file) {
+        FileRegions f = cache.remove(file);
+        if (f != null) cachedBytes -= f.bytes;
+    }
+
+    long cachedBytes() {
+        synchronized (cache) {
+            return cachedBytes;
+        }
+    }
+
+    // ranges stay under 2 GB (files are capped well below), so start and length pack into a long
+    private static long key(long[] r) {
+        return (r[0] << 32) | ((r[1] - r[0]) & 0xffffffffL);
+    }
+
+    private static long length(long key) {
+        return key & 0xffffffffL;
+    }
+
+    /** Characters of {@code text} between two UTF-8 byte offsets. */
+    static String sliceUtf8(String text, long start, long end) {
+        int i = 0;
+        long b = 0;
+        while (i < text.length() && b < start) b += utf8Length(text.charAt(i++));
+        int from = i;
+        while (i < text.length() && b < end) b += utf8Length(text.charAt(i++));
+        return text.substring(from, i);
+    }
+
+    // surrogates count 2 each so a pair adds up to its 4 UTF-8 bytes
+    static int utf8Length(char c) {
+        if (c < 0x80) return 1;
+        if (c < 0x800 || Character.isSurrogate(c)) return 2;
+        return 3;
+    }
+
+    private static final class FileRegions {
+        final long mtime;
+        final long size;
+        final Map<Long, String> regions = new HashMap<>();
+        long bytes;
+
+        FileRegions(long mtime, long size) {
+            this.mtime = mtime;
+            this.size = size;
+        }
+    }
+}
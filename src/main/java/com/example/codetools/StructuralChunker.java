@@ -0,0 +1,83 @@
+package com.example.codetools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Base for chunkers that cut at declaration boundaries. Subclasses find where units (a method, a
+ * function, a class header, a run of imports) start, with leading comments, annotations and
+ * decorators attached to the declaration they precede. Units are then packed without overlap:
+ * units of at least {@code minSize} characters become a chunk of their own, smaller ones are
+ * merged with the units after them until the run reaches {@code minSize}, and a unit larger than
+ * {@code maxSize} is handed to the fallback chunker. An edit inside one method therefore leaves
+ * the chunks of the other methods untouched.
+ */
+public abstract class StructuralChunker implements Chunker {
+
+    private final Set<String> extensions;
+    private final Chunker fallback;
+    private final int minSize;
+    private final int maxSize;
+
+    protected StructuralChunker(Set<String> extensions, Chunker fallback, int minSize, int maxSize) {
+        this.extensions = extensions;
+        this.fallback = fallback;
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return extensions;
+    }
+
+    /** Offsets (line starts, ascending) where a unit begins. */
+    protected abstract List<Integer> unitStarts(String text);
+
+    @Override
+    public List<int[]> split(String text) {
+        List<int[]> out = new ArrayList<>();
+        if (text.isEmpty()) return out;
+        List<Integer> starts = unitStarts(text);
+        if (starts.isEmpty() || starts.get(0) != 0) starts.add(0, 0);
+        int pending = -1;
+        for (int u = 0; u < starts.size(); u++) {
+            int s = starts.get(u);
+            int e = u + 1 < starts.size() ? starts.get(u + 1) : text.length();
+            if (pending < 0) pending = s;
+            if (e - pending >= minSize) {
+                emit(text, pending, e, out);
+                pending = -1;
+            }
+        }
+        if (pending >= 0) {
+            // a short tail (closing braces, a last small function) joins the chunk before it
+            int[] last = out.isEmpty() ? null : out.get(out.size() - 1);
+            if (last != null && text.length() - last[0] <= maxSize) last[1] = text.length();
+            else emit(text, pending, text.length(), out);
+        }
+        return out;
+    }
+
+    private void emit(String text, int start, int end, List<int[]> out) {
+        if (end - start <= maxSize) {
+            out.add(new int[] {start, end});
+            return;
+        }
+        for (int[] r : fallback.split(text.substring(start, end))) out.add(new int[] {start + r[0], start + r[1]});
+    }
+
+    // helpers for line-oriented scanners
+
+    static int lineEnd(String text, int from) {
+        int nl = text.indexOf('\n', from);
+        return nl < 0 ? text.length() : nl;
+    }
+
+    static int firstNonSpace(String text, int from, int to) {
+        int i = from;
+        while (i < to && Character.isWhitespace(text.charAt(i))) i++;
+        return i;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.codetools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads source files as text without staging them in a {@code byte[]}: small files are read into a
+ * pooled buffer that is reused across files, larger ones are memory-mapped, and both are decoded
+ * straight into a pooled char buffer. The only heap copy of a file is then the resulting String.
+ * (Scan jobs read each file on its own virtual thread, so the buffers are pooled rather than
+ * thread-local.) Text is UTF-8 unless a BOM says UTF-16; a UTF-8 BOM is dropped and
+ * malformed input is replaced rather than failing the file. Where a UTF-8 file held bytes that are
+ * not UTF-8 (a cp1252 or Latin-1 source, say), the text records each U+FFFD it put in and how
+ * many bytes it stands for, so {@link Text#byteLength} still measures ranges in file bytes.
+ *
+ * Files over {@code maxBytes} are skipped without being read, as are files whose first few KB look
+ * binary (a NUL byte, or more than 1 in 10 bytes being control characters). Skipped files come
+ * back with empty content, so callers drop whatever was indexed for them before.
+ */
+public final class TextFileReader {
+
+    static final int SNIFF_BYTES = 8192;
+
+    // reading is cheaper than mapping for small files
+    private static final int MAP_THRESHOLD = 256 * 1024;
+
+    // buffers larger than this go back to the GC instead of the pool
+    private static final int RETAIN_CHARS = 1024 * 1024;
+
+    private final long maxBytes;
+    private final BlockingQueue<Buffers> pool = new ArrayBlockingQueue<>(16);
+
+    /** @param maxBytes larger files are skipped; 0 or less means no cap */
+    public TextFileReader(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** Read and decode a file, with the SHA-1 of its raw bytes (see {@link ScanManifest#hash}). */
+    public Text read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (maxBytes > 0 && size > maxBytes) return Text.skipped("oversize");
+            if (size > Integer.MAX_VALUE) return Text.skipped("oversize");
+            Buffers buf = pool.poll();
+            if (buf == null) buf = new Buffers();
+            try {
+                ByteBuffer bytes = size > MAP_THRESHOLD ? ch.map(FileChannel.MapMode.READ_ONLY, 0, size) : buf.read(ch, (int) size);
+                String hash = ScanManifest.hash(bytes.duplicate());
+                Charset cs = charsetOf(bytes);
+                if (cs == null && looksBinary(bytes)) return Text.skipped("binary");
+                Text text = new Text(null, hash, null);
+                text.content = decode(bytes, cs == null ? StandardCharsets.UTF_8 : cs, buf, cs == null ? text : null);
+                return text;
+            } finally {
+                if (buf.chars.capacity() <= RETAIN_CHARS) pool.offer(buf);
+            }
+        }
+    }
+
+    /** Charset named by a BOM (which is skipped), or null when there is none (UTF-8 BOM is skipped too). */
+    static Charset charsetOf(ByteBuffer b) {
+        int p = b.position();
+        int n = b.remaining();
+        if (n >= 3 && (b.get(p) & 0xff) == 0xEF && (b.get(p + 1) & 0xff) == 0xBB && (b.get(p + 2) & 0xff) == 0xBF) {
+            b.position(p + 3);
+            return null;
+        }
+        if (n >= 2 && (b.get(p) & 0xff) == 0xFE && (b.get(p + 1) & 0xff) == 0xFF) {
+            b.position(p + 2);
+            return StandardCharsets.UTF_16BE;
+        }
+        if (n >= 2 && (b.get(p) & 0xff) == 0xFF && (b.get(p + 1) & 0xff) == 0xFE) {
+            b.position(p + 2);
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    /** NUL bytes or a high share of control characters near the start of the file. */
+    static boolean looksBinary(ByteBuffer b) {
+        int p = b.position();
+        int n = Math.min(b.remaining(), SNIFF_BYTES);
+        int control = 0;
+        for (int i = 0; i < n; i++) {
+            int c = b.get(p + i) & 0xff;
+            if (c == 0) return true;
+            if ((c < 0x20 && c != '\t' && c != '\n' && c != '\r' && c != '\f') || c == 0x7f) control++;
+        }
+        return control * 10 > n;
+    }
+
+    // replacements are made here rather than by the decoder so they can be recorded in `into`
+    // (null: don't record), the same U+FFFD per malformed sequence that REPLACE would produce
+    private static String decode(ByteBuffer bytes, Charset cs, Buffers buf, Text into) {
+        CharsetDecoder dec = cs.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // a UTF-8 or UTF-16 byte never decodes to more than one char
+        int need = bytes.remaining();
+        if (buf.chars.capacity() < need) buf.chars = CharBuffer.allocate(need);
+        CharBuffer out = buf.chars.clear();
+        while (true) {
+            CoderResult r = dec.decode(bytes, out, true);
+            if (r.isUnderflow()) break;
+            if (r.isOverflow()) throw new IllegalStateException("decoder overflow: " + r);
+            if (into != null) into.replaced(out.position(), r.length());
+            out.put('\uFFFD');
+            bytes.position(bytes.position() + r.length());
+        }
+        dec.flush(out);
+        out.flip();
+        return out.toString();
+    }
+
+    private static final class Buffers {
+        final ByteBuffer bytes = ByteBuffer.allocate(MAP_THRESHOLD);
+        CharBuffer chars = CharBuffer.allocate(64 * 1024);
+
+        ByteBuffer read(FileChannel ch, int size) throws IOException {
+            bytes.clear().limit(size);
+            // a file that shrank since size() just ends early
+            while (bytes.hasRemaining()) if (ch.read(bytes) < 0) break;
+            return bytes.flip();
+        }
+    }
+
+    /** Decoded content, or empty content with the reason the file was skipped. */
+    public static final class Text {
+        private String content;
+        private final String hash;
+        private final String skipped;
+        // chars that replaced malformed input, ascending, and the input bytes each stands for
+        private int[] replacedAt = new int[0];
+        private int[] replacedBytes = new int[0];
+        private int replacements;
+
+        Text(String content, String hash, String skipped) {
+            this.content = content;
+            this.hash = hash;
+            this.skipped = skipped;
+        }
+
+        private void replaced(int at, int bytes) {
+            if (replacements == replacedAt.length) {
+                replacedAt = java.util.Arrays.copyOf(replacedAt, Math.max(8, 2 * replacements));
+                replacedBytes = java.util.Arrays.copyOf(replacedBytes, replacedAt.length);
+            }
+            replacedAt[replacements] = at;
+            replacedBytes[replacements++] = bytes;
+        }
+
+        /**
+         * Bytes the chars {@code [from, to)} of the content took in the file, for UTF-8 files:
+         * their UTF-8 length, except that a U+FFFD standing for malformed input counts the bytes
+         * it replaced. (UTF-16 files are measured in UTF-8 of the decoded text too.)
+         */
+        public long byteLength(int from, int to) {
+            long n = 0;
+            for (int i = from; i < to; i++) n += SnippetReader.utf8Length(content.charAt(i));
+            int k = java.util.Arrays.binarySearch(replacedAt, 0, replacements, from);
+            for (k = k < 0 ? -k - 1 : k; k < replacements && replacedAt[k] < to; k++) n += replacedBytes[k] - 3;
+            return n;
+        }
+
+        static Text skipped(String reason) {
+            // the marker stands in for the hash so the manifest remembers the file was skipped
+            return new Text("", "skipped:" + reason, reason);
+        }
+
+        public String getContent() { return content; }
+        public String getHash() { return hash; }
+        /** "oversize" or "binary", or null when the file was read. */
+        public String getSkipped() { return skipped; }
+    }
+}
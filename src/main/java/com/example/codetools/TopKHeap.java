@@ -0,0 +1,83 @@
+package com.example.codetools;
+
+/**
+ * Fixed-size min-heap keeping the k highest-scoring (id, score) pairs seen so far, backed by
+ * primitive arrays so scans can rank millions of candidates without allocating per candidate.
+ */
+public final class TopKHeap {
+
+    private final int[] ids;
+    private final float[] scores;
+    private int size;
+
+    public TopKHeap(int k) {
+        if (k <= 0) throw new IllegalArgumentException("k must be positive");
+        this.ids = new int[k];
+        this.scores = new float[k];
+    }
+
+    /** Offer a candidate; returns true if it entered the heap. */
+    public boolean offer(int id, float score) {
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (score <= scores[0]) return false;
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0, size);
+        return true;
+    }
+
+    /** Lowest score still in the heap once full; candidates at or below it cannot enter. */
+    public float threshold() {
+        return size < ids.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public int size() { return size; }
+
+    public void clear() { size = 0; }
+
+    /**
+     * Sort the retained entries by descending score in place. After this call the heap order is
+     * gone: read results with {@link #id(int)}/{@link #score(int)} and {@link #clear()} before reuse.
+     */
+    public void sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    public int id(int i) { return ids[i]; }
+
+    public float score(int i) { return scores[i]; }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        while (true) {
+            int l = 2 * i + 1;
+            if (l >= n) break;
+            int r = l + 1;
+            int min = r < n && scores[r] < scores[l] ? r : l;
+            if (scores[i] <= scores[min]) break;
+            swap(i, min);
+            i = min;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int ti = ids[a]; ids[a] = ids[b]; ids[b] = ti;
+        float ts = scores[a]; scores[a] = scores[b]; scores[b] = ts;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.codetools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rewrites vector rows still in an old storage format (GZIP'd blob, or a JSON copy only) into the
+ * current {@link VectorCodec} encoding, and drops the JSON copy unless {@code vector.store.json}
+ * is set. Runs in the background once the application is ready and can be restarted from the
+ * admin API. Each update only applies while the row's checksum is unchanged, so rows
+ * re-ingested during the migration keep their new content.
+ */
+@Slf4j
+@Component
+public class VectorBlobMigrator {
+
+    private static final String UPDATE_SQL =
+            "UPDATE vectors SET vector_blob = ?, vector = ? WHERE id = ? AND checksum IS NOT DISTINCT FROM ?";
+
+    @Autowired
+    private VectorRepository repo;
+
+    @Autowired
+    private VectorService vectorService;
+
+    @Autowired(required = false)
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${vector.migration.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${vector.migration.page.size:500}")
+    private int pageSize = 500;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong rewritten = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (enabled) start();
+    }
+
+    /** Start a migration pass on a background thread; false when one is already running. */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) return false;
+        Thread t = new Thread(() -> {
+            try {
+                long n = migrate();
+                if (n > 0) log.info("Vector blob migration rewrote {} rows", n);
+            } catch (Exception e) {
+                log.warn("Vector blob migration failed: {}", e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        }, "vector-blob-migration");
+        t.setDaemon(true);
+        t.start();
+        return true;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("running", running.get());
+        out.put("scanned", scanned.get());
+        out.put("rewritten", rewritten.get());
+        out.put("failed", failed.get());
+        return out;
+    }
+
+    // one pass over the table; returns how many rows were rewritten
+    long migrate() {
+        scanned.set(0);
+        rewritten.set(0);
+        failed.set(0);
+        boolean half = vectorService.isHalfPrecision();
+        boolean keepJson = vectorService.isStoreJson();
+        long total = 0;
+        int limit = Math.max(1, pageSize);
+        String after = "";
+        while (true) {
+            // keyset pages: rows deleted or inserted meanwhile cannot shift unvisited rows out of reach
+            List<VectorRecord> rows = repo.findAfterId(after, PageRequest.of(0, limit));
+            if (rows.isEmpty()) break;
+            List<VectorRecord> stale = new ArrayList<>();
+            for (VectorRecord r : rows) {
+                scanned.incrementAndGet();
+                boolean jsonToDrop = !keepJson && r.getVectorJson() != null;
+                if (VectorCodec.isCurrent(r.getVectorBlob(), half) && !jsonToDrop) continue;
+                float[] v = VectorServiceHelper.decode(r);
+                if (v == null) {
+                    failed.incrementAndGet();
+                    continue;
+                }
+                // rows keep their values as stored (legacy rows with a null norm stay unnormalized)
+                r.setVectorBlob(VectorCodec.encode(v, half));
+                if (!keepJson) r.setVectorJson(null);
+                stale.add(r);
+            }
+            if (!stale.isEmpty()) {
+                write(stale);
+                rewritten.addAndGet(stale.size());
+                total += stale.size();
+            }
+            if (rows.size() < limit) break;
+            after = rows.get(rows.size() - 1).getId();
+        }
+        return total;
+    }
+
+    private void write(List<VectorRecord> records) {
+        if (jdbcTemplate == null) {
+            repo.saveAll(records);
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SQL, records, records.size(), (ps, r) -> {
+            ps.setBytes(1, r.getVectorBlob());
+            ps.setString(2, r.getVectorJson());
+            ps.setString(3, r.getId());
+            ps.setString(4, r.getChecksum());
+        });
+    }
+}
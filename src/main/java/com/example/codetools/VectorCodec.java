@@ -0,0 +1,75 @@
+package com.example.codetools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Binary format of stored vectors: a 4-byte header ({@code 'V'}, format version, element type,
+ * reserved) followed by the components as little-endian float32 or float16. Decoding is a bulk
+ * copy through a {@link ByteBuffer} view; no streams, no inflater.
+ *
+ * Blobs written before this format (GZIP'd big-endian {@code DataOutputStream} with a length
+ * prefix) start with the GZIP magic and are still decoded; {@link #isLegacy} tells them apart so
+ * they can be rewritten.
+ */
+public final class VectorCodec {
+    private VectorCodec() {}
+
+    static final byte MAGIC = 'V';
+    static final byte VERSION = 1;
+    static final byte FLOAT32 = 0;
+    static final byte FLOAT16 = 1;
+    static final int HEADER_BYTES = 4;
+
+    public static byte[] encode(float[] v) {
+        return encode(v, false);
+    }
+
+    /** Encode v as float32, or as float16 when half is set (half the size, ~3 significant digits). */
+    public static byte[] encode(float[] v, boolean half) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + v.length * (half ? 2 : 4)).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(MAGIC).put(VERSION).put(half ? FLOAT16 : FLOAT32).put((byte) 0);
+        if (half) {
+            ShortBuffer out = buf.asShortBuffer();
+            for (float f : v) out.put(Float.floatToFloat16(f));
+        } else {
+            buf.asFloatBuffer().put(v);
+        }
+        return buf.array();
+    }
+
+    public static float[] decode(byte[] blob) throws Exception {
+        if (isLegacy(blob)) return VectorServiceHelper.gzipBytesToFloatArrayStatic(blob);
+        if (blob.length < HEADER_BYTES || blob[0] != MAGIC || blob[1] != VERSION) {
+            throw new IllegalArgumentException("unknown vector encoding");
+        }
+        ByteBuffer body = ByteBuffer.wrap(blob, HEADER_BYTES, blob.length - HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN);
+        switch (blob[2]) {
+            case FLOAT32: {
+                float[] v = new float[body.remaining() / 4];
+                body.asFloatBuffer().get(v);
+                return v;
+            }
+            case FLOAT16: {
+                ShortBuffer in = body.asShortBuffer();
+                float[] v = new float[in.remaining()];
+                for (int i = 0; i < v.length; i++) v[i] = Float.float16ToFloat(in.get(i));
+                return v;
+            }
+            default:
+                throw new IllegalArgumentException("unknown vector element type " + blob[2]);
+        }
+    }
+
+    /** True for blobs in the pre-versioned GZIP format. */
+    public static boolean isLegacy(byte[] blob) {
+        return blob != null && blob.length >= 2 && blob[0] == (byte) 0x1f && blob[1] == (byte) 0x8b;
+    }
+
+    /** True when the blob is in the current format with the requested element type. */
+    public static boolean isCurrent(byte[] blob, boolean half) {
+        return blob != null && blob.length >= HEADER_BYTES && blob[0] == MAGIC && blob[1] == VERSION
+                && blob[2] == (half ? FLOAT16 : FLOAT32);
+    }
+}
@@ -4,7 +4,8 @@ import jakarta.persistence.*;
 
 @Entity
 @Table(name = "vectors", indexes = {
-        @Index(name = "idx_app", columnList = "application_id")
+        @Index(name = "idx_app", columnList = "application_id"),
+        @Index(name = "idx_app_path", columnList = "application_id, path")
 })
 public class VectorRecord {
 
@@ -20,7 +21,8 @@ public class VectorRecord {
     @Column(name = "content", columnDefinition = "CLOB")
     private String content;
 
-    // compressed binary embedding blob (GZIPped float bytes)
+    // binary embedding: raw little-endian f32/f16 in the VectorCodec format (older rows may still
+    // hold GZIPped floats, which VectorCodec.decode also reads)
     @Lob
     @Column(name = "vector_blob", columnDefinition = "BLOB")
     private byte[] vectorBlob;
@@ -30,6 +32,10 @@ public class VectorRecord {
     @Column(name = "vector", columnDefinition = "CLOB")
     private String vectorJson;
 
+    // L2 norm of the raw embedding; the stored vector itself is unit length (null for legacy rows)
+    @Column(name = "norm")
+    private Float norm;
+
     @Column(name = "checksum")
     private String checksum;
 
@@ -62,6 +68,8 @@ public class VectorRecord {
     public void setVectorBlob(byte[] vectorBlob) { this.vectorBlob = vectorBlob; }
     public String getVectorJson() { return vectorJson; }
     public void setVectorJson(String vectorJson) { this.vectorJson = vectorJson; }
+    public Float getNorm() { return norm; }
+    public void setNorm(Float norm) { this.norm = norm; }
     public String getChecksum() { return checksum; }
     public void setChecksum(String checksum) { this.checksum = checksum; }
     public Integer getChunkIndex() { return chunkIndex; }
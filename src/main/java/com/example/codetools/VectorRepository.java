@@ -1,8 +1,49 @@
 package com.example.codetools;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 
 public interface VectorRepository extends JpaRepository<VectorRecord, String> {
     List<VectorRecord> findByApplicationId(String applicationId);
+    Page<VectorRecord> findByApplicationId(String applicationId, Pageable pageable);
+    List<VectorRecord> findByApplicationIdAndPath(String applicationId, String path);
+
+    @Query("select v.id from VectorRecord v where v.applicationId = :applicationId and v.path = :path")
+    List<String> findIdsByApplicationIdAndPath(@Param("applicationId") String applicationId, @Param("path") String path);
+
+    @Modifying
+    @Query("delete from VectorRecord v where v.applicationId = :applicationId and v.path = :path")
+    int deleteByApplicationIdAndPath(@Param("applicationId") String applicationId, @Param("path") String path);
+
+    @Query("select distinct v.path from VectorRecord v where v.applicationId = :applicationId")
+    List<String> findPathsByApplicationId(@Param("applicationId") String applicationId);
+
+    @Query("select v.id from VectorRecord v where v.applicationId = :applicationId and v.path in :paths")
+    List<String> findIdsByApplicationIdAndPathIn(@Param("applicationId") String applicationId, @Param("paths") Collection<String> paths);
+
+    @Modifying
+    @Query("delete from VectorRecord v where v.applicationId = :applicationId and v.path in :paths")
+    int deleteByApplicationIdAndPathIn(@Param("applicationId") String applicationId, @Param("paths") Collection<String> paths);
+
+    // chunks past the end of a file that shrank
+    @Query("select v.id from VectorRecord v where v.applicationId = :applicationId and v.path = :path and v.chunkIndex >= :from")
+    List<String> findIdsFromChunk(@Param("applicationId") String applicationId, @Param("path") String path, @Param("from") int from);
+
+    @Modifying
+    @Query("delete from VectorRecord v where v.applicationId = :applicationId and v.path = :path and v.chunkIndex >= :from")
+    int deleteFromChunk(@Param("applicationId") String applicationId, @Param("path") String path, @Param("from") int from);
+
+    // keyset paging for passes that write while they read: the next rows after an id, in id order
+    @Query("select v from VectorRecord v where v.id > :after order by v.id")
+    List<VectorRecord> findAfterId(@Param("after") String after, Pageable limit);
+
+    // chunk byte ranges of a file, in chunk order, for snippet reads
+    @Query("select v.startOffset, v.endOffset from VectorRecord v where v.applicationId = :applicationId and v.path = :path order by v.chunkIndex")
+    List<Object[]> findOffsetsByApplicationIdAndPath(@Param("applicationId") String applicationId, @Param("path") String path);
 }
@@ -2,18 +2,17 @@ package com.example.codetools;
 
 import lombok.extern.slf4j.Slf4j;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.transaction.annotation.Transactional;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.security.MessageDigest;
+import java.sql.Types;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 @Slf4j
 @Service
@@ -32,88 +31,537 @@ public class VectorService {
     @Autowired(required = false)
     private org.springframework.beans.factory.ObjectProvider<AnnIndex> annServiceProvider;
 
+    @Autowired(required = false)
+    private QueryCache queryCache;
+
+    @Autowired(required = false)
+    private EmbeddingCache embeddingCache;
+
+    @Autowired(required = false)
+    private IngestThrottle ingestThrottle;
+
+    @Autowired(required = false)
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private JdbcTemplate jdbcTemplate;
+
+    // how many ANN candidates to fetch per requested result before filtering by application
+    @Value("${vector.query.overfetch:4}")
+    private int queryOverfetch = 4;
+
+    // texts per EmbeddingService.embedBatch call
+    @Value("${embedding.batch.size:32}")
+    private int embeddingBatchSize = 32;
+
+    // element type of stored vectors: f32, or f16 for half the bytes at ~3 significant digits
+    @Value("${vector.store.encoding:f32}")
+    private String storeEncoding = "f32";
+
+    // also keep a JSON copy of each vector in the 'vector' column (debugging only)
+    @Value("${vector.store.json:false}")
+    private boolean storeJson = false;
+
+    // rows per JDBC batch in upsertAll
+    @Value("${vector.write.batch.size:500}")
+    private int writeBatchSize = 500;
+
+    // H2 upsert keyed on the id: one statement per row, no read-before-write
+    private static final String MERGE_SQL = "MERGE INTO vectors (id, application_id, path, content, vector_blob, vector, norm, "
+            + "checksum, chunk_index, start_offset, end_offset, metadata, created_at) KEY(id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     private AnnIndex annService() {
         AnnIndex s = annServiceProvider == null ? null : annServiceProvider.getIfAvailable();
         return s == null ? new NoopAnnService() : s;
     }
-    @Transactional
     public void upsert(String applicationId, String path, String content) {
         upsert(applicationId, path, content, 0, 0, 0);
     }
 
-    @Transactional
     public void upsert(String applicationId, String path, String content, int chunkIndex, int startOffset, int endOffset) {
+        upsertBatch(List.of(new Chunk(applicationId, path, content, chunkIndex, startOffset, endOffset)));
+    }
+
+    /**
+     * Upsert many chunks at once (typically every chunk of a file, or of several files). Unchanged
+     * chunks are found with one lookup, and the changed ones are embedded with
+     * {@link EmbeddingService#embedBatch} in groups of {@code embedding.batch.size}.
+     *
+     * This runs the three phases {@link IngestPipeline} runs as separate stages:
+     * {@link #detectChanges}, {@link #embedChanges} and {@link #persistChanges}. No transaction
+     * spans the embedding calls, so callers waiting on the embedder don't hold database connections.
+     *
+     * @return true when every changed chunk was embedded and stored
+     */
+    public boolean upsertBatch(List<Chunk> chunks) {
+        if (chunks == null || chunks.isEmpty()) return true;
         try {
-            String id = applicationId + ":" + path + ":" + chunkIndex;
-            String checksum = checksumFor(content);
-            VectorRecord existing = repo.findById(id).orElse(null);
-            if (existing != null && checksum.equals(existing.getChecksum())) {
-                // unchanged
-                return;
+            boolean complete = true;
+            List<Change> changed = detectChanges(chunks);
+            int batch = Math.max(1, embeddingBatchSize);
+            for (int from = 0; from < changed.size(); from += batch) {
+                List<Change> group = changed.subList(from, Math.min(changed.size(), from + batch));
+                List<float[]> vectors;
+                try {
+                    vectors = embedChanges(group);
+                } catch (Exception ex) {
+                    log.warn("Embedding batch of {} chunks failed: {}", group.size(), ex.getMessage());
+                    complete = false;
+                    continue;
+                }
+                if (persistChanges(group, vectors) < group.size()) complete = false;
+            }
+            return complete;
+        } catch (Exception e) {
+            // don't let indexing fail the whole scan
+            log.debug("VectorService.upsert error: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /** Texts per embedding call ({@code embedding.batch.size}). */
+    public int getEmbeddingBatchSize() {
+        return Math.max(1, embeddingBatchSize);
+    }
+
+    /**
+     * Return the chunks whose content differs from what is stored (one lookup per file), each with
+     * its checksum, the record it will overwrite and, when the same content is already stored under
+     * another chunk of the file, that record as the source of its vector. Ids are positional, so a
+     * chunk inserted near the top of a file shifts the ids of the chunks after it; matching by
+     * content means those chunks are rewritten under their new ids but not re-embedded. A chunk
+     * whose content is unchanged but whose offsets moved is rewritten the same way, so snippet
+     * reads find it where it now is.
+     *
+     * When a chunk knows its file's chunk count ({@link Chunk#getFileChunkCount}) and the file has
+     * rows past that count, the file's last change carries their ids so {@link #persistChanges}
+     * deletes them along with the new rows; a file that only shrank gets its last chunk rewritten
+     * (with its stored vector) to carry them.
+     */
+    public List<Change> detectChanges(List<Chunk> chunks) throws Exception {
+        if (chunks.isEmpty()) return new ArrayList<>();
+        Map<String, VectorRecord> existing = new HashMap<>();
+        Map<String, VectorRecord> byContent = new HashMap<>();
+        Set<String> files = new HashSet<>();
+        for (Chunk c : chunks) {
+            if (!files.add(c.getApplicationId() + ":" + c.getPath())) continue;
+            for (VectorRecord r : repo.findByApplicationIdAndPath(c.getApplicationId(), c.getPath())) {
+                existing.put(r.getId(), r);
+                if (r.getChecksum() != null) byContent.putIfAbsent(r.getApplicationId() + ":" + r.getPath() + ":" + r.getChecksum(), r);
             }
-            float[] vec = embeddingService.embed(content);
+        }
+
+        List<Change> changed = new ArrayList<>();
+        for (Chunk c : chunks) {
+            String checksum = checksumFor(c.getContent());
+            VectorRecord old = existing.get(c.getId());
+            if (old != null && checksum.equals(old.getChecksum())) {
+                if (sameOffsets(old, c)) continue; // unchanged
+                // same content at a new position (or stored with char offsets): rewrite the row
+                // with the new offsets, keeping its vector
+                changed.add(new Change(c, checksum, old, old));
+                continue;
+            }
+            VectorRecord source = byContent.get(c.getApplicationId() + ":" + c.getPath() + ":" + checksum);
+            changed.add(new Change(c, checksum, old, source));
+        }
+        attachStale(chunks, existing, changed);
+        return changed;
+    }
+
+    // hand each shrunk file's rows past its new end to the file's last change
+    private void attachStale(List<Chunk> chunks, Map<String, VectorRecord> existing, List<Change> changed) throws Exception {
+        Map<String, Chunk> lastOfFile = new LinkedHashMap<>();
+        for (Chunk c : chunks) {
+            if (c.getFileChunkCount() < 0) continue;
+            lastOfFile.merge(c.getApplicationId() + ":" + c.getPath(), c, (a, b) -> b.getChunkIndex() > a.getChunkIndex() ? b : a);
+        }
+        if (lastOfFile.isEmpty()) return;
+        Map<String, List<String>> stale = new HashMap<>();
+        for (VectorRecord r : existing.values()) {
+            Chunk last = lastOfFile.get(r.getApplicationId() + ":" + r.getPath());
+            if (last == null || r.getChunkIndex() == null || r.getChunkIndex() < last.getFileChunkCount()) continue;
+            stale.computeIfAbsent(r.getApplicationId() + ":" + r.getPath(), k -> new ArrayList<>()).add(r.getId());
+        }
+        for (Map.Entry<String, List<String>> e : stale.entrySet()) {
+            int at = -1;
+            for (int i = changed.size() - 1; i >= 0 && at < 0; i--) {
+                Chunk c = changed.get(i).getChunk();
+                if (e.getKey().equals(c.getApplicationId() + ":" + c.getPath())) at = i;
+            }
+            if (at >= 0) {
+                Change c = changed.get(at);
+                changed.set(at, new Change(c.getChunk(), c.getChecksum(), c.getExisting(), c.getSource(), e.getValue()));
+            } else {
+                Chunk last = lastOfFile.get(e.getKey());
+                VectorRecord old = existing.get(last.getId());
+                changed.add(new Change(last, checksumFor(last.getContent()), old, old, e.getValue()));
+            }
+        }
+    }
+
+    private static boolean sameOffsets(VectorRecord r, Chunk c) {
+        return r.getStartOffset() != null && r.getStartOffset() == c.getStartOffset()
+                && r.getEndOffset() != null && r.getEndOffset() == c.getEndOffset();
+    }
+
+    /**
+     * Embed the changes in one call, under an {@link IngestThrottle} embedding permit; the result
+     * lines up with the input and holds null where the embedder failed.
+     */
+    public List<float[]> embedChanges(List<Change> changes) throws Exception {
+        List<float[]> out = new ArrayList<>(Collections.nCopies(changes.size(), (float[]) null));
+        List<Integer> pending = new ArrayList<>(changes.size());
+        List<String> contents = new ArrayList<>(changes.size());
+        List<String> checksums = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            Change c = changes.get(i);
+            // content that moved within the file keeps its stored vector
+            float[] stored = c.getSource() == null ? null : VectorServiceHelper.decode(c.getSource());
+            if (stored != null) {
+                out.set(i, stored);
+                continue;
+            }
+            pending.add(i);
+            contents.add(c.getChunk().getContent());
+            checksums.add(c.getChecksum());
+        }
+        if (contents.isEmpty()) return out;
+        // identical content elsewhere (other path, chunk or app) reuses its embedding
+        Callable<List<float[]>> call = () -> embeddingCache != null ? embeddingCache.embedBatch(contents, checksums)
+                : embeddingService.embedBatch(contents);
+        List<float[]> embedded = ingestThrottle == null ? call.call() : ingestThrottle.embedding(call);
+        for (int j = 0; j < pending.size(); j++) {
+            out.set(pending.get(j), embedded == null || j >= embedded.size() ? null : embedded.get(j));
+        }
+        return out;
+    }
+
+    /**
+     * Store embedded changes with {@link #upsertAll} under an {@link IngestThrottle} writer permit,
+     * then add them to the ANN index. Changes without a vector are skipped. Rows past the end of a
+     * shrunk file (see {@link Change#getStale}) are deleted in the same transaction once the change
+     * carrying them is written, and dropped from the ANN index.
+     *
+     * @return how many changes were stored
+     */
+    public int persistChanges(List<Change> changes, List<float[]> vectors) throws Exception {
+        List<VectorRecord> records = new ArrayList<>(changes.size());
+        List<float[]> unitVectors = new ArrayList<>(changes.size());
+        List<Chunk> truncated = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        for (int i = 0; i < changes.size(); i++) {
+            Chunk c = changes.get(i).getChunk();
+            float[] vec = vectors == null || i >= vectors.size() ? null : vectors.get(i);
             if (vec == null) {
-                log.warn("Embedding service returned null for applicationId={} path={}", applicationId, path);
-                return;
+                log.warn("Embedding service returned null for applicationId={} path={}", c.getApplicationId(), c.getPath());
+                continue;
             }
-            byte[] blob = floatArrayToGzipBytes(vec);
-            String vecJson = mapper.writeValueAsString(vec);
-            VectorRecord r = existing == null ? new VectorRecord() : existing;
-            r.setId(id);
-            r.setApplicationId(applicationId);
-            r.setPath(path);
-            r.setChunkIndex(chunkIndex);
-            r.setStartOffset(startOffset);
-            r.setEndOffset(endOffset);
-            r.setContent(content);
-            r.setVectorBlob(blob);
-            r.setVectorJson(vecJson);
-            r.setChecksum(checksum);
-            r.setMetadata(null);
-            r.setCreatedAt(System.currentTimeMillis());
-            repo.save(r);
-            // push into ANN index (best-effort)
             try {
-                annService().add(r.getId(), vec);
+                vec = Arrays.copyOf(vec, vec.length); // embedders may hand out shared arrays
+                VectorRecord r = toRecord(c, changes.get(i).getChecksum(), vec);
+                VectorRecord source = changes.get(i).getSource();
+                if (source != null && source.getNorm() != null) r.setNorm(source.getNorm()); // stored vectors are already unit length
+                records.add(r);
+                unitVectors.add(vec);
+                if (!changes.get(i).getStale().isEmpty()) {
+                    truncated.add(c);
+                    stale.addAll(changes.get(i).getStale());
+                }
+            } catch (Exception ex) {
+                log.debug("VectorService.upsert error for {}: {}", c.getId(), ex.getMessage(), ex);
+            }
+        }
+        if (records.isEmpty()) return 0;
+        Callable<Void> write = () -> {
+            inTransaction(() -> {
+                upsertAll(records);
+                for (Chunk c : truncated) repo.deleteFromChunk(c.getApplicationId(), c.getPath(), c.getFileChunkCount());
+            });
+            return null;
+        };
+        if (ingestThrottle == null) write.call();
+        else ingestThrottle.writing(write);
+        // push into ANN index (best-effort) once the rows are committed
+        AnnIndex ann = annService();
+        for (int i = 0; i < records.size(); i++) {
+            try {
+                ann.add(records.get(i).getId(), unitVectors.get(i));
             } catch (Exception ex) {
                 log.warn("failed to add to ANN: {}", ex.getMessage());
             }
+        }
+        if (!stale.isEmpty()) dropFromIndex(stale);
+        if (queryCache != null) queryCache.invalidate();
+        return records.size();
+    }
+
+    /**
+     * Insert or replace records in one transaction, {@code vector.write.batch.size} rows per JDBC
+     * round trip, using H2's {@code MERGE ... KEY(id)} so no row is read first. Does not touch the
+     * ANN index. Without a JdbcTemplate (plain repository setups) this falls back to
+     * {@code saveAll}, which Hibernate batches per {@code hibernate.jdbc.batch_size}.
+     */
+    public void upsertAll(List<VectorRecord> records) {
+        if (records == null || records.isEmpty()) return;
+        inTransaction(() -> {
+            if (jdbcTemplate == null) {
+                repo.saveAll(records);
+                return;
+            }
+            jdbcTemplate.batchUpdate(MERGE_SQL, records, Math.max(1, writeBatchSize), (ps, r) -> {
+                ps.setString(1, r.getId());
+                ps.setString(2, r.getApplicationId());
+                ps.setString(3, r.getPath());
+                ps.setString(4, r.getContent());
+                ps.setBytes(5, r.getVectorBlob());
+                ps.setString(6, r.getVectorJson());
+                ps.setObject(7, r.getNorm(), Types.REAL);
+                ps.setString(8, r.getChecksum());
+                ps.setObject(9, r.getChunkIndex(), Types.INTEGER);
+                ps.setObject(10, r.getStartOffset(), Types.INTEGER);
+                ps.setObject(11, r.getEndOffset(), Types.INTEGER);
+                ps.setString(12, r.getMetadata());
+                ps.setLong(13, r.getCreatedAt());
+            });
+        });
+    }
+
+    /**
+     * Delete every chunk of a file and drop them from the ANN index.
+     *
+     * @return how many chunks were removed
+     */
+    public int removeFile(String applicationId, String path) {
+        return removeFiles(applicationId, Collections.singletonList(path));
+    }
+
+    /**
+     * Delete every chunk of the given files with bulk deletes ({@code vector.write.batch.size}
+     * paths per statement) and drop the ids from the ANN index in one call.
+     *
+     * @return how many chunks were removed
+     */
+    public int removeFiles(String applicationId, Collection<String> paths) {
+        if (paths.isEmpty()) return 0;
+        try {
+            List<String> all = new ArrayList<>(paths);
+            List<String> ids = new ArrayList<>();
+            int step = Math.max(1, writeBatchSize);
+            for (int i = 0; i < all.size(); i += step) {
+                ids.addAll(repo.findIdsByApplicationIdAndPathIn(applicationId, all.subList(i, Math.min(all.size(), i + step))));
+            }
+            if (ids.isEmpty()) return 0;
+            inTransaction(() -> {
+                for (int i = 0; i < all.size(); i += step) {
+                    repo.deleteByApplicationIdAndPathIn(applicationId, all.subList(i, Math.min(all.size(), i + step)));
+                }
+            });
+            dropFromIndex(ids);
+            return ids.size();
         } catch (Exception e) {
-            // don't let indexing fail the whole scan
-            log.debug("VectorService.upsert error: {}", e.getMessage(), e);
+            log.warn("Failed to remove chunks of {} files: {}", paths.size(), e.getMessage());
+            return 0;
         }
     }
 
-    public List<QueryModels.CodeSnippet> queryTopK(String applicationId, String question, int k) {
+    /**
+     * Delete the chunks of a file from index {@code chunkCount} on, left behind when the file
+     * shrank.
+     *
+     * @return how many chunks were removed
+     */
+    public int truncateFile(String applicationId, String path, int chunkCount) {
+        try {
+            List<String> ids = repo.findIdsFromChunk(applicationId, path, chunkCount);
+            if (ids.isEmpty()) return 0;
+            inTransaction(() -> repo.deleteFromChunk(applicationId, path, chunkCount));
+            dropFromIndex(ids);
+            return ids.size();
+        } catch (Exception e) {
+            log.warn("Failed to drop stale chunks of {}: {}", path, e.getMessage());
+            return 0;
+        }
+    }
+
+    /** Paths that have chunks stored for the application. */
+    public List<String> indexedPaths(String applicationId) {
+        return repo.findPathsByApplicationId(applicationId);
+    }
+
+    /** Stored chunk ranges {@code [start, end)} (UTF-8 byte offsets) of a file, in chunk order. */
+    public List<long[]> chunkRanges(String applicationId, String path) {
+        List<long[]> out = new ArrayList<>();
+        for (Object[] row : repo.findOffsetsByApplicationIdAndPath(applicationId, path)) {
+            if (row[0] == null || row[1] == null) continue;
+            out.add(new long[] {((Number) row[0]).longValue(), ((Number) row[1]).longValue()});
+        }
+        return out;
+    }
+
+    /**
+     * Stored chunk ranges of a file ordered by similarity to a unit-length query vector, best
+     * first. Chunks without a usable vector of the query's dimension come last, in chunk order.
+     */
+    public List<long[]> rankedChunkRanges(String applicationId, String path, float[] qv) {
+        List<VectorRecord> rows = new ArrayList<>(repo.findByApplicationIdAndPath(applicationId, path));
+        rows.removeIf(r -> r.getStartOffset() == null || r.getEndOffset() == null);
+        Map<String, Double> score = new HashMap<>();
+        for (VectorRecord r : rows) {
+            float[] v = VectorServiceHelper.decode(r);
+            if (v == null || v.length != qv.length) {
+                score.put(r.getId(), Double.NEGATIVE_INFINITY);
+                continue;
+            }
+            if (r.getNorm() == null) VectorUtils.normalize(v);
+            score.put(r.getId(), (double) VectorUtils.dot(qv, v));
+        }
+        rows.sort(Comparator.comparingDouble((VectorRecord r) -> score.get(r.getId())).reversed()
+                .thenComparingInt(r -> r.getChunkIndex() == null ? Integer.MAX_VALUE : r.getChunkIndex()));
+        List<long[]> out = new ArrayList<>(rows.size());
+        for (VectorRecord r : rows) out.add(new long[] {r.getStartOffset(), r.getEndOffset()});
+        return out;
+    }
+
+    /** Unit-length embedding of a question, through {@link QueryCache} when present; null when embedding fails. */
+    public float[] questionVector(String question) {
+        if (question == null || question.isBlank()) return null;
         try {
-            float[] qv = embeddingService.embed(question);
-            List<VectorRecord> candidates = repo.findByApplicationId(applicationId);
-            PriorityQueue<Map.Entry<VectorRecord, Double>> pq = new PriorityQueue<>(Comparator.comparingDouble(Map.Entry::getValue));
-            for (VectorRecord r : candidates) {
-                float[] v = null;
+            float[] qv = queryCache == null ? embedQuestion(question)
+                    : queryCache.embedding(embeddingService.modelId(), question, () -> embedQuestion(question));
+            return qv == null ? null : VectorUtils.normalizedCopy(qv);
+        } catch (Exception ex) {
+            log.warn("Question embedding failed: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private void dropFromIndex(Collection<String> ids) {
+        try {
+            annService().removeAll(ids);
+        } catch (Exception ex) {
+            log.warn("failed to remove {} ids from ANN: {}", ids.size(), ex.getMessage());
+        }
+        if (queryCache != null) queryCache.invalidate();
+    }
+
+    /**
+     * Move a renamed file's chunks to the new path without re-embedding: rows are rewritten under
+     * their new ids (replacing anything stored for the new path) and the ANN index is updated
+     * from the stored vectors.
+     *
+     * @return how many chunks were moved
+     */
+    public int moveFile(String applicationId, String fromPath, String toPath) {
+        try {
+            List<VectorRecord> old = repo.findByApplicationIdAndPath(applicationId, fromPath);
+            if (old.isEmpty()) return 0;
+            removeFile(applicationId, toPath);
+            String oldPrefix = applicationId + ":" + fromPath;
+            String newPrefix = applicationId + ":" + toPath;
+            List<VectorRecord> moved = new ArrayList<>(old.size());
+            for (VectorRecord r : old) {
+                VectorRecord m = new VectorRecord();
+                // ids are app:path:chunk, so the chunk suffix carries over as is
+                m.setId(r.getId().startsWith(oldPrefix) ? newPrefix + r.getId().substring(oldPrefix.length())
+                        : newPrefix + ":" + r.getChunkIndex());
+                m.setApplicationId(applicationId);
+                m.setPath(toPath);
+                m.setContent(r.getContent());
+                m.setVectorBlob(r.getVectorBlob());
+                m.setVectorJson(r.getVectorJson());
+                m.setNorm(r.getNorm());
+                m.setChecksum(r.getChecksum());
+                m.setChunkIndex(r.getChunkIndex());
+                m.setStartOffset(r.getStartOffset());
+                m.setEndOffset(r.getEndOffset());
+                m.setMetadata(r.getMetadata());
+                m.setCreatedAt(r.getCreatedAt());
+                moved.add(m);
+            }
+            inTransaction(() -> {
+                repo.deleteByApplicationIdAndPath(applicationId, fromPath);
+                upsertAll(moved);
+            });
+            List<String> oldIds = new ArrayList<>(old.size());
+            for (VectorRecord r : old) oldIds.add(r.getId());
+            dropFromIndex(oldIds);
+            AnnIndex ann = annService();
+            for (VectorRecord m : moved) {
                 try {
-                    byte[] blob = r.getVectorBlob();
-                    if (blob != null && blob.length > 0) v = gzipBytesToFloatArray(blob);
-                    else v = mapper.readValue(r.getVectorJson(), float[].class);
-                } catch (Exception ex2) {
-                    log.warn("failed to decode vector for {}: {}", r.getId(), ex2.getMessage());
-                    continue;
+                    float[] v = VectorServiceHelper.decode(m);
+                    if (v != null) ann.add(m.getId(), v);
+                } catch (Exception ex) {
+                    log.warn("failed to add {} to ANN: {}", m.getId(), ex.getMessage());
                 }
-                double score = cosine(qv, v);
-                Map.Entry<VectorRecord, Double> entry = new AbstractMap.SimpleEntry<>(r, score);
-                pq.offer(entry);
-                if (pq.size() > k) pq.poll();
-            }
-            List<QueryModels.CodeSnippet> out = new ArrayList<>();
-            List<Map.Entry<VectorRecord, Double>> winners = new ArrayList<>();
-            while (!pq.isEmpty()) winners.add(pq.poll());
-            Collections.reverse(winners);
-            for (Map.Entry<VectorRecord, Double> e : winners) {
-                QueryModels.CodeSnippet s = new QueryModels.CodeSnippet();
-                s.setPath(e.getKey().getPath());
-                s.setContent(e.getKey().getContent());
-                out.add(s);
             }
+            if (queryCache != null) queryCache.invalidate();
+            return moved.size();
+        } catch (Exception e) {
+            log.warn("Failed to move chunks of {} to {}: {}", fromPath, toPath, e.getMessage());
+            return 0;
+        }
+    }
+
+    private void inTransaction(Runnable work) {
+        if (transactionManager == null) {
+            work.run();
+            return;
+        }
+        new TransactionTemplate(transactionManager).execute(status -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /** Whether new vectors are stored as float16 ({@code vector.store.encoding=f16}). */
+    public boolean isHalfPrecision() {
+        return "f16".equalsIgnoreCase(storeEncoding);
+    }
+
+    /** Whether new rows also carry a JSON copy of the vector ({@code vector.store.json}). */
+    public boolean isStoreJson() {
+        return storeJson;
+    }
+
+    // build the row for a chunk; normalizes vec in place
+    private VectorRecord toRecord(Chunk c, String checksum, float[] vec) throws Exception {
+        float norm = VectorUtils.normalize(vec);
+        VectorRecord r = new VectorRecord();
+        r.setId(c.getId());
+        r.setApplicationId(c.getApplicationId());
+        r.setPath(c.getPath());
+        r.setChunkIndex(c.getChunkIndex());
+        r.setStartOffset(c.getStartOffset());
+        r.setEndOffset(c.getEndOffset());
+        r.setContent(c.getContent());
+        r.setVectorBlob(VectorCodec.encode(vec, isHalfPrecision()));
+        r.setVectorJson(storeJson ? mapper.writeValueAsString(vec) : null);
+        r.setNorm(norm);
+        r.setChecksum(checksum);
+        r.setMetadata(null);
+        r.setCreatedAt(System.currentTimeMillis());
+        return r;
+    }
+
+    /**
+     * Retrieve the k most similar chunks for the question. Candidates come from the ANN index
+     * (over-fetched and filtered to the application), and only the winning records are loaded.
+     * Falls back to {@link #queryTopKBruteForce} when the index is empty or cannot serve the query.
+     * Question embeddings and results are served from {@link QueryCache} when it is available.
+     */
+    public List<QueryModels.CodeSnippet> queryTopK(String applicationId, String question, int k) {
+        try {
+            float[] qv = queryCache == null ? embedQuestion(question)
+                    : queryCache.embedding(embeddingService.modelId(), question, () -> embedQuestion(question));
+            if (qv == null || k <= 0) return Collections.emptyList();
+            qv = VectorUtils.normalizedCopy(qv);
+            if (queryCache == null) return retrieve(applicationId, qv, k);
+            List<QueryModels.CodeSnippet> cached = queryCache.results(applicationId, qv, k);
+            if (cached != null) return cached;
+            long generation = queryCache.generation();
+            List<QueryModels.CodeSnippet> out = retrieve(applicationId, qv, k);
+            queryCache.putResults(applicationId, qv, k, generation, out);
             return out;
         } catch (Exception ex) {
             log.error("VectorService.queryTopK error: {}", ex.getMessage());
@@ -121,37 +569,93 @@ public class VectorService {
         }
     }
 
-    private double cosine(float[] a, float[] b) {
-        if (a == null || b == null) return -1.0;
-        int n = Math.min(a.length, b.length);
-        double dot = 0.0, na = 0.0, nb = 0.0;
-        for (int i = 0; i < n; i++) {
-            dot += a[i] * b[i];
-            na += a[i] * a[i];
-            nb += b[i] * b[i];
+    private float[] embedQuestion(String question) {
+        return embeddingCache != null ? embeddingCache.embedTransient(question) : embeddingService.embed(question);
+    }
+
+    private List<QueryModels.CodeSnippet> retrieve(String applicationId, float[] qv, int k) {
+        AnnIndex ann = annService();
+        List<String> ids = null;
+        if (ann.size() > 0) {
+            try {
+                ids = queryAnn(ann, applicationId, qv, k);
+            } catch (Exception ex) {
+                log.warn("ANN query failed, falling back to brute force: {}", ex.getMessage());
+            }
         }
-        if (na == 0 || nb == 0) return -1.0;
-        return dot / (Math.sqrt(na) * Math.sqrt(nb));
+        if (ids == null) return queryTopKBruteForce(applicationId, qv, k);
+        return loadSnippets(ids);
     }
 
-    private byte[] floatArrayToGzipBytes(float[] arr) throws Exception {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (GZIPOutputStream gz = new GZIPOutputStream(baos);
-             DataOutputStream dos = new DataOutputStream(gz)) {
-            dos.writeInt(arr.length);
-            for (float f : arr) dos.writeFloat(f);
+    // query the index with over-fetch, keeping only ids that belong to the application; widen the
+    // fetch while other applications crowd out the requested one
+    private List<String> queryAnn(AnnIndex ann, String applicationId, float[] qv, int k) throws Exception {
+        String prefix = applicationId + ":";
+        long size = ann.size();
+        int fetch = k * Math.max(1, queryOverfetch);
+        while (true) {
+            List<String> candidates = ann.query(applicationId, qv, fetch);
+            List<String> hits = new ArrayList<>(k);
+            for (String id : candidates) {
+                if (id != null && id.startsWith(prefix)) {
+                    hits.add(id);
+                    if (hits.size() == k) break;
+                }
+            }
+            if (hits.size() == k || candidates.size() < fetch || fetch >= size) return hits;
+            fetch = (int) Math.min(size, (long) fetch * 4);
         }
-        return baos.toByteArray();
     }
 
-    private float[] gzipBytesToFloatArray(byte[] blob) throws Exception {
-        try (GZIPInputStream gzis = new GZIPInputStream(new ByteArrayInputStream(blob));
-             DataInputStream dis = new DataInputStream(gzis)) {
-            int len = dis.readInt();
-            float[] arr = new float[len];
-            for (int i = 0; i < len; i++) arr[i] = dis.readFloat();
-            return arr;
+    // load only the winning records and keep the ANN ranking order
+    private List<QueryModels.CodeSnippet> loadSnippets(List<String> ids) {
+        if (ids.isEmpty()) return Collections.emptyList();
+        Map<String, VectorRecord> byId = new HashMap<>();
+        for (VectorRecord r : repo.findAllById(ids)) byId.put(r.getId(), r);
+        List<QueryModels.CodeSnippet> out = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            VectorRecord r = byId.get(id);
+            if (r == null) continue; // index ahead of the table (e.g. deleted row)
+            QueryModels.CodeSnippet s = new QueryModels.CodeSnippet();
+            s.setPath(r.getPath());
+            s.setContent(r.getContent());
+            out.add(s);
         }
+        return out;
+    }
+
+    /**
+     * Exact retrieval by scanning every stored vector of the application. Used when the ANN index
+     * is empty or not ready; cost grows with the number of chunks, so avoid it on the hot path.
+     * The query vector must already be unit length.
+     */
+    public List<QueryModels.CodeSnippet> queryTopKBruteForce(String applicationId, float[] qv, int k) {
+        List<VectorRecord> candidates = repo.findByApplicationId(applicationId);
+        PriorityQueue<Map.Entry<VectorRecord, Double>> pq = new PriorityQueue<>(Comparator.comparingDouble(Map.Entry::getValue));
+        for (VectorRecord r : candidates) {
+            float[] v = VectorServiceHelper.decode(r);
+            if (v == null) {
+                log.warn("failed to decode vector for {}", r.getId());
+                continue;
+            }
+            // rows written before ingest-time normalization still hold raw vectors
+            if (r.getNorm() == null) VectorUtils.normalize(v);
+            double score = VectorUtils.dot(qv, v);
+            Map.Entry<VectorRecord, Double> entry = new AbstractMap.SimpleEntry<>(r, score);
+            pq.offer(entry);
+            if (pq.size() > k) pq.poll();
+        }
+        List<QueryModels.CodeSnippet> out = new ArrayList<>();
+        List<Map.Entry<VectorRecord, Double>> winners = new ArrayList<>();
+        while (!pq.isEmpty()) winners.add(pq.poll());
+        Collections.reverse(winners);
+        for (Map.Entry<VectorRecord, Double> e : winners) {
+            QueryModels.CodeSnippet s = new QueryModels.CodeSnippet();
+            s.setPath(e.getKey().getPath());
+            s.setContent(e.getKey().getContent());
+            out.add(s);
+        }
+        return out;
     }
 
     private String checksumFor(String s) throws Exception {
@@ -162,4 +666,75 @@ public class VectorService {
         for (byte bb : d) sb.append(String.format("%02x", bb));
         return sb.toString();
     }
+
+    /**
+     * A chunk whose content changed: its new checksum, the stored record it replaces, if any, and a
+     * stored record of the same file with the same content, if any, whose vector it reuses. The
+     * last change of a shrunk file also lists the ids of the rows past the file's new end.
+     */
+    public static final class Change {
+        private final Chunk chunk;
+        private final String checksum;
+        private final VectorRecord existing;
+        private final VectorRecord source;
+        private final List<String> stale;
+
+        public Change(Chunk chunk, String checksum, VectorRecord existing) {
+            this(chunk, checksum, existing, null);
+        }
+
+        public Change(Chunk chunk, String checksum, VectorRecord existing, VectorRecord source) {
+            this(chunk, checksum, existing, source, List.of());
+        }
+
+        public Change(Chunk chunk, String checksum, VectorRecord existing, VectorRecord source, List<String> stale) {
+            this.chunk = chunk;
+            this.checksum = checksum;
+            this.existing = existing;
+            this.source = source;
+            this.stale = List.copyOf(stale);
+        }
+
+        public Chunk getChunk() { return chunk; }
+        public String getChecksum() { return checksum; }
+        public VectorRecord getExisting() { return existing; }
+        public VectorRecord getSource() { return source; }
+        /** Ids of rows past the end of the file, deleted once this change is stored. */
+        public List<String> getStale() { return stale; }
+    }
+
+    /** One chunk of a file to index; its vector id is {@code applicationId:path:chunkIndex}. */
+    public static final class Chunk {
+        private final String applicationId;
+        private final String path;
+        private final String content;
+        private final int chunkIndex;
+        private final int startOffset;
+        private final int endOffset;
+        private final int fileChunkCount;
+
+        public Chunk(String applicationId, String path, String content, int chunkIndex, int startOffset, int endOffset) {
+            this(applicationId, path, content, chunkIndex, startOffset, endOffset, -1);
+        }
+
+        /** @param fileChunkCount chunks the file now has; rows past it are stale (-1: unknown, keep them) */
+        public Chunk(String applicationId, String path, String content, int chunkIndex, int startOffset, int endOffset, int fileChunkCount) {
+            this.applicationId = applicationId;
+            this.path = path;
+            this.content = content;
+            this.chunkIndex = chunkIndex;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.fileChunkCount = fileChunkCount;
+        }
+
+        public String getId() { return applicationId + ":" + path + ":" + chunkIndex; }
+        public String getApplicationId() { return applicationId; }
+        public String getPath() { return path; }
+        public String getContent() { return content; }
+        public int getChunkIndex() { return chunkIndex; }
+        public int getStartOffset() { return startOffset; }
+        public int getEndOffset() { return endOffset; }
+        public int getFileChunkCount() { return fileChunkCount; }
+    }
 }
@@ -10,6 +10,7 @@ public final class VectorServiceHelper {
 
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    /** Decode a blob in the legacy GZIP'd format; new blobs go through {@link VectorCodec}. */
     public static float[] gzipBytesToFloatArrayStatic(byte[] blob) throws Exception {
         try (GZIPInputStream gzis = new GZIPInputStream(new ByteArrayInputStream(blob));
              DataInputStream dis = new DataInputStream(gzis)) {
@@ -24,4 +25,36 @@ public final class VectorServiceHelper {
         if (json == null) return null;
         return mapper.readValue(json, float[].class);
     }
+
+    /** Stored vector of a record (blob in any format preferred, JSON fallback), or null when absent or malformed. */
+    public static float[] decode(VectorRecord r) {
+        try {
+            byte[] blob = r.getVectorBlob();
+            if (blob != null && blob.length > 0) return VectorCodec.decode(blob);
+            String json = r.getVectorJson();
+            return json == null || json.isBlank() ? null : jsonToFloatArray(json);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Page through every stored vector, handing each decoded unit-length vector to the consumer.
+     * Malformed rows are skipped. Used by the index implementations that train from the table.
+     */
+    public static void forEachVector(VectorRepository repo, int pageSize, java.util.function.BiConsumer<String, float[]> consumer) {
+        int page = 0;
+        while (true) {
+            org.springframework.data.domain.Page<VectorRecord> p = repo.findAll(org.springframework.data.domain.PageRequest.of(page, pageSize));
+            if (!p.hasContent()) break;
+            for (VectorRecord r : p.getContent()) {
+                float[] v = decode(r);
+                if (v == null) continue;
+                VectorUtils.normalize(v); // no-op for rows normalized at ingest
+                consumer.accept(r.getId(), v);
+            }
+            if (!p.hasNext()) break;
+            page++;
+        }
+    }
 }
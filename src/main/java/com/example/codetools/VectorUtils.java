@@ -22,4 +22,32 @@ public final class VectorUtils {
     public static float[] jsonToFloatArray(String json) throws Exception {
         return new ObjectMapper().readValue(json, float[].class);
     }
+
+    /**
+     * Scale v to unit length in place and return its original L2 norm. A zero vector is left as is.
+     * Stored and query vectors are normalized once so that every index can rank by plain dot product.
+     */
+    public static float normalize(float[] v) {
+        double s = 0;
+        for (float f : v) s += f * f;
+        float norm = (float) Math.sqrt(s);
+        if (norm == 0f || norm == 1f) return norm;
+        float inv = 1f / norm;
+        for (int i = 0; i < v.length; i++) v[i] *= inv;
+        return norm;
+    }
+
+    public static float[] normalizedCopy(float[] v) {
+        float[] copy = java.util.Arrays.copyOf(v, v.length);
+        normalize(copy);
+        return copy;
+    }
+
+    /** Dot product over the common prefix of a and b; equals cosine similarity for unit vectors. */
+    public static float dot(float[] a, float[] b) {
+        int n = Math.min(a.length, b.length);
+        float s = 0f;
+        for (int i = 0; i < n; i++) s += a[i] * b[i];
+        return s;
+    }
 }
@@ -0,0 +1,91 @@
+package com.example.codetools;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded LRU map whose capacity is a total weight (roughly bytes) rather than an entry count, so
+ * a few large values cannot crowd the heap the way a fixed entry limit would allow. Entries heavier
+ * than the whole budget are not stored. Counts hits, misses and evictions.
+ *
+ * All operations synchronize on the cache; values are expected to be cheap to look up.
+ */
+public final class WeightedLruCache<K, V> {
+
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<K, Long> weights = new HashMap<>();
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /** Cached value or null; counts a hit or a miss. */
+    public synchronized V get(K key) {
+        V v = map.get(key);
+        if (v == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return v;
+    }
+
+    public synchronized void put(K key, V value) {
+        remove(key);
+        long w = Math.max(1, weigher.applyAsLong(value));
+        if (w > maxWeight) return;
+        map.put(key, value);
+        weights.put(key, w);
+        weight += w;
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            K eldest = it.next().getKey();
+            it.remove();
+            weight -= weights.remove(eldest);
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void remove(K key) {
+        if (map.remove(key) != null) weight -= weights.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weights.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() { return map.size(); }
+
+    public synchronized long weight() { return weight; }
+
+    public long maxWeight() { return maxWeight; }
+
+    public long hits() { return hits.get(); }
+
+    public long misses() { return misses.get(); }
+
+    public long evictions() { return evictions.get(); }
+
+    /** Counters and occupancy for the admin API. */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("hits", hits.get());
+        out.put("misses", misses.get());
+        out.put("evictions", evictions.get());
+        out.put("entries", map.size());
+        out.put("weight", weight);
+        out.put("maxWeight", maxWeight);
+        return out;
+    }
+}
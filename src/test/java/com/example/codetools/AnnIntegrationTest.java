@@ -35,4 +35,16 @@ public class AnnIntegrationTest {
         assertThat(res).isNotEmpty();
         assertThat(res.get(0)).contains("integration-app:p1");
     }
+
+    @Test
+    public void queryTopKServesFromAnnAndFiltersByApplication() throws Exception {
+        // identical content in two applications scores the same; only the requested app may come back
+        vectorService.upsert("ann-app-a", "a-path", "shared snippet");
+        vectorService.upsert("ann-app-b", "b-path", "shared snippet");
+
+        List<QueryModels.CodeSnippet> res = vectorService.queryTopK("ann-app-a", "shared snippet", 1);
+        assertThat(res).hasSize(1);
+        assertThat(res.get(0).getPath()).isEqualTo("a-path");
+        assertThat(res.get(0).getContent()).isEqualTo("shared snippet");
+    }
 }
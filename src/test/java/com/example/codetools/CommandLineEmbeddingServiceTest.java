@@ -0,0 +1,83 @@
+package com.example.codetools;
+
+import com.example.codetools.testutils.CapturingProcess;
+import com.example.codetools.testutils.TestProcessRunner;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.Environment;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CommandLineEmbeddingServiceTest {
+
+    private static Environment env() {
+        Environment env = mock(Environment.class);
+        when(env.getProperty("embedding.command", "ollama")).thenReturn("ollama");
+        when(env.getProperty("embedding.model", "codellama:13b-instruct")).thenReturn("embed-model");
+        return env;
+    }
+
+    private static Environment batchEnv() {
+        Environment env = env();
+        when(env.getProperty("embedding.cli.batch.enabled")).thenReturn("true");
+        return env;
+    }
+
+    @Test
+    public void embedsOneTextPerProcessByDefault() throws Exception {
+        // ollama embed reads one text from stdin; a JSON array would be embedded as a literal string
+        List<CapturingProcess> started = new ArrayList<>();
+        ProcessRunner runner = cmd -> {
+            CapturingProcess p = new CapturingProcess("[0.5,0.5]\n".getBytes(), new byte[0], 0);
+            started.add(p);
+            return p;
+        };
+        CommandLineEmbeddingService svc = new CommandLineEmbeddingService(env(), runner);
+
+        List<float[]> out = svc.embedBatch(List.of("a", "b"));
+
+        assertThat(out).hasSize(2);
+        assertThat(out.get(1)).containsExactly(0.5f, 0.5f);
+        assertThat(started).extracting(p -> new String(p.getCapturedStdin(), StandardCharsets.UTF_8)).containsExactly("a", "b");
+    }
+
+    @Test
+    public void sendsBatchAsJsonArrayInOneProcess() throws Exception {
+        CapturingProcess cp = new CapturingProcess("[[1.0,2.0],[3.0,4.0]]\n".getBytes(), new byte[0], 0);
+        CommandLineEmbeddingService svc = new CommandLineEmbeddingService(batchEnv(), new TestProcessRunner(cp));
+
+        List<float[]> out = svc.embedBatch(List.of("first chunk", "second \"chunk\""));
+
+        assertThat(new String(cp.getCapturedStdin(), "UTF-8")).isEqualTo("[\"first chunk\",\"second \\\"chunk\\\"\"]");
+        assertThat(out).hasSize(2);
+        assertThat(out.get(0)).containsExactly(1f, 2f);
+        assertThat(out.get(1)).containsExactly(3f, 4f);
+    }
+
+    @Test
+    public void fallsBackToSingleCallsWhenCommandDoesNotBatch() throws Exception {
+        // a command that only understands single texts answers every call with one vector
+        AtomicInteger launches = new AtomicInteger();
+        ProcessRunner runner = cmd -> {
+            launches.incrementAndGet();
+            return new CapturingProcess("[0.5,0.5]\n".getBytes(), new byte[0], 0);
+        };
+        CommandLineEmbeddingService svc = new CommandLineEmbeddingService(batchEnv(), runner);
+
+        List<float[]> out = svc.embedBatch(List.of("a", "b"));
+        assertThat(out).hasSize(2);
+        assertThat(out.get(0)).containsExactly(0.5f, 0.5f);
+        assertThat(out.get(1)).containsExactly(0.5f, 0.5f);
+        assertThat(launches.get()).isEqualTo(3);
+
+        // once detected, later batches skip the batch attempt
+        svc.embedBatch(List.of("c", "d"));
+        assertThat(launches.get()).isEqualTo(5);
+    }
+}
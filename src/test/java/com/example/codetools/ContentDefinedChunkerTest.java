@@ -0,0 +1,65 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContentDefinedChunkerTest {
+
+    private final ContentDefinedChunker chunker = new ContentDefinedChunker(200, 800, 1600);
+
+    @Test
+    public void rangesCoverTheTextWithinSizeLimits() {
+        String text = source(1500);
+        List<int[]> ranges = chunker.split(text);
+
+        assertThat(ranges.get(0)[0]).isZero();
+        assertThat(ranges.get(ranges.size() - 1)[1]).isEqualTo(text.length());
+        for (int i = 0; i < ranges.size(); i++) {
+            int len = ranges.get(i)[1] - ranges.get(i)[0];
+            assertThat(len).isLessThanOrEqualTo(1600);
+            if (i > 0) assertThat(ranges.get(i)[0]).isEqualTo(ranges.get(i - 1)[1]);
+            if (i < ranges.size() - 1) assertThat(len).isGreaterThanOrEqualTo(200);
+        }
+    }
+
+    @Test
+    public void insertingALineOnlyChangesTheChunksAroundIt() {
+        String before = source(1500);
+        int at = before.indexOf('\n', before.length() / 3) + 1;
+        String after = "import a.b.C;\n" + before.substring(0, at) + "    // new line\n" + before.substring(at);
+
+        Set<String> old = chunks(before);
+        Set<String> now = chunks(after);
+        long kept = now.stream().filter(old::contains).count();
+        // only the first chunk and the one holding the new line differ
+        assertThat(kept).isGreaterThanOrEqualTo(now.size() - 3L);
+    }
+
+    @Test
+    public void shortTextIsOneChunkAndEmptyTextNone() {
+        assertThat(chunker.split("class A {}\n")).hasSize(1);
+        assertThat(chunker.split("")).isEmpty();
+    }
+
+    private Set<String> chunks(String text) {
+        Set<String> out = new HashSet<>();
+        for (int[] r : chunker.split(text)) out.add(text.substring(r[0], r[1]));
+        return out;
+    }
+
+    private static String source(int lines) {
+        Random rnd = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("    int field").append(i).append(" = ").append(rnd.nextInt(100000)).append("; // ")
+                    .append("x".repeat(rnd.nextInt(40))).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EmbeddingCacheTest {
+
+    // in-memory repository covering the two calls the cache makes
+    private static EmbeddingCacheRepository memoryRepo(Map<String, EmbeddingCacheRecord> rows) {
+        return (EmbeddingCacheRepository) Proxy.newProxyInstance(EmbeddingCacheRepository.class.getClassLoader(),
+                new Class<?>[] {EmbeddingCacheRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findAllById": {
+                            List<EmbeddingCacheRecord> found = new ArrayList<>();
+                            for (Object id : (Iterable<?>) args[0]) if (rows.containsKey(id)) found.add(rows.get(id));
+                            return found;
+                        }
+                        case "saveAll": {
+                            for (Object r : (Iterable<?>) args[0]) rows.put(((EmbeddingCacheRecord) r).getId(), (EmbeddingCacheRecord) r);
+                            return args[0];
+                        }
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Test
+    public void identicalContentIsEmbeddedOnceAndPersisted() {
+        AtomicInteger calls = new AtomicInteger();
+        EmbeddingService embedder = text -> {
+            calls.incrementAndGet();
+            return new float[] {text.length(), 1f};
+        };
+        Map<String, EmbeddingCacheRecord> rows = new ConcurrentHashMap<>();
+        EmbeddingCache cache = new EmbeddingCache(embedder, memoryRepo(rows));
+
+        float[] first = cache.embed("/* license */", "abc");
+        float[] second = cache.embed("/* license */", "abc");
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(second).containsExactly(first);
+        assertThat(rows).hasSize(1);
+
+        // a fresh cache over the same table (e.g. after restart) still hits
+        EmbeddingCache restarted = new EmbeddingCache(embedder, memoryRepo(rows));
+        assertThat(restarted.embed("/* license */", "abc")).containsExactly(first);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrentRequestsShareOneEmbedCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        EmbeddingService slow = text -> {
+            calls.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new float[] {1f, 2f};
+        };
+        EmbeddingCache cache = new EmbeddingCache(slow, null);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<float[]> a = pool.submit(() -> cache.embedTransient("same question"));
+            while (cache.inFlight() == 0) Thread.sleep(1);
+            Future<float[]> b = pool.submit(() -> cache.embedTransient("same question"));
+            Future<float[]> c = pool.submit(() -> cache.embed("same question", "sum"));
+            Thread.sleep(50);
+            release.countDown();
+            assertThat(a.get(5, TimeUnit.SECONDS)).containsExactly(1f, 2f);
+            assertThat(b.get(5, TimeUnit.SECONDS)).containsExactly(1f, 2f);
+            c.get(5, TimeUnit.SECONDS);
+            // the two question calls coalesce; the content call is keyed by checksum
+            assertThat(calls.get()).isEqualTo(2);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void followersAreReleasedWhenTheLeaderFailsWithAnError() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        EmbeddingService failing = text -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new OutOfMemoryError("batch too large");
+        };
+        EmbeddingCache cache = new EmbeddingCache(failing, null);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<float[]>> leader = pool.submit(() -> cache.embedBatch(List.of("text"), List.of("sum")));
+            while (cache.inFlight() == 0) Thread.sleep(1);
+            Future<List<float[]>> follower = pool.submit(() -> cache.embedBatch(List.of("text"), List.of("sum")));
+            Thread.sleep(50);
+            release.countDown();
+            assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(OutOfMemoryError.class);
+            assertThat(follower.get(5, TimeUnit.SECONDS)).containsExactly((float[]) null);
+            assertThat(cache.inFlight()).isZero();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void batchEmbedsOnlyDistinctUncachedContent() {
+        List<List<String>> batches = new ArrayList<>();
+        EmbeddingService embedder = new EmbeddingService() {
+            @Override
+            public float[] embed(String text) {
+                return new float[] {text.length()};
+            }
+
+            @Override
+            public List<float[]> embedBatch(List<String> texts) {
+                batches.add(texts);
+                return EmbeddingService.super.embedBatch(texts);
+            }
+        };
+        Map<String, EmbeddingCacheRecord> rows = new ConcurrentHashMap<>();
+        EmbeddingCache cache = new EmbeddingCache(embedder, memoryRepo(rows));
+        cache.embed("cached", "c1");
+        batches.clear();
+
+        List<float[]> out = cache.embedBatch(List.of("cached", "ab", "ab", "xyz"), List.of("c1", "c2", "c2", "c3"));
+
+        assertThat(batches).containsExactly(List.of("ab", "xyz"));
+        assertThat(out).hasSize(4);
+        assertThat(out.get(0)).containsExactly(6f);
+        assertThat(out.get(2)).containsExactly(2f);
+        assertThat(out.get(3)).containsExactly(3f);
+    }
+}
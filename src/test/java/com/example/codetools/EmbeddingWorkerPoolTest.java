@@ -0,0 +1,110 @@
+package com.example.codetools;
+
+import com.example.codetools.testutils.CapturingProcess;
+import com.example.codetools.testutils.TestProcessRunner;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmbeddingWorkerPoolTest {
+
+    private static CapturingProcess worker(String replies) {
+        return new CapturingProcess(replies.getBytes(StandardCharsets.UTF_8), new byte[0], 0).setAlive(true);
+    }
+
+    @Test
+    public void reusesOneProcessForManyRequests() throws Exception {
+        CapturingProcess w = worker("[1.0,2.0]\n0.5 -0.25\n\n");
+        TestProcessRunner runner = new TestProcessRunner(w);
+        try (EmbeddingWorkerPool pool = new EmbeddingWorkerPool(runner, List.of("embedder", "--serve"), 1, 0, 1000, 5000)) {
+            assertThat(pool.embed("first")).containsExactly(1f, 2f);
+            List<float[]> batch = pool.embedAll(List.of("second \"quoted\"\nline", "third"));
+            assertThat(batch.get(0)).containsExactly(0.5f, -0.25f);
+            // an empty reply means the worker could not embed that text
+            assertThat(batch.get(1)).isNull();
+        }
+        assertThat(runner.starts()).isEqualTo(1);
+        assertThat(runner.commands().get(0)).containsExactly("embedder", "--serve");
+        assertThat(new String(w.getCapturedStdin(), StandardCharsets.UTF_8))
+                .isEqualTo("\"first\"\n\"second \\\"quoted\\\"\\nline\"\n\"third\"\n");
+    }
+
+    @Test
+    public void restartsCrashedWorkerAndRetries() throws Exception {
+        CapturingProcess crashing = worker("[1.0]\n"); // end of stream after one reply
+        CapturingProcess replacement = worker("[2.0]\n[3.0]\n");
+        TestProcessRunner runner = new TestProcessRunner(crashing, replacement);
+        try (EmbeddingWorkerPool pool = new EmbeddingWorkerPool(runner, List.of("embedder"), 1, 0, 1000, 5000)) {
+            assertThat(pool.embed("a")).containsExactly(1f);
+            assertThat(pool.embed("b")).containsExactly(2f);
+            assertThat(crashing.isDestroyed()).isTrue();
+            assertThat(pool.restarts()).isEqualTo(1);
+            assertThat(pool.liveWorkers()).isEqualTo(1);
+            assertThat(runner.starts()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void healthCheckReplacesUnresponsiveWorkers() throws Exception {
+        CapturingProcess healthy = worker("[1.0]\n[0.1]\n");
+        CapturingProcess fresh = worker("[4.0]\n");
+        TestProcessRunner runner = new TestProcessRunner(healthy, fresh);
+        try (EmbeddingWorkerPool pool = new EmbeddingWorkerPool(runner, List.of("embedder"), 1, 0, 1000, 5000)) {
+            pool.embed("warm up");
+            pool.healthCheck(); // answers the probe with [0.1]
+            assertThat(pool.restarts()).isZero();
+
+            pool.healthCheck(); // no reply left: replaced
+            assertThat(healthy.isDestroyed()).isTrue();
+            assertThat(pool.restarts()).isEqualTo(1);
+            assertThat(pool.embed("after")).containsExactly(4f);
+        }
+    }
+
+    @Test
+    public void workerThatStopsAnsweringIsKilledAndReplaced() throws Exception {
+        PipedOutputStream never = new PipedOutputStream();
+        PipedInputStream hungStdout = new PipedInputStream(never);
+        CapturingProcess hung = new CapturingProcess(new byte[0], "loading model\n".getBytes(StandardCharsets.UTF_8), 0) {
+            @Override
+            public InputStream getInputStream() {
+                return hungStdout;
+            }
+
+            @Override
+            public void destroy() {
+                super.destroy();
+                try {
+                    never.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }.setAlive(true);
+        CapturingProcess replacement = worker("[2.0]\n");
+        TestProcessRunner runner = new TestProcessRunner(hung, replacement);
+        try (EmbeddingWorkerPool pool = new EmbeddingWorkerPool(runner, List.of("embedder"), 1, 0, 1000, 200)) {
+            assertThat(pool.embed("a")).containsExactly(2f);
+            assertThat(hung.isDestroyed()).isTrue();
+            assertThat(pool.restarts()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void parsesJsonAndSeparatedFloats() throws Exception {
+        FloatLineParser parser = new FloatLineParser();
+        ByteArrayInputStream in = new ByteArrayInputStream(
+                "[0.125, -3e-2,1E2]\n1 2,3\n{\"error\":\"model not found\"}\n-0.000001234567891\n".getBytes(StandardCharsets.US_ASCII));
+        assertThat(parser.parseLine(in)).containsExactly(0.125f, -0.03f, 100f);
+        assertThat(parser.parseLine(in)).containsExactly(1f, 2f, 3f);
+        assertThat(parser.parseLine(in)).isNull();
+        assertThat(parser.parseLine(in)).containsExactly(-0.000001234567891f);
+    }
+}
@@ -2,9 +2,11 @@ package com.example.codetools;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.core.env.Environment;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -38,7 +40,136 @@ public class FileScannerTest {
         assertThat(got.get(0).getPath()).isEqualTo("webpack.config.js");
         assertThat(got.get(0).getContent()).contains("console.log('hello')");
 
-        // ensure upsert was called at least once (chunking)
-        Mockito.verify(vs, Mockito.atLeastOnce()).upsert(Mockito.eq("app1"), Mockito.eq("webpack.config.js"), Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyInt());
+        // ensure the file's chunks were upserted together in one batch
+        Mockito.verify(vs, Mockito.times(1)).upsertBatch(Mockito.argThat(chunks -> !chunks.isEmpty()
+                && chunks.stream().allMatch(c -> "app1".equals(c.getApplicationId()) && "webpack.config.js".equals(c.getPath()))));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRescanSkipsFilesUnchangedPerManifest() throws Exception {
+        Path a = tempDir.resolve("a.js");
+        Path b = tempDir.resolve("b.js");
+        Files.writeString(a, "const a = 1;");
+        Files.writeString(b, "const b = 2;");
+
+        Environment env = Mockito.mock(Environment.class);
+        Mockito.when(env.getProperty("scanner.root.path")).thenReturn(tempDir.toString());
+        Mockito.when(env.getProperty("application.id", "default-app")).thenReturn("app1");
+        VectorService vs = Mockito.mock(VectorService.class);
+        Mockito.when(vs.upsertBatch(Mockito.anyList())).thenReturn(true);
+        ScanManifestRepository repo = Mockito.mock(ScanManifestRepository.class);
+        Mockito.when(repo.findByApplicationId("app1")).thenReturn(List.of());
+
+        FileScanner scanner = new FileScanner(env, vs);
+        scanner.setScanManifest(new ScanManifest(repo));
+        scanner.scanRoot();
+        Mockito.verify(vs, Mockito.times(2)).upsertBatch(Mockito.anyList());
+        Mockito.verify(repo).saveAll(Mockito.argThat(it -> it.iterator().hasNext()));
+
+        // nothing changed: no file is chunked or embedded again
+        scanner.scanRoot();
+        Mockito.verify(vs, Mockito.times(2)).upsertBatch(Mockito.anyList());
+
+        // new mtime, same bytes: the hash matches, still nothing to embed
+        Files.setLastModifiedTime(a, java.nio.file.attribute.FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 5000));
+        scanner.scanRoot();
+        Mockito.verify(vs, Mockito.times(2)).upsertBatch(Mockito.anyList());
+
+        // changed content is indexed again
+        Files.writeString(b, "const b = 3; // changed");
+        scanner.scanRoot();
+        Mockito.verify(vs, Mockito.times(3)).upsertBatch(Mockito.anyList());
+
+        // a failed upsert leaves the file to be retried on the next scan
+        Mockito.when(vs.upsertBatch(Mockito.anyList())).thenReturn(false);
+        Files.writeString(a, "const a = 42; // changed too");
+        scanner.scanRoot();
+        scanner.scanRoot();
+        Mockito.verify(vs, Mockito.times(5)).upsertBatch(Mockito.anyList());
+    }
+
+    @Test
+    public void snippetsHoldTheChunksThatBestMatchTheQuestion() throws Exception {
+        String a = "a".repeat(19) + "\n";
+        String b = "b".repeat(19) + "\n";
+        String c = "c".repeat(19) + "\n";
+        Files.writeString(tempDir.resolve("s.js"), a + b + c);
+
+        Environment env = Mockito.mock(Environment.class);
+        Mockito.when(env.getProperty("scanner.root.path")).thenReturn(tempDir.toString());
+        Mockito.when(env.getProperty("application.id", "default-app")).thenReturn("app1");
+        Mockito.when(env.getProperty("scanner.snippet.max.bytes")).thenReturn("40");
+        VectorService vs = Mockito.mock(VectorService.class);
+        float[] qv = {1f};
+        Mockito.when(vs.questionVector("where is c?")).thenReturn(qv);
+        Mockito.when(vs.rankedChunkRanges("app1", "s.js", qv))
+                .thenReturn(List.of(new long[] {40, 60}, new long[] {0, 20}, new long[] {20, 40}));
+        Mockito.when(vs.chunkRanges("app1", "s.js"))
+                .thenReturn(List.of(new long[] {0, 20}, new long[] {20, 40}, new long[] {40, 60}));
+
+        FileScanner scanner = new FileScanner(env, vs);
+        scanner.scanRoot();
+
+        // the two best chunks fit the budget and come back in file order
+        assertThat(scanner.fetchSnippets(List.of("s.js"), 3, "where is c?").get(0).getContent()).isEqualTo(a + "\n" + c);
+        // without a question the budget is filled from the start of the file
+        assertThat(scanner.fetchSnippets(List.of("s.js"), 3).get(0).getContent()).isEqualTo(a + b);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void snippetsOfLatin1FilesReadBackTheIndexedText() throws Exception {
+        byte[] bytes = "// caf\u00e9 \u00e9t\u00e9\nint x = 1;\n".getBytes(StandardCharsets.ISO_8859_1);
+        Files.write(tempDir.resolve("l.java"), bytes);
+
+        Environment env = Mockito.mock(Environment.class);
+        Mockito.when(env.getProperty("scanner.root.path")).thenReturn(tempDir.toString());
+        Mockito.when(env.getProperty("application.id", "default-app")).thenReturn("app1");
+        VectorService vs = Mockito.mock(VectorService.class);
+        Mockito.when(vs.upsertBatch(Mockito.anyList())).thenReturn(true);
+        FileScanner scanner = new FileScanner(env, vs);
+        scanner.scanRoot();
+
+        ArgumentCaptor<List<VectorService.Chunk>> stored = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(vs).upsertBatch(stored.capture());
+        List<VectorService.Chunk> chunks = stored.getValue();
+        // offsets follow the bytes on disk, where each 0xE9 is one byte
+        assertThat(chunks.get(chunks.size() - 1).getEndOffset()).isEqualTo(bytes.length);
+
+        List<long[]> ranges = chunks.stream().map(c -> new long[] {c.getStartOffset(), c.getEndOffset()}).toList();
+        Mockito.when(vs.chunkRanges("app1", "l.java")).thenReturn(ranges);
+        assertThat(scanner.fetchSnippets(List.of("l.java"), 1).get(0).getContent())
+                .isEqualTo("// caf\uFFFD \uFFFDt\uFFFD\nint x = 1;\n");
+    }
+
+    @Test
+    public void entriesFromBeforeByteOffsetsAreIndexedAgain() throws Exception {
+        Path a = Files.writeString(tempDir.resolve("a.js"), "const \u00e9 = 1;");
+        ScanManifestRecord old = new ScanManifestRecord();
+        old.setId("app1:a.js");
+        old.setApplicationId("app1");
+        old.setPath("a.js");
+        old.setSize(Files.size(a));
+        old.setMtime(Files.getLastModifiedTime(a).toMillis());
+        old.setContentHash(ScanManifest.hash(Files.readAllBytes(a)));
+        old.setChunkCount(1);
+
+        Environment env = Mockito.mock(Environment.class);
+        Mockito.when(env.getProperty("scanner.root.path")).thenReturn(tempDir.toString());
+        Mockito.when(env.getProperty("application.id", "default-app")).thenReturn("app1");
+        VectorService vs = Mockito.mock(VectorService.class);
+        Mockito.when(vs.upsertBatch(Mockito.anyList())).thenReturn(true);
+        ScanManifestRepository repo = Mockito.mock(ScanManifestRepository.class);
+        Mockito.when(repo.findByApplicationId("app1")).thenReturn(List.of(old));
+
+        FileScanner scanner = new FileScanner(env, vs);
+        scanner.setScanManifest(new ScanManifest(repo));
+        scanner.scanRoot();
+        // same size, mtime and hash, but the entry predates byte offsets
+        Mockito.verify(vs, Mockito.times(1)).upsertBatch(Mockito.anyList());
+
+        scanner.scanRoot();
+        Mockito.verify(vs, Mockito.times(1)).upsertBatch(Mockito.anyList());
     }
 }
@@ -0,0 +1,116 @@
+package com.example.codetools;
+
+import com.example.codetools.testutils.CapturingProcess;
+import com.example.codetools.testutils.TestProcessRunner;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.Environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GitChangeDetectorTest {
+
+    private static Environment env() {
+        return env("30000");
+    }
+
+    private static Environment env(String timeoutMs) {
+        Environment env = mock(Environment.class);
+        when(env.getProperty("scanner.git.command", "git")).thenReturn("git");
+        when(env.getProperty("scanner.git.enabled", "true")).thenReturn("true");
+        when(env.getProperty("scanner.git.timeout.ms", "30000")).thenReturn(timeoutMs);
+        return env;
+    }
+
+    private static CapturingProcess out(String stdout) {
+        return new CapturingProcess(stdout.getBytes(), new byte[0], 0);
+    }
+
+    private static String p(String gitPath) {
+        return gitPath.replace('/', File.separatorChar);
+    }
+
+    @Test
+    public void parsesChangesSinceCommitWithRenamesAndUntrackedFiles() {
+        TestProcessRunner runner = new TestProcessRunner(
+                out("M\0src/B.java\0R087\0src/A.java\0src/A2.java\0D\0src/D.java\0A\0src/C.java\0"),
+                out("src/E.java\0"));
+        GitChangeDetector git = new GitChangeDetector(env(), runner);
+
+        GitChangeDetector.Changes c = git.changesSince(Paths.get("/repo"), "abc123");
+
+        assertThat(c.getModified()).containsExactly(p("src/B.java"), p("src/C.java"), p("src/E.java"));
+        assertThat(c.getDeleted()).containsExactly(p("src/D.java"));
+        assertThat(c.getRenamed()).containsEntry(p("src/A.java"), p("src/A2.java")).hasSize(1);
+        List<String> diff = runner.commands().get(0);
+        assertThat(diff).startsWith("git", "-C", Paths.get("/repo").toString(), "diff").contains("-M", "--relative", "abc123");
+        assertThat(runner.commands().get(1)).contains("ls-files", "--others", "--exclude-standard");
+    }
+
+    @Test
+    public void snapshotHasHeadAndDirtyPaths() {
+        TestProcessRunner runner = new TestProcessRunner(out("0123abcd\n"), out("B.java\0"), out("New.java\0"));
+        GitChangeDetector git = new GitChangeDetector(env(), runner);
+
+        GitChangeDetector.Snapshot s = git.snapshot(Paths.get("/repo"));
+
+        assertThat(s.getHead()).isEqualTo("0123abcd");
+        assertThat(s.getDirty()).containsExactly("B.java", "New.java");
+    }
+
+    @Test
+    public void returnsNullWhenGitFails() {
+        TestProcessRunner runner = new TestProcessRunner(new CapturingProcess(new byte[0], "fatal: bad revision".getBytes(), 128));
+        GitChangeDetector git = new GitChangeDetector(env(), runner);
+
+        assertThat(git.changesSince(Paths.get("/repo"), "gone")).isNull();
+        assertThat(git.snapshot(Paths.get("/repo"))).isNull();
+    }
+
+    @Test
+    public void gitThatHangsWithItsOutputOpenTimesOut() throws Exception {
+        PipedOutputStream never = new PipedOutputStream();
+        PipedInputStream stdout = new PipedInputStream(never);
+        CapturingProcess hung = new CapturingProcess(new byte[0], new byte[0], 0) {
+            @Override
+            public InputStream getInputStream() {
+                return stdout;
+            }
+
+            @Override
+            public boolean waitFor(long timeout, TimeUnit unit) {
+                try {
+                    unit.sleep(timeout);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return !isAlive();
+            }
+
+            @Override
+            public void destroy() {
+                super.destroy();
+                try {
+                    never.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }.setAlive(true);
+        GitChangeDetector git = new GitChangeDetector(env("200"), new TestProcessRunner(hung));
+
+        long started = System.nanoTime();
+        assertThat(git.snapshot(Paths.get("/repo"))).isNull();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isLessThan(5000);
+        assertThat(hung.isDestroyed()).isTrue();
+    }
+}
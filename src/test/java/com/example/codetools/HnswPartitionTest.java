@@ -0,0 +1,170 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HnswPartitionTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    public void queriesRouteToTheApplicationPartition() throws Exception {
+        HnswAnnService h = new HnswAnnService(4, 16, 100, 10);
+        h.add("app-a:one:0", new float[] {1f, 0f, 0f});
+        h.add("app-a:two:0", new float[] {0f, 1f, 0f});
+        // different application with a different dimension lives in its own graph
+        h.add("app-b:one:0", new float[] {1f, 0f, 0f, 0f});
+
+        assertThat(h.size()).isEqualTo(3);
+        assertThat(h.getPartitionInfo()).containsKeys("app-a", "app-b");
+        assertThat(h.getPartitionInfo().get("app-b").get("dimensions")).isEqualTo(4);
+
+        List<String> a = h.query("app-a", new float[] {1f, 0f, 0f}, 5);
+        assertThat(a).containsExactly("app-a:one:0", "app-a:two:0");
+        assertThat(h.query("app-b", new float[] {1f, 0f, 0f, 0f}, 5)).containsExactly("app-b:one:0");
+        assertThat(h.query("missing", new float[] {1f, 0f, 0f}, 5)).isEmpty();
+    }
+
+    @Test
+    public void rebuildKeepsAddsAndRemovesMadeWhileItRuns() throws Exception {
+        HnswAnnService h = new HnswAnnService(4, 16, 100, 10);
+        h.add("app-a:gone:0", new float[] {0f, 0f, 1f});
+        VectorRepository repo = mock(VectorRepository.class);
+        // the writes land while the rebuild is reading the database
+        when(repo.findAll(any(Pageable.class))).thenAnswer(inv -> {
+            h.add("app-a:late:0", new float[] {0f, 1f, 0f});
+            h.add("app-c:new:0", new float[] {1f, 0f, 0f});
+            h.remove("app-a:stored:0");
+            return new PageImpl<>(List.of(record("app-a:stored:0", new float[] {1f, 0f, 0f})));
+        });
+        h.setVectorRepository(repo);
+
+        h.rebuildFromDatabase();
+
+        assertThat(h.query("app-a", new float[] {1f, 0f, 0f}, 5)).containsExactly("app-a:late:0");
+        assertThat(h.query("app-c", new float[] {1f, 0f, 0f}, 5)).containsExactly("app-c:new:0");
+        assertThat(h.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void fullPartitionsGrowInsteadOfDroppingVectors() throws Exception {
+        HnswAnnService h = new HnswAnnService(4, 16, 3, 10);
+        for (int i = 0; i < 10; i++) h.add("app-a:f:" + i, new float[] {1f, i, 0f});
+        // removed nodes keep their slot, so re-adding the same ids needs room as well
+        for (int i = 0; i < 10; i++) h.add("app-a:f:" + i, new float[] {1f, 0f, i});
+
+        assertThat(h.size()).isEqualTo(10);
+        assertThat((Integer) h.getPartitionInfo().get("app-a").get("maxItems")).isGreaterThanOrEqualTo(10);
+    }
+
+    private static VectorRecord record(String id, float[] v) {
+        VectorRecord r = new VectorRecord();
+        r.setId(id);
+        r.setApplicationId(HnswAnnService.partitionOf(id));
+        r.setVectorBlob(VectorCodec.encode(v));
+        return r;
+    }
+
+    @Test
+    public void reloadingOnePartitionLeavesOthersAlone() throws Exception {
+        HnswAnnService h = new HnswAnnService(4, 16, 100, 10);
+        h.add("app-a:one:0", new float[] {1f, 0f, 0f});
+        h.add("app-b:one:0", new float[] {0f, 1f, 0f});
+
+        Path partFile = tmp.resolve("app-a.part");
+        h.persistPartition("app-a", partFile);
+        h.remove("app-a:one:0");
+        h.add("app-b:two:0", new float[] {0f, 0f, 1f});
+        assertThat(h.query("app-a", new float[] {1f, 0f, 0f}, 1)).isEmpty();
+
+        h.loadPartition("app-a", partFile);
+        assertThat(h.query("app-a", new float[] {1f, 0f, 0f}, 1)).containsExactly("app-a:one:0");
+        assertThat(h.query("app-b", new float[] {0f, 1f, 0f}, 5)).hasSize(2);
+    }
+
+    @Test
+    public void removeAllDropsIdsAcrossPartitions() throws Exception {
+        HnswAnnService h = new HnswAnnService(4, 16, 100, 10);
+        for (int i = 0; i < 5; i++) {
+            h.add("app-a:f:" + i, new float[] {1f, i, 0f});
+            h.add("app-b:f:" + i, new float[] {0f, 1f, i});
+        }
+
+        h.removeAll(List.of("app-a:f:1", "app-a:f:2", "app-b:f:0", "app-c:missing:0"));
+
+        assertThat(h.size()).isEqualTo(7);
+        assertThat(h.query("app-a", new float[] {1f, 1f, 0f}, 10)).containsExactlyInAnyOrder("app-a:f:0", "app-a:f:3", "app-a:f:4");
+        assertThat(h.query("app-b", new float[] {0f, 1f, 0f}, 10)).doesNotContain("app-b:f:0").hasSize(4);
+    }
+
+    @Test
+    public void persistWritesManifestAndPartitionFiles() throws Exception {
+        HnswAnnService h = new HnswAnnService(4, 16, 100, 10);
+        h.add("app-a:one:0", new float[] {1f, 0f, 0f});
+        h.add("app-b:one:0", new float[] {0f, 1f, 0f});
+
+        Path manifest = tmp.resolve("ann-index.idx");
+        h.persistTo(manifest);
+        assertThat(Files.exists(HnswAnnService.partitionFile(manifest, "app-a"))).isTrue();
+        assertThat(Files.exists(HnswAnnService.partitionFile(manifest, "app-b"))).isTrue();
+        // everything is written to a temp file first and moved into place
+        try (var files = Files.list(tmp)) {
+            assertThat(files.map(f -> f.getFileName().toString())).noneMatch(n -> n.endsWith(".tmp"));
+        }
+
+        HnswAnnService fresh = new HnswAnnService(4, 16, 100, 10);
+        fresh.loadFrom(manifest);
+        assertThat(fresh.size()).isEqualTo(2);
+        assertThat(fresh.query("app-b", new float[] {0f, 1f, 0f}, 1)).containsExactly("app-b:one:0");
+    }
+
+    @Test
+    public void partitionFilesKeepTheGraphAndRejectCorruption() throws Exception {
+        HnswAnnService h = new HnswAnnService(4, 16, 100, 10);
+        for (int i = 0; i < 20; i++) h.add("app-a:f:" + i, new float[] {1f, i, 0f});
+
+        Path partFile = tmp.resolve("app-a.part");
+        h.persistPartition("app-a", partFile);
+        assertThat(HnswAnnService.isNativePartition(partFile)).isTrue();
+
+        HnswAnnService fresh = new HnswAnnService(4, 16, 100, 10);
+        fresh.loadPartition("app-a", partFile);
+        assertThat(fresh.size()).isEqualTo(20);
+        assertThat(fresh.query("app-a", new float[] {1f, 0f, 0f}, 1)).containsExactly("app-a:f:0");
+
+        byte[] bytes = Files.readAllBytes(partFile);
+        bytes[bytes.length - 20] ^= 1;
+        Files.write(partFile, bytes);
+        assertThatThrownBy(() -> fresh.loadPartition("app-a", partFile)).isInstanceOf(java.io.IOException.class);
+        // the live partition is left as it was
+        assertThat(fresh.size()).isEqualTo(20);
+    }
+
+    @Test
+    public void legacyVectorMapPartitionFilesStillLoad() throws Exception {
+        Path partFile = tmp.resolve("legacy.part");
+        java.util.Map<String, float[]> vectors = new java.util.HashMap<>();
+        vectors.put("app-a:one:0", new float[] {1f, 0f, 0f});
+        try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(Files.newOutputStream(partFile))) {
+            out.writeObject(vectors);
+        }
+
+        HnswAnnService h = new HnswAnnService(4, 16, 100, 10);
+        h.loadPartition("app-a", partFile);
+
+        assertThat(h.query("app-a", new float[] {1f, 0f, 0f}, 1)).containsExactly("app-a:one:0");
+    }
+}
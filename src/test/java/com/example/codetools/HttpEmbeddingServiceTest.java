@@ -0,0 +1,44 @@
+package com.example.codetools;
+
+import com.example.codetools.testutils.OllamaStubServer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HttpEmbeddingServiceTest {
+
+    @Test
+    public void embedsBatchInOneRequestOverKeptAliveConnection() throws Exception {
+        try (OllamaStubServer stub = new OllamaStubServer(8)) {
+            HttpEmbeddingService svc = new HttpEmbeddingService(stub.baseUrl(), "nomic-embed-text", 2000, 5000);
+
+            List<float[]> out = svc.embedBatch(List.of("alpha", "beta", "gamma"));
+            assertThat(out).hasSize(3);
+            assertThat(out.get(0)).containsExactly(OllamaStubServer.vectorFor("alpha", 8));
+            assertThat(out.get(2)).containsExactly(OllamaStubServer.vectorFor("gamma", 8));
+            assertThat(svc.embed("delta")).containsExactly(OllamaStubServer.vectorFor("delta", 8));
+
+            assertThat(stub.batchSizes()).containsExactly(3, 1);
+            // both requests travelled on the same connection
+            assertThat(stub.clientPorts()).hasSize(2);
+            assertThat(stub.clientPorts().get(1)).isEqualTo(stub.clientPorts().get(0));
+        }
+    }
+
+    @Test
+    public void slowRequestTimesOutToNulls() throws Exception {
+        try (OllamaStubServer stub = new OllamaStubServer(4).setLatencyMs(1000)) {
+            HttpEmbeddingService svc = new HttpEmbeddingService(stub.baseUrl(), "m", 2000, 100);
+
+            long start = System.nanoTime();
+            List<float[]> out = svc.embedBatch(List.of("a", "b"));
+            assertThat(out).containsExactly(null, null);
+            assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(900);
+
+            stub.setLatencyMs(0);
+            assertThat(svc.embed("a")).containsExactly(OllamaStubServer.vectorFor("a", 4));
+        }
+    }
+}
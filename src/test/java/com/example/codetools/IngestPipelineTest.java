@@ -0,0 +1,126 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IngestPipelineTest {
+
+    private static List<VectorService.Chunk> chunks(String path, int n) {
+        List<VectorService.Chunk> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) out.add(new VectorService.Chunk("app", path, path + "#" + i, i, i * 10, i * 10 + 10));
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static VectorService vectorService(List<Integer> embedBatches, AtomicInteger persisted, CountDownLatch embedGate) throws Exception {
+        VectorService vs = Mockito.mock(VectorService.class);
+        Mockito.when(vs.getEmbeddingBatchSize()).thenReturn(4);
+        Mockito.when(vs.detectChanges(Mockito.anyList())).thenAnswer(inv -> {
+            List<VectorService.Chunk> in = inv.getArgument(0);
+            List<VectorService.Change> out = new ArrayList<>();
+            for (VectorService.Chunk c : in) {
+                if (!c.getPath().startsWith("same")) out.add(new VectorService.Change(c, "sum", null));
+            }
+            return out;
+        });
+        Mockito.when(vs.embedChanges(Mockito.anyList())).thenAnswer(inv -> {
+            embedGate.await();
+            List<VectorService.Change> in = inv.getArgument(0);
+            embedBatches.add(in.size());
+            List<float[]> out = new ArrayList<>();
+            for (int i = 0; i < in.size(); i++) out.add(new float[] {1f, 0f});
+            return out;
+        });
+        Mockito.doAnswer(inv -> {
+            int n = ((List<VectorService.Change>) inv.getArgument(0)).size();
+            persisted.addAndGet(n);
+            return n;
+        }).when(vs).persistChanges(Mockito.anyList(), Mockito.anyList());
+        return vs;
+    }
+
+    private static FileScanner fileScanner() throws Exception {
+        FileScanner fs = Mockito.mock(FileScanner.class);
+        Mockito.when(fs.readIfChanged(Mockito.anyString())).thenAnswer(inv -> {
+            String path = inv.getArgument(0);
+            if (path.startsWith("missing")) throw new java.io.IOException("gone");
+            return new TextFileReader.Text("content of " + path, null, null);
+        });
+        Mockito.when(fs.chunkFile(Mockito.anyString(), Mockito.any(TextFileReader.Text.class)))
+                .thenAnswer(inv -> chunks(inv.getArgument(0), 3));
+        return fs;
+    }
+
+    @Test
+    public void everyFileFlowsThroughAndEmbeddingIsBatchedAcrossFiles() throws Exception {
+        List<Integer> embedBatches = new CopyOnWriteArrayList<>();
+        AtomicInteger persisted = new AtomicInteger();
+        VectorService vs = vectorService(embedBatches, persisted, new CountDownLatch(0));
+        IngestPipeline pipeline = new IngestPipeline(fileScanner(), vs, 8);
+
+        Set<String> done = ConcurrentHashMap.newKeySet();
+        IngestPipeline.Run run = pipeline.start(done::add);
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) files.add("f" + i + ".java");
+        files.add("same.java");
+        files.add("missing.java");
+        for (String f : files) run.submit(f);
+        run.finish();
+
+        assertThat(done).containsExactlyInAnyOrderElementsOf(files);
+        assertThat(run.failedFiles()).containsExactly("missing.java");
+        assertThat(persisted.get()).isEqualTo(30);
+        assertThat(embedBatches.stream().mapToInt(Integer::intValue).sum()).isEqualTo(30);
+        assertThat(embedBatches).allMatch(n -> n <= 4);
+        // chunks of different files share embedding calls
+        assertThat(embedBatches).anyMatch(n -> n == 4);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> stages = (Map<String, Map<String, Object>>) pipeline.status().get("stages");
+        assertThat(stages.keySet()).containsExactly("read", "chunk", "detect", "embed", "persist");
+        assertThat(stages.values()).allMatch(s -> (Integer) s.get("queued") == 0);
+        assertThat(pipeline.status()).containsEntry("running", false);
+    }
+
+    @Test
+    public void fullQueuesBlockTheProducerUntilTheEmbedderCatchesUp() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger persisted = new AtomicInteger();
+        VectorService vs = vectorService(new CopyOnWriteArrayList<>(), persisted, gate);
+        IngestPipeline pipeline = new IngestPipeline(fileScanner(), vs, 2);
+
+        AtomicInteger submitted = new AtomicInteger();
+        IngestPipeline.Run run = pipeline.start(p -> {});
+        Thread producer = Thread.ofVirtual().start(() -> {
+            try {
+                for (int i = 0; i < 200; i++) {
+                    run.submit("f" + i + ".java");
+                    submitted.incrementAndGet();
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+
+        TimeUnit.MILLISECONDS.sleep(500);
+        // the embedder is stuck, so bounded queues stop the producer well short of 200 files
+        assertThat(submitted.get()).isLessThan(100);
+
+        gate.countDown();
+        producer.join(10000);
+        run.finish();
+        assertThat(submitted.get()).isEqualTo(200);
+        assertThat(persisted.get()).isEqualTo(600);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IngestThrottleTest {
+
+    @Test
+    public void capsConcurrentEmbeddingCallsAndWriters() throws Exception {
+        IngestThrottle throttle = new IngestThrottle(2, 1);
+        AtomicInteger embedding = new AtomicInteger();
+        AtomicInteger maxEmbedding = new AtomicInteger();
+        AtomicInteger writing = new AtomicInteger();
+        AtomicInteger maxWriting = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 20; i++) {
+                futures.add(pool.submit(() -> {
+                    throttle.embedding(() -> track(embedding, maxEmbedding));
+                    throttle.writing(() -> track(writing, maxWriting));
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        }
+
+        assertThat(maxEmbedding.get()).isEqualTo(2);
+        assertThat(maxWriting.get()).isEqualTo(1);
+        assertThat(throttle.status()).containsEntry("embedActive", 0).containsEntry("dbActive", 0);
+    }
+
+    @Test
+    public void releasesPermitWhenCallFails() {
+        IngestThrottle throttle = new IngestThrottle(1, 1);
+        try {
+            throttle.embedding(() -> { throw new IllegalStateException("boom"); });
+        } catch (Exception expected) {
+            assertThat(expected).hasMessage("boom");
+        }
+        assertThat(throttle.status()).containsEntry("embedActive", 0);
+    }
+
+    private static Void track(AtomicInteger current, AtomicInteger max) throws InterruptedException {
+        max.accumulateAndGet(current.incrementAndGet(), Math::max);
+        Thread.sleep(20);
+        current.decrementAndGet();
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.example.codetools.testutils.TestVectors.randomUnit;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IvfFlatAnnServiceTest {
+
+    @Test
+    public void trainsOnFirstVectorsAndSupportsAddRemove() throws Exception {
+        // probing every list makes the search exact, so results are deterministic
+        IvfFlatAnnService ann = new IvfFlatAnnService(8, 8, 100);
+        Random rnd = new Random(11);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            float[] v = randomUnit(rnd, 16);
+            vectors.add(v);
+            ann.add("v" + i, v);
+        }
+        assertThat(ann.size()).isEqualTo(150);
+        for (int i = 0; i < 150; i += 13) {
+            assertThat(ann.query(vectors.get(i), 1)).containsExactly("v" + i);
+        }
+
+        ann.remove("v3");
+        ann.remove("v120");
+        assertThat(ann.size()).isEqualTo(148);
+        assertThat(ann.query(vectors.get(3), 150)).doesNotContain("v3", "v120").hasSize(148);
+        // entries moved by swap-with-last removal are still addressable
+        for (int i = 0; i < 150; i += 7) {
+            if (i == 3 || i == 120) continue;
+            assertThat(ann.query(vectors.get(i), 1)).containsExactly("v" + i);
+        }
+
+        // re-adding an id replaces its vector instead of duplicating it
+        ann.add("v5", vectors.get(6));
+        assertThat(ann.size()).isEqualTo(148);
+    }
+
+    @Test
+    public void rebuildTrainsFromRepositoryPages() throws Exception {
+        // more rows than one rebuild page, and a train size that stops after the first pages
+        int total = 2500;
+        List<VectorRecord> rows = new ArrayList<>();
+        Random rnd = new Random(5);
+        for (int i = 0; i < total; i++) rows.add(record("app:f" + i + ":0", randomUnit(rnd, 8)));
+        VectorRepository repo = mock(VectorRepository.class);
+        Set<Integer> pagesRead = new HashSet<>();
+        when(repo.count()).thenReturn((long) total);
+        when(repo.findAll(any(Pageable.class))).thenAnswer(inv -> {
+            Pageable p = inv.getArgument(0);
+            pagesRead.add(p.getPageNumber());
+            int from = (int) Math.min(total, p.getOffset());
+            int to = Math.min(total, from + p.getPageSize());
+            return new PageImpl<>(rows.subList(from, to), p, total);
+        });
+        IvfFlatAnnService ann = new IvfFlatAnnService(8, 1, 1500);
+        ann.setVectorRepository(repo);
+
+        ann.rebuildFromDatabase();
+
+        assertThat(pagesRead).containsExactlyInAnyOrder(0, 1, 2);
+        assertThat(ann.size()).isEqualTo(total);
+        // trained lists answer from the probed list only; untrained vectors would all be scanned
+        float[] q = VectorServiceHelper.decode(rows.get(42));
+        assertThat(ann.query(q, total)).hasSizeLessThan(total).startsWith("app:f42:0");
+    }
+
+    @Test
+    public void probingFewerListsStillRecallsNearbyVectors() throws Exception {
+        // 200 vectors around 16 cluster centres, 16 lists, only 2 probed per query
+        Random rnd = new Random(3);
+        float[][] centres = new float[16][];
+        for (int c = 0; c < centres.length; c++) centres[c] = randomUnit(rnd, 32);
+        List<float[]> vectors = new ArrayList<>();
+        IvfFlatAnnService ann = new IvfFlatAnnService(16, 2, 200);
+        for (int i = 0; i < 200; i++) {
+            float[] v = centres[i % centres.length].clone();
+            for (int d = 0; d < v.length; d++) v[d] += 0.1f * (float) rnd.nextGaussian();
+            VectorUtils.normalize(v);
+            vectors.add(v);
+            ann.add("v" + i, v);
+        }
+
+        int found = 0;
+        for (int i = 0; i < vectors.size(); i++) {
+            float[] q = vectors.get(i).clone();
+            for (int d = 0; d < q.length; d++) q[d] += 0.02f * (float) rnd.nextGaussian();
+            if (ann.query(q, 1).equals(List.of("v" + i))) found++;
+        }
+        assertThat(found).isGreaterThanOrEqualTo(190);
+        assertThat(ann.query(vectors.get(0), 200)).hasSizeLessThan(200);
+    }
+
+    private static VectorRecord record(String id, float[] v) {
+        VectorRecord r = new VectorRecord();
+        r.setId(id);
+        r.setVectorBlob(VectorCodec.encode(v));
+        return r;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.codetools.testutils.TestVectors.randomUnit;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IvfPqAnnServiceTest {
+
+    @Test
+    public void trainsOnFirstVectorsAndFindsThem() throws Exception {
+        // 4 lists, 2 subquantizers over 8 dims; training set smaller than 256 codewords is encoded exactly
+        IvfPqAnnService ann = new IvfPqAnnService(4, 2, 4, 50, 10);
+        Random rnd = new Random(7);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            float[] v = randomUnit(rnd, 8);
+            vectors.add(v);
+            ann.add("v" + i, v);
+        }
+        assertThat(ann.size()).isEqualTo(60);
+
+        for (int i = 0; i < 50; i += 7) {
+            assertThat(ann.query(vectors.get(i), 1)).containsExactly("v" + i);
+        }
+
+        ann.remove("v0");
+        assertThat(ann.size()).isEqualTo(59);
+        assertThat(ann.query(vectors.get(0), 60)).doesNotContain("v0").hasSize(59);
+    }
+
+    @Test
+    public void scoresExactlyBeforeTraining() throws Exception {
+        IvfPqAnnService ann = new IvfPqAnnService(4, 2, 1, 100, 10);
+        ann.add("x", new float[] {1f, 0f, 0f, 0f});
+        ann.add("y", new float[] {0f, 1f, 0f, 0f});
+        assertThat(ann.query(new float[] {0.2f, 0.8f, 0f, 0f}, 2)).containsExactly("y", "x");
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OffHeapVectorSlabTest {
+
+    @Test
+    public void spansChunksAndKeepsRowsDenseOnRemove() {
+        // 2-dim rows, 8-byte chunks -> one row per direct buffer
+        OffHeapVectorSlab slab = new OffHeapVectorSlab(8);
+        slab.put("a", new float[] {1f, 0f});
+        slab.put("b", new float[] {0f, 1f});
+        slab.put("c", new float[] {1f, 1f});
+        assertThat(slab.size()).isEqualTo(3);
+
+        assertThat(slab.remove("a")).isTrue();
+        assertThat(slab.remove("a")).isFalse();
+        assertThat(slab.size()).isEqualTo(2);
+        // last row moved into the freed slot
+        assertThat(slab.get("c")).containsExactly(1f, 1f);
+        assertThat(slab.get("b")).containsExactly(0f, 1f);
+
+        slab.put("b", new float[] {2f, 0f});
+        assertThat(slab.size()).isEqualTo(2);
+        assertThat(slab.get("b")).containsExactly(2f, 0f);
+    }
+
+    @Test
+    public void searchRanksByCosine() {
+        OffHeapVectorSlab slab = new OffHeapVectorSlab();
+        slab.put("x", new float[] {1f, 0f, 0f});
+        slab.put("y", new float[] {0f, 1f, 0f});
+        // rows are stored as given and scored by dot product, so they must be unit length
+        slab.put("xy", new float[] {0.70710677f, 0.70710677f, 0f});
+
+        TopKHeap heap = new TopKHeap(2);
+        slab.search(new float[] {0.9f, 0.1f, 0f}, heap);
+        heap.sortDescending();
+        assertThat(heap.size()).isEqualTo(2);
+        assertThat(slab.idAt(heap.id(0))).isEqualTo("x");
+        assertThat(slab.idAt(heap.id(1))).isEqualTo("xy");
+    }
+
+    @Test
+    public void rejectsMismatchedDimension() {
+        OffHeapVectorSlab slab = new OffHeapVectorSlab();
+        slab.put("a", new float[] {1f, 0f});
+        assertThatThrownBy(() -> slab.put("b", new float[] {1f, 0f, 0f})).isInstanceOf(IllegalArgumentException.class);
+        slab.clear();
+        slab.put("b", new float[] {1f, 0f, 0f});
+        assertThat(slab.dimension()).isEqualTo(3);
+    }
+}
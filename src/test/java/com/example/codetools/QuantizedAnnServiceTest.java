@@ -0,0 +1,117 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class QuantizedAnnServiceTest {
+
+    @Test
+    public void quantizerRoundTripStaysWithinOneStep() {
+        ScalarQuantizer.Trainer trainer = new ScalarQuantizer.Trainer();
+        trainer.observe(new float[] {-1f, 0f, 0.5f});
+        trainer.observe(new float[] {1f, 2f, 0.5f});
+        ScalarQuantizer sq = trainer.build();
+
+        float[] v = {0.3f, 1.7f, 0.5f};
+        float[] back = sq.decode(sq.encode(v));
+        assertThat(back[0]).isCloseTo(0.3f, org.assertj.core.data.Offset.offset(2f / 255));
+        assertThat(back[1]).isCloseTo(1.7f, org.assertj.core.data.Offset.offset(2f / 255));
+        assertThat(back[2]).isEqualTo(0.5f); // constant dimension decodes exactly
+
+        // prepared query score matches the dot product with the decoded vector
+        float[] q = {0.2f, -0.4f, 1f};
+        float expected = q[0] * back[0] + q[1] * back[1] + q[2] * back[2];
+        assertThat(sq.prepare(q).score(sq.encode(v))).isCloseTo(expected, org.assertj.core.data.Offset.offset(1e-4f));
+    }
+
+    @Test
+    public void queriesBeforeAndAfterTraining() throws Exception {
+        QuantizedAnnService ann = new QuantizedAnnService(3, 2, null);
+        ann.add("x", new float[] {1f, 0f, 0f});
+        ann.add("y", new float[] {0f, 1f, 0f});
+        // not trained yet: exact float scoring
+        assertThat(ann.query(new float[] {0.9f, 0.1f, 0f}, 1)).containsExactly("x");
+
+        ann.add("z", new float[] {0f, 0f, 1f});
+        ann.add("xy", new float[] {1f, 1f, 0f});
+        assertThat(ann.size()).isEqualTo(4);
+
+        List<String> res = ann.query(new float[] {0f, 0.1f, 0.9f}, 2);
+        assertThat(res).hasSize(2);
+        assertThat(res.get(0)).isEqualTo("z");
+
+        ann.remove("z");
+        assertThat(ann.query(new float[] {0f, 0.1f, 0.9f}, 4)).doesNotContain("z").hasSize(3);
+    }
+
+    @Test
+    public void rerankOrdersInt8TiesByTheStoredFloats() throws Exception {
+        // "hi" and "lo" differ by less than one int8 step, so their codes and int8 scores are equal
+        Map<String, float[]> table = new LinkedHashMap<>();
+        table.put("up", new float[] {0f, 1f, 0f});
+        table.put("down", new float[] {0f, -1f, 0f});
+        table.put("hi", new float[] {1f, 0.003f, 0f});
+        table.put("lo", new float[] {1f, 0.001f, 0f});
+        VectorRepository repo = mock(VectorRepository.class);
+        when(repo.findAllById(any())).thenAnswer(inv -> {
+            List<VectorRecord> out = new ArrayList<>();
+            for (Object id : (Iterable<?>) inv.getArgument(0)) out.add(record((String) id, table.get(id)));
+            return out;
+        });
+        QuantizedAnnService reranked = new QuantizedAnnService(4, 4, repo);
+        QuantizedAnnService int8Only = new QuantizedAnnService(4, 4, null);
+        for (Map.Entry<String, float[]> e : table.entrySet()) {
+            reranked.add(e.getKey(), e.getValue());
+            int8Only.add(e.getKey(), e.getValue());
+        }
+
+        float[] towardsHi = {1f, 0.5f, 0f};
+        float[] towardsLo = {1f, -0.5f, 0f};
+        // without the floats both queries keep whichever tied candidate the scan ranked first
+        assertThat(int8Only.query(towardsHi, 1)).isEqualTo(int8Only.query(towardsLo, 1));
+        assertThat(reranked.query(towardsHi, 1)).containsExactly("hi");
+        assertThat(reranked.query(towardsLo, 1)).containsExactly("lo");
+    }
+
+    @Test
+    public void rebuildTrainsAndEncodesFromTheTable() throws Exception {
+        List<VectorRecord> rows = List.of(
+                record("x", new float[] {1f, 0f, 0f}),
+                record("y", new float[] {0f, 1f, 0f}),
+                record("z", new float[] {0f, 0f, 1f}));
+        VectorRepository repo = mock(VectorRepository.class);
+        when(repo.findAll(any(Pageable.class))).thenAnswer(inv -> new PageImpl<>(rows, inv.getArgument(0), rows.size()));
+        // no floats for rerank: results can only come from the codes encoded during the rebuild
+        when(repo.findAllById(any())).thenReturn(List.of());
+        QuantizedAnnService ann = new QuantizedAnnService(100, 2, repo);
+        ann.add("gone", new float[] {1f, 1f, 1f});
+
+        ann.rebuildFromDatabase();
+
+        assertThat(ann.size()).isEqualTo(3);
+        assertThat(ann.query(new float[] {0.1f, 0.9f, 0.1f}, 1)).containsExactly("y");
+        assertThat(ann.query(new float[] {0.1f, 0.1f, 0.9f}, 3)).startsWith("z").doesNotContain("gone");
+        // the quantizer is trained, so later adds are encoded instead of waiting for train.size
+        ann.add("w", new float[] {0.6f, 0.8f, 0f});
+        assertThat(ann.size()).isEqualTo(4);
+        assertThat(ann.query(new float[] {0.6f, 0.8f, 0f}, 1)).containsExactly("w");
+    }
+
+    private static VectorRecord record(String id, float[] v) {
+        VectorRecord r = new VectorRecord();
+        r.setId(id);
+        r.setVectorBlob(VectorCodec.encode(v));
+        return r;
+    }
+}
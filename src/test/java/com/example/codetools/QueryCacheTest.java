@@ -0,0 +1,80 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueryCacheTest {
+
+    private static QueryModels.CodeSnippet snippet(String path, String content) {
+        QueryModels.CodeSnippet s = new QueryModels.CodeSnippet();
+        s.setPath(path);
+        s.setContent(content);
+        return s;
+    }
+
+    @Test
+    public void embeddingsAreKeyedByModelAndNormalizedQuestion() {
+        QueryCache cache = new QueryCache(1 << 20, 1 << 20);
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<float[]> loader = () -> {
+            calls.incrementAndGet();
+            return new float[] {1f, 2f};
+        };
+
+        cache.embedding("m1", "what does  this do?", loader);
+        cache.embedding("m1", "  what does this\tdo? ", loader);
+        assertThat(calls.get()).isEqualTo(1);
+
+        cache.embedding("m2", "what does this do?", loader);
+        assertThat(calls.get()).isEqualTo(2);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stats = (Map<String, Object>) cache.stats().get("embeddings");
+        assertThat(stats.get("hits")).isEqualTo(1L);
+        assertThat(stats.get("misses")).isEqualTo(2L);
+    }
+
+    @Test
+    public void resultsGoStaleWhenGenerationAdvances() {
+        QueryCache cache = new QueryCache(1 << 20, 1 << 20);
+        float[] qv = {0.6f, 0.8f};
+        cache.putResults("app", qv, 3, cache.generation(), List.of(snippet("a.js", "x")));
+
+        assertThat(cache.results("app", qv, 3)).extracting(QueryModels.CodeSnippet::getPath).containsExactly("a.js");
+        assertThat(cache.results("app", qv, 5)).isNull();
+        assertThat(cache.results("other", qv, 3)).isNull();
+
+        cache.invalidate();
+        assertThat(cache.results("app", qv, 3)).isNull();
+
+        // results computed while an upsert landed are stored already stale
+        long before = cache.generation();
+        cache.invalidate();
+        cache.putResults("app", qv, 3, before, List.of(snippet("a.js", "x")));
+        assertThat(cache.results("app", qv, 3)).isNull();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByWeight() {
+        WeightedLruCache<String, String> lru = new WeightedLruCache<>(10, String::length);
+        lru.put("a", "aaaa");
+        lru.put("b", "bbbb");
+        lru.get("a");
+        lru.put("c", "cccc");
+        assertThat(lru.get("b")).isNull();
+        assertThat(lru.get("a")).isEqualTo("aaaa");
+        assertThat(lru.weight()).isEqualTo(8);
+        assertThat(lru.evictions()).isEqualTo(1);
+
+        // heavier than the whole budget: not stored
+        lru.put("big", "0123456789ab");
+        assertThat(lru.get("big")).isNull();
+        assertThat(lru.size()).isEqualTo(2);
+    }
+}
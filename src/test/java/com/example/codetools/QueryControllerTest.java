@@ -38,7 +38,7 @@ public class QueryControllerTest {
         s.setContent("// sample content");
         snippets.add(s);
 
-        when(fileScanner.fetchSnippets(null, 3)).thenReturn(snippets);
+        when(fileScanner.fetchSnippets(null, 3, "what does this do?")).thenReturn(snippets);
         when(ollamaClient.queryModel(eq("what does this do?"), anyList())).thenReturn("mocked answer");
 
         mockMvc.perform(get("/api/query").param("question", "what does this do?"))
@@ -54,7 +54,7 @@ public class QueryControllerTest {
         s.setContent("// sample");
         snippets.add(s);
 
-        when(fileScanner.fetchSnippets(anyList(), eq(3))).thenReturn(snippets);
+        when(fileScanner.fetchSnippets(anyList(), eq(3), eq("what does this do?"))).thenReturn(snippets);
         when(ollamaClient.queryModel(eq("what does this do?"), anyList())).thenReturn("post-mock");
 
         String body = "{\"question\":\"what does this do?\",\"paths\":[\"webpack.config.js\"]}";
@@ -0,0 +1,68 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ScanWatcherTest {
+
+    @TempDir
+    Path root;
+
+    private ScanWatcher watcher;
+
+    @AfterEach
+    public void tearDown() {
+        if (watcher != null) watcher.stop();
+    }
+
+    @Test
+    public void burstOfWritesReindexesFileOnce() throws Exception {
+        FileScanner scanner = scannerFor(root);
+        watcher = new ScanWatcher(scanner, 300);
+        assertThat(watcher.start()).isTrue();
+
+        Path file = root.resolve("A.java");
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(file, "class A { int v = " + i + "; }");
+            Thread.sleep(20);
+        }
+
+        verify(scanner, timeout(10000)).processFile("A.java");
+        Thread.sleep(800);
+        verify(scanner, times(1)).processFile("A.java");
+        verify(scanner, never()).removeFile(anyString());
+    }
+
+    @Test
+    public void deletedFileAndNewDirectoryAreHandled() throws Exception {
+        Path file = root.resolve("Gone.java");
+        Files.writeString(file, "class Gone {}");
+        FileScanner scanner = scannerFor(root);
+        watcher = new ScanWatcher(scanner, 100);
+        watcher.start();
+
+        Files.delete(file);
+        verify(scanner, timeout(10000)).removeFile("Gone.java");
+
+        Path dir = Files.createDirectory(root.resolve("pkg"));
+        Files.writeString(dir.resolve("B.java"), "class B {}");
+        String rel = root.relativize(dir.resolve("B.java")).toString();
+        verify(scanner, timeout(10000)).processFile(rel);
+        assertThat(watcher.status()).containsEntry("running", true);
+    }
+
+    private static FileScanner scannerFor(Path root) {
+        FileScanner scanner = mock(FileScanner.class);
+        when(scanner.getRootPath()).thenReturn(root.toString());
+        when(scanner.isIndexable(anyString())).thenAnswer(inv -> inv.getArgument(0, String.class).endsWith(".java"));
+        return scanner;
+    }
+}
@@ -51,4 +51,125 @@ public class ScannerJobServiceUnitTest {
         assertThat(processed).isGreaterThanOrEqualTo(processedWhenPaused);
         assertThat((Integer) finalStatus.get("totalFiles")).isEqualTo(3);
     }
+
+    @Test
+    public void processesFilesConcurrentlyAndCountsEveryFile() throws Exception {
+        FileScanner mockScanner = Mockito.mock(FileScanner.class);
+        java.util.List<String> files = new java.util.ArrayList<>();
+        for (int i = 0; i < 20; i++) files.add("f" + i + ".txt");
+        Mockito.when(mockScanner.listAllFiles()).thenReturn(files);
+
+        java.util.concurrent.atomic.AtomicInteger active = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.atomic.AtomicInteger maxActive = new java.util.concurrent.atomic.AtomicInteger();
+        Mockito.doAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(100);
+            active.decrementAndGet();
+            return null;
+        }).when(mockScanner).processFile(Mockito.anyString());
+
+        ScannerJobService svc = new ScannerJobService(mockScanner);
+        svc.startJob();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Boolean.TRUE.equals(svc.status().get("running")) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        java.util.Map<String, Object> st = svc.status();
+        assertThat((Integer) st.get("processedFiles")).isEqualTo(20);
+        assertThat((Integer) st.get("activeFiles")).isZero();
+        assertThat(st.get("finishedAt")).isNotNull();
+        // 20 files of 100 ms each finish far sooner than sequentially
+        assertThat(maxActive.get()).isGreaterThan(1);
+        Mockito.verify(mockScanner).flushPending();
+    }
+
+    @Test
+    public void rescansOnlyWhatGitReportsAndRecordsTheCommit() throws Exception {
+        java.nio.file.Path root = java.nio.file.Files.createTempDirectory("git-scan");
+        java.nio.file.Files.writeString(root.resolve("B.java"), "class B {}");
+        java.nio.file.Files.writeString(root.resolve("A2.java"), "class A {}");
+        java.nio.file.Files.writeString(root.resolve("Wip.java"), "class Wip {}");
+
+        FileScanner mockScanner = Mockito.mock(FileScanner.class);
+        Mockito.when(mockScanner.getRootPath()).thenReturn(root.toString());
+        Mockito.when(mockScanner.getApplicationId()).thenReturn("app");
+        Mockito.when(mockScanner.isIndexable(Mockito.anyString())).thenReturn(true);
+
+        GitChangeDetector git = Mockito.mock(GitChangeDetector.class);
+        Mockito.when(git.snapshot(root)).thenReturn(new GitChangeDetector.Snapshot("c2", new java.util.LinkedHashSet<>(java.util.List.of("Wip.java"))));
+        GitChangeDetector.Changes changes = new GitChangeDetector.Changes();
+        changes.getModified().add("B.java");
+        changes.getDeleted().add("D.java");
+        changes.getRenamed().put("A.java", "A2.java");
+        Mockito.when(git.changesSince(root, "c1")).thenReturn(changes);
+
+        ScanStateRepository states = Mockito.mock(ScanStateRepository.class);
+        ScanStateRecord last = new ScanStateRecord();
+        last.setId("app");
+        last.setLastCommit("c1");
+        last.setPendingPaths("Gone.java");
+        Mockito.when(states.findById("app")).thenReturn(java.util.Optional.of(last));
+
+        ScannerJobService svc = new ScannerJobService(mockScanner, git, states);
+        svc.startJob();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Boolean.FALSE.equals(svc.status().get("running")) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        assertThat((Integer) svc.status().get("totalFiles")).isEqualTo(2);
+        Mockito.verify(mockScanner, Mockito.never()).listAllFiles();
+        Mockito.verify(mockScanner).moveFile("A.java", "A2.java");
+        Mockito.verify(mockScanner).removeFile("D.java");
+        Mockito.verify(mockScanner).removeFile("Gone.java"); // pending from the last scan, now gone
+        Mockito.verify(mockScanner).processFile("B.java");
+        Mockito.verify(mockScanner).processFile("A2.java");
+        Mockito.verify(mockScanner, Mockito.never()).processFile("Wip.java");
+        org.mockito.ArgumentCaptor<ScanStateRecord> saved = org.mockito.ArgumentCaptor.forClass(ScanStateRecord.class);
+        Mockito.verify(states).save(saved.capture());
+        assertThat(saved.getValue().getLastCommit()).isEqualTo("c2");
+        assertThat(saved.getValue().getPendingPaths()).isEqualTo("Wip.java");
+    }
+
+    @Test
+    public void filesThatFailToStoreStayPendingWithoutAManifest() throws Exception {
+        java.nio.file.Path root = java.nio.file.Files.createTempDirectory("git-scan");
+        java.nio.file.Files.writeString(root.resolve("Ok.java"), "class Ok {}");
+        java.nio.file.Files.writeString(root.resolve("Bad.java"), "class Bad {}");
+        java.nio.file.Files.writeString(root.resolve("Queued.java"), "class Queued {}");
+
+        FileScanner mockScanner = Mockito.mock(FileScanner.class);
+        Mockito.when(mockScanner.getRootPath()).thenReturn(root.toString());
+        Mockito.when(mockScanner.getApplicationId()).thenReturn("app");
+        Mockito.when(mockScanner.isIndexable(Mockito.anyString())).thenReturn(true);
+        // Bad.java fails on its own; Queued.java fails with the cross-file batch flushed at the end
+        Mockito.when(mockScanner.processFile("Bad.java")).thenReturn(java.util.List.of("Bad.java"));
+        Mockito.when(mockScanner.flushPending()).thenReturn(java.util.List.of("Queued.java"));
+
+        GitChangeDetector git = Mockito.mock(GitChangeDetector.class);
+        Mockito.when(git.snapshot(root)).thenReturn(new GitChangeDetector.Snapshot("c2", new java.util.LinkedHashSet<>()));
+        GitChangeDetector.Changes changes = new GitChangeDetector.Changes();
+        changes.getModified().addAll(java.util.List.of("Ok.java", "Bad.java", "Queued.java"));
+        Mockito.when(git.changesSince(root, "c1")).thenReturn(changes);
+
+        ScanStateRepository states = Mockito.mock(ScanStateRepository.class);
+        ScanStateRecord last = new ScanStateRecord();
+        last.setId("app");
+        last.setLastCommit("c1");
+        Mockito.when(states.findById("app")).thenReturn(java.util.Optional.of(last));
+
+        ScannerJobService svc = new ScannerJobService(mockScanner, git, states);
+        svc.startJob();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Boolean.FALSE.equals(svc.status().get("running")) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        org.mockito.ArgumentCaptor<ScanStateRecord> saved = org.mockito.ArgumentCaptor.forClass(ScanStateRecord.class);
+        Mockito.verify(states).save(saved.capture());
+        assertThat(saved.getValue().getLastCommit()).isEqualTo("c2");
+        assertThat(saved.getValue().getPendingPaths()).isEqualTo("Bad.java\nQueued.java");
+    }
 }
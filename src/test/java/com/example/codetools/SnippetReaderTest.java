@@ -0,0 +1,83 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SnippetReaderTest {
+
+    @TempDir
+    Path dir;
+
+    private final SnippetReader reader = new SnippetReader(1024, new TextFileReader(0));
+
+    @Test
+    public void readsOnlyTheRequestedRangesAfterABom() throws Exception {
+        String text = "// héader\nclass A {\n  void a() {}\n  void b() {}\n}\n";
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] withBom = new byte[utf8.length + 3];
+        withBom[0] = (byte) 0xEF;
+        withBom[1] = (byte) 0xBB;
+        withBom[2] = (byte) 0xBF;
+        System.arraycopy(utf8, 0, withBom, 3, utf8.length);
+        Path f = Files.write(dir.resolve("A.java"), withBom);
+
+        long a = utf8Offset(text, text.indexOf("  void a"));
+        long b = utf8Offset(text, text.indexOf("  void b"));
+        long end = utf8Offset(text, text.indexOf("}\n", text.indexOf("void b")) + 2);
+
+        assertThat(reader.read(f, List.of(new long[] {0, a}))).isEqualTo("// héader\nclass A {\n");
+        assertThat(reader.read(f, List.of(new long[] {b, end}))).isEqualTo("  void b() {}\n");
+    }
+
+    @Test
+    public void cachedRegionsAreDroppedWhenTheFileChanges() throws Exception {
+        Path f = Files.writeString(dir.resolve("a.js"), "let a = 1;\nlet b = 2;\n");
+        List<long[]> first = List.of(new long[] {0, 11});
+
+        assertThat(reader.read(f, first)).isEqualTo("let a = 1;\n");
+        assertThat(reader.cachedBytes()).isEqualTo(11);
+
+        Files.writeString(f, "let z = 9;\nlet b = 2;\n");
+        Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        assertThat(reader.read(f, first)).isEqualTo("let z = 9;\n");
+    }
+
+    @Test
+    public void separateRangesAreJoinedByANewline() throws Exception {
+        Path f = Files.writeString(dir.resolve("b.py"), "aaaa\nbbbb\ncccc\n");
+
+        assertThat(reader.read(f, List.of(new long[] {0, 5}, new long[] {10, 15}))).isEqualTo("aaaa\n\ncccc\n");
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesAreEvictedPastTheCap() throws Exception {
+        Path x = Files.writeString(dir.resolve("x.js"), "x".repeat(600));
+        Path y = Files.writeString(dir.resolve("y.js"), "y".repeat(600));
+
+        reader.read(x, List.of(new long[] {0, 600}));
+        reader.read(y, List.of(new long[] {0, 600}));
+
+        assertThat(reader.cachedBytes()).isEqualTo(600);
+    }
+
+    @Test
+    public void slicesUtf16TextByUtf8Offsets() {
+        String text = "a\u00e9\uD83D\uDE00b";
+        // a=1 byte, é=2, the emoji=4
+        assertThat(SnippetReader.sliceUtf8(text, 1, 3)).isEqualTo("\u00e9");
+        assertThat(SnippetReader.sliceUtf8(text, 3, 8)).isEqualTo("\uD83D\uDE00b");
+    }
+
+    private static long utf8Offset(String text, int charIndex) {
+        return text.substring(0, charIndex).getBytes(StandardCharsets.UTF_8).length;
+    }
+}
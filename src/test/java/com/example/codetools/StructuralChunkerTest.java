@@ -0,0 +1,168 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StructuralChunkerTest {
+
+    private static final String JAVA = """
+            package a;
+
+            import java.util.List;
+
+            public class Greeter {
+
+                private final String name;
+
+                /** Builds a greeter. */
+                public Greeter(String name) {
+                    this.name = name;
+                }
+
+                /**
+                 * Says hello; a "{" in a string must not count.
+                 */
+                @Override
+                public String toString() {
+                    String s = "{ not a block";
+                    return s + name;
+                }
+
+                @Deprecated
+                public int size(List<String> xs) {
+                    int n = 0;
+                    for (String x : xs) {
+                        n += x.length();
+                    }
+                    return n;
+                }
+            }
+            """;
+
+    private static final String TS = """
+            import { x } from './x';
+
+            export function add(a: number, b: number): number {
+              return a + b;
+            }
+
+            const t = `template with { brace`;
+
+            export class Box {
+              @Input() size = 1;
+
+              area(): number {
+                return this.size * this.size;
+              }
+            }
+            """;
+
+    private static final String PY = """
+            import os
+
+
+            def top(a,
+                    b):
+                return a + b
+
+
+            class Store:
+                \"\"\"Keeps things.
+
+                def not_a_method(): inside the docstring
+                \"\"\"
+
+                def __init__(self):
+                    self.items = []
+
+                @property
+                def size(self):
+                    return len(self.items)
+            """;
+
+    // minSize 1 so every unit is its own chunk
+    private final Chunker fallback = new ContentDefinedChunker(200, 800, 1600);
+    private final Chunker java = BraceBlockChunker.java(fallback, 1, 1600);
+    private final Chunker ts = BraceBlockChunker.typescript(fallback, 1, 1600);
+    private final Chunker py = new PythonChunker(fallback, 1, 1600);
+
+    @Test
+    public void javaChunksStartAtMembersWithTheirJavadocAndAnnotations() {
+        List<String> chunks = chunks(java, JAVA);
+
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("    /** Builds a greeter. */\n    public Greeter("));
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("    /**\n     * Says hello").contains("@Override").contains("return s + name;"));
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("    @Deprecated\n    public int size(").contains("return n;"));
+        // nothing is cut inside a method body
+        assertThat(chunks).noneSatisfy(c -> assertThat(c).startsWith("        "));
+    }
+
+    @Test
+    public void editingOneMethodLeavesTheOtherChunksAlone() {
+        String edited = JAVA.replace("return s + name;", "return s + name + \"!\";");
+
+        List<String> before = chunks(java, JAVA);
+        List<String> after = chunks(java, edited);
+
+        assertThat(after).hasSameSizeAs(before);
+        long changed = after.stream().filter(c -> !before.contains(c)).count();
+        assertThat(changed).isEqualTo(1);
+    }
+
+    @Test
+    public void typescriptSkipsTemplatesAndKeepsDecoratorsWithMembers() {
+        List<String> chunks = chunks(ts, TS);
+
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("export function add("));
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("export class Box {"));
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("  @Input() size = 1;"));
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("  area(): number {").contains("return this.size"));
+    }
+
+    @Test
+    public void pythonCutsAtDefinitionsAndMethodsButNotInsideDocstrings() {
+        List<String> chunks = chunks(py, PY);
+
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("def top(a,\n        b):"));
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("class Store:").contains("not_a_method"));
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("    def __init__(self):"));
+        assertThat(chunks).anySatisfy(c -> assertThat(c).startsWith("    @property\n    def size(self):"));
+    }
+
+    @Test
+    public void smallUnitsAreMergedAndRangesCoverTheText() {
+        Chunker packed = BraceBlockChunker.java(fallback, 120, 1600);
+        for (Chunker c : List.of(java, ts, py, packed)) {
+            String text = c == py ? PY : c == ts ? TS : JAVA;
+            List<int[]> ranges = c.split(text);
+            assertThat(ranges.get(0)[0]).isZero();
+            assertThat(ranges.get(ranges.size() - 1)[1]).isEqualTo(text.length());
+            for (int i = 1; i < ranges.size(); i++) assertThat(ranges.get(i)[0]).isEqualTo(ranges.get(i - 1)[1]);
+        }
+        assertThat(packed.split(JAVA).size()).isLessThan(java.split(JAVA).size());
+    }
+
+    @Test
+    public void oversizeUnitsFallBackToTheOtherChunker() {
+        StringBuilder body = new StringBuilder("class Big {\n    void run() {\n");
+        for (int i = 0; i < 400; i++) body.append("        call").append(i).append("();\n");
+        body.append("    }\n}\n");
+        String text = body.toString();
+
+        List<int[]> ranges = BraceBlockChunker.java(fallback, 1, 1600).split(text);
+
+        assertThat(ranges.size()).isGreaterThan(2);
+        for (int[] r : ranges) assertThat(r[1] - r[0]).isLessThanOrEqualTo(1600);
+        assertThat(ranges.get(ranges.size() - 1)[1]).isEqualTo(text.length());
+    }
+
+    private static List<String> chunks(Chunker c, String text) {
+        List<String> out = new ArrayList<>();
+        for (int[] r : c.split(text)) out.add(text.substring(r[0], r[1]));
+        return out;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TextFileReaderTest {
+
+    @TempDir
+    Path dir;
+
+    private final TextFileReader reader = new TextFileReader(1024 * 1024);
+
+    @Test
+    public void readsUtf8AndDropsTheBom() throws Exception {
+        byte[] text = "class Café {}\n".getBytes(StandardCharsets.UTF_8);
+        byte[] withBom = new byte[text.length + 3];
+        withBom[0] = (byte) 0xEF;
+        withBom[1] = (byte) 0xBB;
+        withBom[2] = (byte) 0xBF;
+        System.arraycopy(text, 0, withBom, 3, text.length);
+        Path f = Files.write(dir.resolve("A.java"), withBom);
+
+        TextFileReader.Text t = reader.read(f);
+
+        assertThat(t.getSkipped()).isNull();
+        assertThat(t.getContent()).isEqualTo("class Café {}\n");
+        // the hash covers the bytes on disk, as the scan manifest always stored it
+        assertThat(t.getHash()).isEqualTo(ScanManifest.hash(withBom));
+    }
+
+    @Test
+    public void readsUtf16WithABom() throws Exception {
+        Path f = Files.write(dir.resolve("B.java"), "\uFEFFint x = 1;\n".getBytes(StandardCharsets.UTF_16LE));
+
+        assertThat(reader.read(f).getContent()).isEqualTo("int x = 1;\n");
+    }
+
+    @Test
+    public void mapsLargeFilesAndDecodesThemWhole() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40_000; i++) sb.append("line ").append(i).append(" ü\n");
+        Path f = Files.writeString(dir.resolve("big.js"), sb);
+
+        TextFileReader.Text t = reader.read(f);
+
+        assertThat(t.getContent()).isEqualTo(sb.toString());
+        assertThat(t.getHash()).isEqualTo(ScanManifest.hash(Files.readAllBytes(f)));
+    }
+
+    @Test
+    public void skipsBinaryAndOversizeFiles() throws Exception {
+        Path bin = Files.write(dir.resolve("logo.json"), new byte[] {(byte) 0x89, 'P', 'N', 'G', 0, 0, 0, 13});
+        Path big = Files.write(dir.resolve("bundle.js"), new byte[2 * 1024 * 1024]);
+
+        TextFileReader.Text b = reader.read(bin);
+        TextFileReader.Text o = reader.read(big);
+
+        assertThat(b.getSkipped()).isEqualTo("binary");
+        assertThat(b.getContent()).isEmpty();
+        assertThat(o.getSkipped()).isEqualTo("oversize");
+        assertThat(o.getContent()).isEmpty();
+    }
+
+    @Test
+    public void emptyFilesReadAsEmptyText() throws Exception {
+        Path f = Files.write(dir.resolve("Empty.java"), new byte[0]);
+
+        TextFileReader.Text t = reader.read(f);
+
+        assertThat(t.getSkipped()).isNull();
+        assertThat(t.getContent()).isEmpty();
+    }
+
+    @Test
+    public void replacedBytesStillCountAsTheBytesTheyStoodFor() throws Exception {
+        // Latin-1: 0xE9 alone is not UTF-8
+        Path f = Files.write(dir.resolve("L.java"), "a\u00e9b".getBytes(StandardCharsets.ISO_8859_1));
+
+        TextFileReader.Text t = reader.read(f);
+
+        assertThat(t.getContent()).isEqualTo("a\uFFFDb");
+        assertThat(t.byteLength(0, 3)).isEqualTo(3);
+        assertThat(t.byteLength(1, 2)).isEqualTo(1);
+        assertThat(t.byteLength(2, 3)).isEqualTo(1);
+    }
+}
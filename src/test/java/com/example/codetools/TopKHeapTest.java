@@ -0,0 +1,21 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TopKHeapTest {
+
+    @Test
+    public void keepsHighestScoresInDescendingOrder() {
+        TopKHeap heap = new TopKHeap(3);
+        float[] scores = {0.1f, 0.9f, 0.5f, 0.3f, 0.7f, -1f};
+        for (int i = 0; i < scores.length; i++) heap.offer(i, scores[i]);
+
+        assertThat(heap.size()).isEqualTo(3);
+        assertThat(heap.threshold()).isEqualTo(0.5f);
+        heap.sortDescending();
+        assertThat(new int[] {heap.id(0), heap.id(1), heap.id(2)}).containsExactly(1, 4, 2);
+        assertThat(heap.score(0)).isEqualTo(0.9f);
+    }
+}
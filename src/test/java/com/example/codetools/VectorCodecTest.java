@@ -0,0 +1,64 @@
+package com.example.codetools;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.data.Offset.offset;
+
+public class VectorCodecTest {
+
+    private static float[] randomVector(int dim) {
+        Random rnd = new Random(dim);
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) v[i] = (float) rnd.nextGaussian();
+        VectorUtils.normalize(v);
+        return v;
+    }
+
+    @Test
+    public void float32RoundTripsExactly() throws Exception {
+        float[] v = randomVector(768);
+        byte[] blob = VectorCodec.encode(v);
+        assertThat(blob).hasSize(4 + 768 * 4);
+        assertThat(VectorCodec.isCurrent(blob, false)).isTrue();
+        assertThat(VectorCodec.isLegacy(blob)).isFalse();
+        assertThat(VectorCodec.decode(blob)).containsExactly(v);
+    }
+
+    @Test
+    public void float16HalvesTheSizeWithinHalfPrecision() throws Exception {
+        float[] v = randomVector(384);
+        byte[] blob = VectorCodec.encode(v, true);
+        assertThat(blob).hasSize(4 + 384 * 2);
+        assertThat(VectorCodec.isCurrent(blob, true)).isTrue();
+        assertThat(VectorCodec.isCurrent(blob, false)).isFalse();
+        float[] back = VectorCodec.decode(blob);
+        for (int i = 0; i < v.length; i++) assertThat(back[i]).isCloseTo(v[i], offset(1e-3f));
+    }
+
+    @Test
+    public void legacyGzipBlobsAreStillRead() throws Exception {
+        float[] v = {0.25f, -1.5f, 3f};
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(new GZIPOutputStream(baos))) {
+            dos.writeInt(v.length);
+            for (float f : v) dos.writeFloat(f);
+        }
+        byte[] legacy = baos.toByteArray();
+        assertThat(VectorCodec.isLegacy(legacy)).isTrue();
+        assertThat(VectorCodec.isCurrent(legacy, false)).isFalse();
+        assertThat(VectorCodec.decode(legacy)).containsExactly(v);
+    }
+
+    @Test
+    public void unknownFormatIsRejected() {
+        assertThatThrownBy(() -> VectorCodec.decode(new byte[] {1, 2, 3})).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> VectorCodec.decode(new byte[] {'V', 1, 9, 0})).isInstanceOf(IllegalArgumentException.class);
+    }
+}
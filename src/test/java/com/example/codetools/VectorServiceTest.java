@@ -32,27 +32,165 @@ public class VectorServiceTest {
     @Test
     public void testUpsertPersistsVector() throws Exception {
         when(embeddingService.embed("hello")).thenReturn(new float[]{0.1f, 0.2f, 0.3f});
+        when(embeddingService.embedBatch(java.util.List.of("hello"))).thenReturn(java.util.List.of(new float[]{0.1f, 0.2f, 0.3f}));
 
         vectorService.upsert("app1", "file.js", "hello", 0, 0, 5);
 
         String id = "app1:file.js:0";
         VectorRecord r = repo.findById(id).orElse(null);
         assertThat(r).isNotNull();
-        assertThat(r.getVectorJson()).contains("0.1");
         assertThat(r.getVectorBlob()).isNotNull();
+        // vectors are stored unit length with the raw norm kept alongside
+        float norm = (float) Math.sqrt(0.1f * 0.1f + 0.2f * 0.2f + 0.3f * 0.3f);
+        assertThat(r.getNorm()).isCloseTo(norm, org.assertj.core.data.Offset.offset(1e-6f));
+        // the JSON copy is opt-in (vector.store.json)
+        assertThat(r.getVectorJson()).isNull();
 
-        // verify gzip roundtrip of stored blob to floats
+        // blob is VectorCodec float32: 4-byte header then little-endian unit-length components
         byte[] blob = r.getVectorBlob();
-        // decompress using same logic as VectorService
-        try (java.util.zip.GZIPInputStream gzis = new java.util.zip.GZIPInputStream(new java.io.ByteArrayInputStream(blob));
-             java.io.DataInputStream dis = new java.io.DataInputStream(gzis)) {
-            int len = dis.readInt();
-            float[] arr = new float[len];
-            for (int i = 0; i < len; i++) arr[i] = dis.readFloat();
-            assertThat(arr).hasSize(3);
-            assertThat(arr[0]).isEqualTo(0.1f);
-            assertThat(arr[1]).isEqualTo(0.2f);
-            assertThat(arr[2]).isEqualTo(0.3f);
+        assertThat(blob).hasSize(4 + 3 * 4);
+        float[] arr = VectorCodec.decode(blob);
+        assertThat(arr).hasSize(3);
+        org.assertj.core.data.Offset<Float> eps = org.assertj.core.data.Offset.offset(1e-6f);
+        assertThat(arr[0]).isCloseTo(0.1f / norm, eps);
+        assertThat(arr[1]).isCloseTo(0.2f / norm, eps);
+        assertThat(arr[2]).isCloseTo(0.3f / norm, eps);
+    }
+
+    @Test
+    public void testUpsertAllInsertsAndReplacesInBatches() {
+        java.util.List<VectorRecord> records = new java.util.ArrayList<>();
+        for (int i = 0; i < 1200; i++) records.add(record("bulk:f.js:" + i, "v1-" + i));
+        vectorService.upsertAll(records);
+        assertThat(repo.findByApplicationId("bulk")).hasSize(1200);
+
+        // same ids again: rows are replaced, not duplicated
+        vectorService.upsertAll(java.util.List.of(record("bulk:f.js:7", "v2"), record("bulk:f.js:1200", "new")));
+        assertThat(repo.findByApplicationId("bulk")).hasSize(1201);
+        VectorRecord r = repo.findById("bulk:f.js:7").orElseThrow();
+        assertThat(r.getContent()).isEqualTo("v2");
+        assertThat(r.getChunkIndex()).isEqualTo(7);
+        assertThat(r.getNorm()).isEqualTo(1f);
+        assertThat(r.getVectorBlob()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void chunksThatOnlyMovedAreNotEmbeddedAgain() throws Exception {
+        when(embeddingService.embedBatch(org.mockito.ArgumentMatchers.anyList())).thenAnswer(inv -> {
+            java.util.List<String> texts = inv.getArgument(0);
+            java.util.List<float[]> out = new java.util.ArrayList<>();
+            for (String t : texts) out.add(new float[] {t.length(), 1f, 0f});
+            return out;
+        });
+        vectorService.upsertBatch(java.util.List.of(
+                new VectorService.Chunk("moves", "m.js", "alpha", 0, 0, 5),
+                new VectorService.Chunk("moves", "m.js", "beta", 1, 5, 9)));
+        org.mockito.Mockito.clearInvocations(embeddingService);
+
+        // a chunk inserted at the top shifts the others down by one
+        vectorService.upsertBatch(java.util.List.of(
+                new VectorService.Chunk("moves", "m.js", "new first", 0, 0, 9),
+                new VectorService.Chunk("moves", "m.js", "alpha", 1, 9, 14),
+                new VectorService.Chunk("moves", "m.js", "beta", 2, 14, 18)));
+
+        org.mockito.Mockito.verify(embeddingService).embedBatch(java.util.List.of("new first"));
+        assertThat(repo.findById("moves:m.js:2").orElseThrow().getContent()).isEqualTo("beta");
+        // "beta" kept the vector embedded for it before it moved: (4, 1, 0) normalized
+        float[] v = VectorCodec.decode(repo.findById("moves:m.js:2").orElseThrow().getVectorBlob());
+        float n = (float) Math.sqrt(17);
+        assertThat(v).containsExactly(new float[] {4f / n, 1f / n, 0f}, org.assertj.core.data.Offset.offset(1e-6f));
+    }
+
+    @Test
+    public void chunksWithMovedOffsetsAreRewrittenWithoutEmbedding() throws Exception {
+        when(embeddingService.embedBatch(org.mockito.ArgumentMatchers.anyList())).thenAnswer(inv -> {
+            java.util.List<String> texts = inv.getArgument(0);
+            java.util.List<float[]> out = new java.util.ArrayList<>();
+            for (String t : texts) out.add(new float[] {t.length(), 1f, 0f});
+            return out;
+        });
+        // stored with char offsets
+        vectorService.upsertBatch(java.util.List.of(
+                new VectorService.Chunk("offsets", "o.js", "\u00e9\u00e9", 0, 0, 2),
+                new VectorService.Chunk("offsets", "o.js", "tail", 1, 2, 6)));
+        org.mockito.Mockito.clearInvocations(embeddingService);
+
+        // same content, UTF-8 byte offsets
+        vectorService.upsertBatch(java.util.List.of(
+                new VectorService.Chunk("offsets", "o.js", "\u00e9\u00e9", 0, 0, 4),
+                new VectorService.Chunk("offsets", "o.js", "tail", 1, 4, 8)));
+
+        org.mockito.Mockito.verify(embeddingService, org.mockito.Mockito.never()).embedBatch(org.mockito.ArgumentMatchers.anyList());
+        VectorRecord tail = repo.findById("offsets:o.js:1").orElseThrow();
+        assertThat(tail.getStartOffset()).isEqualTo(4);
+        assertThat(tail.getEndOffset()).isEqualTo(8);
+    }
+
+    @Test
+    public void rowsPastTheEndOfAShrunkFileGoOnlyOnceItsNewChunksAreStored() throws Exception {
+        when(embeddingService.embedBatch(org.mockito.ArgumentMatchers.anyList())).thenAnswer(inv -> {
+            java.util.List<String> texts = inv.getArgument(0);
+            java.util.List<float[]> out = new java.util.ArrayList<>();
+            for (String t : texts) out.add(new float[] {t.length(), 1f, 0f});
+            return out;
+        });
+        vectorService.upsertBatch(java.util.List.of(
+                new VectorService.Chunk("shrink", "s.js", "one", 0, 0, 3, 3),
+                new VectorService.Chunk("shrink", "s.js", "two", 1, 3, 6, 3),
+                new VectorService.Chunk("shrink", "s.js", "three", 2, 6, 11, 3)));
+
+        // the embedder fails: the file keeps its old tail
+        when(embeddingService.embedBatch(org.mockito.ArgumentMatchers.anyList())).thenThrow(new RuntimeException("down"));
+        assertThat(vectorService.upsertBatch(java.util.List.of(
+                new VectorService.Chunk("shrink", "s.js", "one and two", 0, 0, 11, 1)))).isFalse();
+        assertThat(repo.findById("shrink:s.js:2")).isPresent();
+
+        // only the tail went: nothing to embed, the stale rows are still deleted
+        org.mockito.Mockito.clearInvocations(embeddingService);
+        assertThat(vectorService.upsertBatch(java.util.List.of(
+                new VectorService.Chunk("shrink", "s.js", "one", 0, 0, 3, 1)))).isTrue();
+        org.mockito.Mockito.verify(embeddingService, org.mockito.Mockito.never()).embedBatch(org.mockito.ArgumentMatchers.anyList());
+        assertThat(repo.findByApplicationId("shrink")).extracting(VectorRecord::getId).containsExactly("shrink:s.js:0");
+    }
+
+    @Test
+    public void removesDeletedFilesAndChunksPastTheEndOfShrunkFiles() {
+        java.util.List<VectorRecord> records = new java.util.ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            records.add(chunk("prune", "keep.js", i));
+            records.add(chunk("prune", "shrunk.js", i));
+            records.add(chunk("prune", "gone.js", i));
+            records.add(chunk("prune", "gone2.js", i));
         }
+        vectorService.upsertAll(records);
+
+        assertThat(vectorService.removeFiles("prune", java.util.List.of("gone.js", "gone2.js", "never.js"))).isEqualTo(8);
+        assertThat(vectorService.truncateFile("prune", "shrunk.js", 1)).isEqualTo(3);
+        assertThat(vectorService.truncateFile("prune", "keep.js", 4)).isZero();
+
+        assertThat(vectorService.indexedPaths("prune")).containsExactlyInAnyOrder("keep.js", "shrunk.js");
+        assertThat(repo.findByApplicationId("prune")).extracting(VectorRecord::getId)
+                .containsExactlyInAnyOrder("prune:keep.js:0", "prune:keep.js:1", "prune:keep.js:2", "prune:keep.js:3", "prune:shrunk.js:0");
+    }
+
+    private static VectorRecord chunk(String app, String path, int index) {
+        VectorRecord r = record(app + ":" + path + ":" + index, path + index);
+        r.setApplicationId(app);
+        r.setPath(path);
+        return r;
+    }
+
+    private static VectorRecord record(String id, String content) {
+        VectorRecord r = new VectorRecord();
+        r.setId(id);
+        r.setApplicationId("bulk");
+        r.setPath("f.js");
+        r.setChunkIndex(Integer.parseInt(id.substring(id.lastIndexOf(':') + 1)));
+        r.setContent(content);
+        r.setVectorBlob(new byte[] {1, 2, 3});
+        r.setNorm(1f);
+        r.setChecksum(content);
+        r.setCreatedAt(1L);
+        return r;
     }
 }
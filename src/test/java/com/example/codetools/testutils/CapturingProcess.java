@@ -11,6 +11,8 @@ public class CapturingProcess extends Process {
     private final ByteArrayInputStream stdout;
     private final ByteArrayInputStream stderr;
     private final int exitCode;
+    private volatile boolean alive;
+    private volatile boolean destroyed;
 
     public CapturingProcess(byte[] stdoutBytes, byte[] stderrBytes, int exitCode) {
         this.stdout = new ByteArrayInputStream(stdoutBytes == null ? new byte[0] : stdoutBytes);
@@ -60,17 +62,29 @@ public class CapturingProcess extends Process {
 
     @Override
     public void destroy() {
-        // no-op
+        alive = false;
+        destroyed = true;
     }
 
     @Override
     public Process destroyForcibly() {
+        destroy();
         return this;
     }
 
     @Override
     public boolean isAlive() {
-        return false;
+        return alive;
+    }
+
+    /** Report the process as running (e.g. a long-lived worker) until destroyed or set otherwise. */
+    public CapturingProcess setAlive(boolean alive) {
+        this.alive = alive;
+        return this;
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
     }
 
     public byte[] getCapturedStdin() {
@@ -0,0 +1,106 @@
+package com.example.codetools.testutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process stand-in for Ollama's {@code POST /api/embed}: answers every input with
+ * {@link #vectorFor(String, int)}, after an optional delay, and records what it saw.
+ */
+public class OllamaStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int dimension;
+    private volatile long latencyMs;
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+
+    public OllamaStubServer(int dimension) throws IOException {
+        this.dimension = dimension;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/embed", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public OllamaStubServer setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+        return this;
+    }
+
+    /** Number of inputs in each request received so far. */
+    public List<Integer> batchSizes() {
+        return new ArrayList<>(batchSizes);
+    }
+
+    /** Client-side port of each request; repeats mean a kept-alive connection was reused. */
+    public List<Integer> clientPorts() {
+        return new ArrayList<>(clientPorts);
+    }
+
+    /** Deterministic vector the stub returns for a text. */
+    public static float[] vectorFor(String text, int dimension) {
+        float[] v = new float[dimension];
+        int h = text.hashCode();
+        for (int i = 0; i < dimension; i++) {
+            h = h * 1103515245 + 12345;
+            v[i] = ((h >>> 8) % 2000 - 1000) / 1000f;
+        }
+        return v;
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            clientPorts.add(ex.getRemoteAddress().getPort());
+            JsonNode req = mapper.readTree(ex.getRequestBody());
+            List<String> inputs = new ArrayList<>();
+            JsonNode input = req.get("input");
+            if (input != null && input.isArray()) input.forEach(n -> inputs.add(n.asText()));
+            else if (input != null) inputs.add(input.asText());
+            batchSizes.add(inputs.size());
+            if (latencyMs > 0) Thread.sleep(latencyMs);
+            List<float[]> vectors = new ArrayList<>();
+            for (String s : inputs) vectors.add(vectorFor(s, dimension));
+            byte[] body = mapper.writeValueAsBytes(Map.of("model", req.path("model").asText(), "embeddings", vectors));
+            ex.getResponseHeaders().add("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ex.sendResponseHeaders(503, -1);
+        } catch (Exception e) {
+            byte[] body = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(400, body.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        } finally {
+            ex.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
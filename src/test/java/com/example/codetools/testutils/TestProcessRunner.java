@@ -3,17 +3,36 @@ package com.example.codetools.testutils;
 import com.example.codetools.ProcessRunner;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class TestProcessRunner implements ProcessRunner {
-    private final CapturingProcess process;
+    private final List<CapturingProcess> processes;
+    private final List<List<String>> commands = new ArrayList<>();
 
     public TestProcessRunner(CapturingProcess process) {
-        this.process = process;
+        this.processes = List.of(process);
+    }
+
+    /** Hand out the processes in order, one per start; the last one is repeated. */
+    public TestProcessRunner(CapturingProcess first, CapturingProcess... rest) {
+        List<CapturingProcess> all = new ArrayList<>();
+        all.add(first);
+        all.addAll(List.of(rest));
+        this.processes = all;
     }
 
     @Override
-    public Process start(List<String> command) throws IOException {
-        return process;
+    public synchronized Process start(List<String> command) throws IOException {
+        commands.add(command);
+        return processes.get(Math.min(commands.size(), processes.size()) - 1);
+    }
+
+    public synchronized int starts() {
+        return commands.size();
+    }
+
+    public synchronized List<List<String>> commands() {
+        return new ArrayList<>(commands);
     }
 }
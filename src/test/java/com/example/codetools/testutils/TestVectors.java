@@ -0,0 +1,18 @@
+package com.example.codetools.testutils;
+
+import com.example.codetools.VectorUtils;
+
+import java.util.Random;
+
+public final class TestVectors {
+
+    private TestVectors() {
+    }
+
+    public static float[] randomUnit(Random rnd, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) v[i] = (float) rnd.nextGaussian();
+        VectorUtils.normalize(v);
+        return v;
+    }
+}